@@ -0,0 +1,145 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Operations of a counter compared with the same operations of {@link AtomicLong} and {@link LongAdder}.
+ * All threads of a benchmark update the same counter, so the number of threads, which is set by subclasses,
+ * defines the contention.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class MCounterBenchmark {
+    private File countersFile;
+    private MCountersWriter writer;
+    private MCounter counter;
+
+    private final AtomicLong atomicLong = new AtomicLong();
+    private final LongAdder longAdder = new LongAdder();
+
+    @Setup
+    public void setUp() throws IOException {
+        countersFile = new File(MCountersUtils.getMCountersDirectoryName(),
+                "jmh-" + getClass().getSimpleName() + ".dat");
+        countersFile.delete();
+
+        writer = new MCountersWriter(countersFile, null, 1);
+        counter = writer.addCounter("counter");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        writer.close();
+        countersFile.delete();
+    }
+
+    @Benchmark
+    public long mcounterGet() {
+        return counter.get();
+    }
+
+    @Benchmark
+    public long mcounterIncrement() {
+        return counter.increment();
+    }
+
+    @Benchmark
+    public void mcounterSet() {
+        counter.set(42);
+    }
+
+    @Benchmark
+    public long mcounterGetAndAdd() {
+        return counter.getAndAdd(2);
+    }
+
+    @Benchmark
+    public boolean mcounterCompareAndSet() {
+        final long value = counter.get();
+        return counter.compareAndSet(value, value + 1);
+    }
+
+    @Benchmark
+    public long atomicLongGet() {
+        return atomicLong.get();
+    }
+
+    @Benchmark
+    public long atomicLongIncrement() {
+        return atomicLong.incrementAndGet();
+    }
+
+    @Benchmark
+    public void atomicLongSet() {
+        atomicLong.set(42);
+    }
+
+    @Benchmark
+    public long atomicLongGetAndAdd() {
+        return atomicLong.getAndAdd(2);
+    }
+
+    @Benchmark
+    public boolean atomicLongCompareAndSet() {
+        final long value = atomicLong.get();
+        return atomicLong.compareAndSet(value, value + 1);
+    }
+
+    @Benchmark
+    public long longAdderSum() {
+        return longAdder.sum();
+    }
+
+    @Benchmark
+    public void longAdderIncrement() {
+        longAdder.increment();
+    }
+
+    @Benchmark
+    public void longAdderAdd() {
+        longAdder.add(2);
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans of the counters with {@link MCountersDecoder}. Run with the {@code gc} profiler to see
+ * the allocation rate of the scans (e.g. labels decoded by {@link MCountersDecoder#forEachCounter}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MCountersDecoderBenchmark {
+    @Param({"16", "1024", "10000"})
+    private int numberOfCounters;
+
+    private MCountersDecoder decoder;
+    private long lastCounterId;
+    private MCounterConsumer counterConsumer;
+    private MCounterValueConsumer valueConsumer;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        final int staticsLength = MCountersEncoder.staticsLength(null);
+        final int metadataLength = MCountersEncoder.metadataLength(numberOfCounters);
+        final int valuesLength = MCountersEncoder.valuesLength(numberOfCounters);
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(MCountersLayout.HEADER_LENGTH +
+                staticsLength +
+                metadataLength +
+                valuesLength);
+
+        final MCountersEncoder encoder = new MCountersEncoder(buffer, staticsLength, metadataLength, valuesLength);
+        encoder.setVersion(MCountersLayout.COUNTERS_VERSION);
+
+        for (int i = 0; i < numberOfCounters; i++) {
+            encoder.addCounter(i, "benchmark.counter." + i, i);
+        }
+        lastCounterId = numberOfCounters - 1;
+
+        decoder = MCountersDecoder.prepare(buffer);
+
+        // the consumers are created once to not count their allocations
+        counterConsumer = (id, label, value) -> {
+            blackhole.consume(label);
+            blackhole.consume(value);
+        };
+        valueConsumer = (id, value) -> blackhole.consume(value);
+    }
+
+    @Benchmark
+    public void forEachCounter() {
+        decoder.forEachCounter(counterConsumer);
+    }
+
+    @Benchmark
+    public void forEachCounterValue() {
+        decoder.forEachCounterValue(valueConsumer);
+    }
+
+    @Benchmark
+    public long getLastCounterValue() throws MCounterNotFoundException {
+        return decoder.getCounterValue(lastCounterId);
+    }
+
+    @Benchmark
+    public String getLastCounterLabel() throws MCounterNotFoundException {
+        return decoder.getCounterLabel(lastCounterId);
+    }
+}
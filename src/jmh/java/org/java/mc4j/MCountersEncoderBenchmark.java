@@ -0,0 +1,96 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation and free of a counter with {@link MCountersEncoder} at different fill levels of the counters.
+ * The allocated counters occupy the first slots, so both operations have to scan them to reach the first
+ * free slot. A counter is freed right after its allocation to keep the fill level.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MCountersEncoderBenchmark {
+    private static final String LABEL = "benchmark.counter";
+
+    @Param({"1024"})
+    private int maxNumberOfCounters;
+
+    @Param({"0", "50", "90"})
+    private int fillPercent;
+
+    private MCountersEncoder encoder;
+    private long id;
+
+    @Setup
+    public void setUp() {
+        final int staticsLength = MCountersEncoder.staticsLength(null);
+        final int metadataLength = MCountersEncoder.metadataLength(maxNumberOfCounters);
+        final int valuesLength = MCountersEncoder.valuesLength(maxNumberOfCounters);
+        final int changesLength = MCountersEncoder.changesLength(MCountersWriter.DEFAULT_NUMBER_OF_CHANGES);
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(MCountersLayout.HEADER_LENGTH +
+                staticsLength +
+                metadataLength +
+                valuesLength +
+                changesLength);
+
+        encoder = new MCountersEncoder(buffer, staticsLength, metadataLength, valuesLength, changesLength);
+
+        final int numberOfAllocated = maxNumberOfCounters * fillPercent / 100;
+        for (id = 0; id < numberOfAllocated; id++) {
+            encoder.addCounter(id, LABEL, 0);
+        }
+    }
+
+    @Benchmark
+    public boolean addAndFreeCounter() {
+        final long counterId = id++;
+        encoder.addCounter(counterId, LABEL, 0);
+        return encoder.freeCounter(counterId);
+    }
+
+    @Benchmark
+    public boolean freeMissingCounter() {
+        return encoder.freeCounter(-1); // scans all the slots
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The increments of a counter and the scans of the counters' values with the memory accesses of
+ * {@link DirectMemoryBuffer}. Every value of {@code memoryAccess} runs in its own fork, which sets
+ * the {@link MemoryAccess#MEMORY_ACCESS_PROP_NAME} property before the first buffer is created, so the run fails
+ * for the accesses, which the JVM doesn't support: {@code varhandle} needs Java 9 and {@code segment} Java 22.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MCountersMemoryAccessBenchmark {
+    private static final int NUMBER_OF_COUNTERS = 1024;
+
+    @Param({MemoryAccess.UNSAFE, MemoryAccess.VAR_HANDLE, MemoryAccess.SEGMENT})
+    private String memoryAccess;
+
+    private File countersFile;
+    private MCountersWriter writer;
+    private MCountersReader reader;
+    private MCounter counter;
+    private MCounterValueConsumer valueConsumer;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) throws IOException {
+        System.setProperty(MemoryAccess.MEMORY_ACCESS_PROP_NAME, memoryAccess);
+        if (!memoryAccess.equals(DirectMemoryBuffer.memoryAccess())) {
+            throw new IllegalStateException("Not supported by the JVM: " + memoryAccess);
+        }
+
+        countersFile = new File(MCountersUtils.getMCountersDirectoryName(),
+                "jmh-" + getClass().getSimpleName() + ".dat");
+        countersFile.delete();
+
+        writer = new MCountersWriter(countersFile, null, NUMBER_OF_COUNTERS);
+        for (int i = 0; i < NUMBER_OF_COUNTERS; i++) {
+            counter = writer.addCounter("benchmark.counter." + i, i);
+        }
+        reader = new MCountersReader(countersFile);
+
+        valueConsumer = (id, value) -> blackhole.consume(value);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        writer.close();
+        countersFile.delete();
+    }
+
+    @Benchmark
+    public long increment() {
+        return counter.increment();
+    }
+
+    @Benchmark
+    public long get() {
+        return counter.get();
+    }
+
+    @Benchmark
+    public void forEachCounterValue() {
+        reader.forEachCounterValue(valueConsumer);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans of many counters' files in a directory with pages of the default size compared with scans of the files
+ * in a directory backed by huge pages, where a scan takes fewer TLB misses. The huge pages come from the first
+ * directory of {@link MCountersUtils#getHugePageDirectories()}, e.g. a hugetlbfs mount with enough free pages
+ * ({@code echo 512 > /proc/sys/vm/nr_hugepages}); without it the 'huge' case fails.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MCountersPagesBenchmark {
+    private static final int NUMBER_OF_COUNTERS = MCountersWriter.MAX_POSSIBLE_NUMBER_OF_COUNTERS;
+
+    @Param({"default", "huge"})
+    private String pages;
+
+    @Param({"64"})
+    private int numberOfFiles;
+
+    private File[] files;
+    private MCountersWriter[] writers;
+    private MCountersReader[] readers;
+    private MCounterValueConsumer valueConsumer;
+
+    private int[] randomFiles;
+    private long[] randomIds;
+    private int randomIndex;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) throws IOException {
+        final File directory;
+        if ("huge".equals(pages)) {
+            if (MCountersUtils.getHugePageDirectories().isEmpty()) {
+                throw new IllegalStateException("No directory backed by huge pages, mount hugetlbfs or set " +
+                        MCountersUtils.HUGE_PAGE_DIRS_PROP_NAME);
+            }
+            directory = new File(MCountersUtils.getHugePageDirectories().keySet().iterator().next().toFile(),
+                    "mcounters-jmh");
+        } else {
+            directory = new File(MCountersUtils.getMCountersDirectoryName(), "jmh-pages");
+        }
+        directory.mkdirs();
+
+        files = new File[numberOfFiles];
+        writers = new MCountersWriter[numberOfFiles];
+        readers = new MCountersReader[numberOfFiles];
+        for (int i = 0; i < numberOfFiles; i++) {
+            files[i] = new File(directory, "jmh-" + i + ".dat");
+            files[i].delete();
+
+            writers[i] = new MCountersWriter(files[i], null, NUMBER_OF_COUNTERS, 0);
+            for (int j = 0; j < NUMBER_OF_COUNTERS; j++) {
+                writers[i].addCounter("benchmark.counter." + j, j);
+            }
+            readers[i] = new MCountersReader(files[i]);
+        }
+
+        final Random random = new Random(42);
+        randomFiles = new int[1024];
+        randomIds = new long[randomFiles.length];
+        for (int i = 0; i < randomFiles.length; i++) {
+            randomFiles[i] = random.nextInt(numberOfFiles);
+            randomIds[i] = 1 + random.nextInt(NUMBER_OF_COUNTERS); // ids start with 1
+        }
+
+        valueConsumer = (id, value) -> blackhole.consume(value);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (int i = 0; i < numberOfFiles; i++) {
+            readers[i].close();
+            writers[i].close();
+            files[i].delete();
+        }
+    }
+
+    @Benchmark
+    public void scanAllFiles() {
+        for (final MCountersReader reader : readers) {
+            reader.forEachCounterValue(valueConsumer);
+        }
+    }
+
+    @Benchmark
+    public long getRandomCounterValue() throws MCounterNotFoundException {
+        final int i = randomIndex++ & (randomFiles.length - 1);
+        return readers[randomFiles[i]].getCounterValue(randomIds[i]);
+    }
+}
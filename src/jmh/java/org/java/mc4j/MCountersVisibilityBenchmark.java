@@ -0,0 +1,361 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+import org.java.mc4j.cli.Application;
+import org.java.mc4j.cli.Options;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast a value written by one process becomes visible to another process, which maps the same
+ * counters' file, and how fast the second process can scan the counters.
+ * <p>
+ * For each combination of a number of counters and a churn rate (frees and allocations of counters per second)
+ * a writer process and a reader process are launched:
+ * <ul>
+ *     <li>the writer sets a probe counter to {@link System#nanoTime()} periodically and churns the rest of
+ *     the counters</li>
+ *     <li>the reader spins on the probe counter and records the difference between the time it sees a new value
+ *     and the value itself, then it measures the throughput of the full scans of the counters</li>
+ * </ul>
+ * {@link System#nanoTime()} is based on a system-wide monotonic clock on Linux, so the values are comparable
+ * between the processes. Both processes spin, so at least two free CPUs are required for meaningful results.
+ * <p>
+ * The results are written as a JSON array, one object per run.
+ */
+public class MCountersVisibilityBenchmark extends Application {
+    static final String PROBE_LABEL = "probe";
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999", "p9999"};
+    private static final int MAX_NUMBER_OF_SAMPLES = 10_000_000;
+
+    private final Options.Argumented counters;
+    private final Options.Argumented churns;
+    private final Options.Argumented period;
+    private final Options.Argumented duration;
+    private final Options.Argumented output;
+
+    public MCountersVisibilityBenchmark(final String[] args) {
+        super("mcvisibility", args);
+
+        withDescription("Measures the latency of the visibility of counters' values between processes " +
+                "and the throughput of scans of the counters.");
+        withUsage("-n 16,1024,10000 -c 0,1000 -d 10s -o visibility.json",
+                "Runs 6 measurements and writes the results to 'visibility.json'.");
+
+        counters = withArgumented("counters", 'n', "NUMBERS")
+                .withDefaultArgumentValue("16,1024,10000")
+                .withDescription("Comma-separated numbers of counters in the file.");
+        churns = withArgumented("churn", 'c', "RATES")
+                .withDefaultArgumentValue("0,1000")
+                .withDescription("Comma-separated numbers of frees and allocations of counters per second.");
+        period = withArgumented("period", 'p', "MICROS")
+                .withDefaultArgumentValue("100")
+                .withDescription("Period of updates of the probe counter in microseconds.");
+        duration = withArgumented("duration", 'd', "DURATION")
+                .withDefaultArgumentValue("10s")
+                .withDescription("Duration of the measurement of the latency, the scans of the values " +
+                        "and of the counters are measured for a half of it each.");
+        output = withArgumented("output", 'o', "FILE")
+                .withDefaultArgumentValue("build/reports/visibility/results.json")
+                .withDescription("File to write the results to.");
+    }
+
+    @Override
+    protected void doWork() throws Throwable {
+        final long periodMicros = period.longValue();
+        if (periodMicros <= 0) {
+            throw new IllegalArgumentException("Incorrect period: " + periodMicros);
+        }
+        final long durationMillis = MCountersUtils.parseDuration(duration.stringValue());
+        if (durationMillis <= 0) {
+            throw new IllegalArgumentException("Incorrect duration: " + duration.stringValue());
+        }
+
+        final File outputFile = output.fileValue().getAbsoluteFile();
+        outputFile.getParentFile().mkdirs();
+
+        final List<String> results = new ArrayList<>();
+
+        for (final String numberOfCounters : counters.stringValue().split(",")) {
+            for (final String churn : churns.stringValue().split(",")) {
+                final String result = run(Integer.parseInt(numberOfCounters.trim()),
+                        Long.parseLong(churn.trim()),
+                        periodMicros,
+                        durationMillis);
+                System.out.println(result);
+                results.add(result);
+            }
+        }
+
+        try (PrintWriter writer = new PrintWriter(
+                new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8))) {
+            writer.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                writer.print("  ");
+                writer.print(results.get(i));
+                writer.println(i < results.size() - 1 ? "," : "");
+            }
+            writer.println("]");
+        }
+
+        System.out.println("results: " + outputFile.getPath());
+    }
+
+    public static void main(final String[] args) {
+        new MCountersVisibilityBenchmark(args).start();
+    }
+
+    private static String run(final int numberOfCounters,
+                              final long churn,
+                              final long periodMicros,
+                              final long durationMillis) throws IOException, InterruptedException {
+        if (numberOfCounters < 1 || numberOfCounters > MCountersWriter.MAX_POSSIBLE_NUMBER_OF_COUNTERS) {
+            throw new IllegalArgumentException("Incorrect number of counters: " + numberOfCounters);
+        }
+        if (churn < 0) {
+            throw new IllegalArgumentException("Incorrect churn: " + churn);
+        }
+
+        final File countersFile = new File(MCountersUtils.getMCountersDirectoryName(),
+                "visibility-" + numberOfCounters + "-" + churn + ".dat");
+        countersFile.delete();
+
+        final Process writer = launch(Writer.class,
+                countersFile.getAbsolutePath(),
+                Integer.toString(numberOfCounters),
+                Long.toString(churn),
+                Long.toString(periodMicros));
+        try {
+            final Process reader = launch(Reader.class,
+                    countersFile.getAbsolutePath(),
+                    Integer.toString(numberOfCounters),
+                    Long.toString(churn),
+                    Long.toString(durationMillis));
+
+            String result = null;
+            try (BufferedReader input = new BufferedReader(
+                    new InputStreamReader(reader.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = input.readLine()) != null) {
+                    result = line;
+                }
+            }
+            final int exitCode = reader.waitFor();
+            if (exitCode != 0 || result == null) {
+                throw new IOException("Reader failed with exit code " + exitCode + " for " + numberOfCounters +
+                        " counters and churn " + churn + ": " + result);
+            }
+            return result;
+        } finally {
+            writer.destroy();
+            writer.waitFor();
+            countersFile.delete();
+        }
+    }
+
+    private static Process launch(final Class<?> main, final String... args) throws IOException {
+        final List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-D" + MCountersUtils.MCOUNTERS_DIR_PROP_NAME + "=" +
+                MCountersUtils.getMCountersDirectoryName());
+        command.add(main.getName());
+        command.addAll(Arrays.asList(args));
+
+        return new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    static String percentiles(final long[] samples, final int numberOfSamples) {
+        Arrays.sort(samples, 0, numberOfSamples);
+
+        final StringBuilder result = new StringBuilder("{");
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            final int index = (int) Math.ceil(PERCENTILES[i] / 100 * numberOfSamples) - 1;
+            result.append('"').append(PERCENTILE_NAMES[i]).append("\":")
+                    .append(numberOfSamples > 0 ? samples[Math.max(0, Math.min(index, numberOfSamples - 1))] : 0)
+                    .append(',');
+        }
+        result.append("\"max\":").append(numberOfSamples > 0 ? samples[numberOfSamples - 1] : 0).append('}');
+        return result.toString();
+    }
+
+    /**
+     * Updates the probe counter and churns the rest of the counters until it's destroyed.
+     */
+    public static final class Writer {
+        private Writer() {
+        }
+
+        public static void main(final String[] args) throws Exception {
+            final File countersFile = new File(args[0]);
+            final int numberOfCounters = Integer.parseInt(args[1]);
+            final long churn = Long.parseLong(args[2]);
+            final long periodNanos = TimeUnit.MICROSECONDS.toNanos(Long.parseLong(args[3]));
+
+            try (MCountersWriter writer = new MCountersWriter(countersFile, null, numberOfCounters)) {
+                final MCounter probe = writer.addCounter(PROBE_LABEL);
+
+                final MCounter[] churned = new MCounter[numberOfCounters - 1];
+                for (int i = 0; i < churned.length; i++) {
+                    churned[i] = writer.addCounter("counter." + i, i);
+                }
+
+                final boolean churning = churn > 0 && churned.length > 0;
+                final long churnPeriodNanos = churning ? TimeUnit.SECONDS.toNanos(1) / churn : 0;
+
+                long nextUpdateTime = System.nanoTime();
+                long nextChurnTime = nextUpdateTime;
+                int churnIndex = 0;
+
+                while (true) {
+                    final long now = System.nanoTime();
+
+                    if (now - nextUpdateTime >= 0) {
+                        probe.set(now);
+                        nextUpdateTime = now + periodNanos;
+                    }
+
+                    if (churning && now - nextChurnTime >= 0) {
+                        churned[churnIndex].close();
+                        churned[churnIndex] = writer.addCounter("counter." + churnIndex, churnIndex);
+                        churnIndex = (churnIndex + 1) % churned.length;
+                        nextChurnTime += churnPeriodNanos;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures the latency of the updates of the probe counter and the throughput of the scans,
+     * then prints the results as one JSON object.
+     */
+    public static final class Reader {
+        private Reader() {
+        }
+
+        public static void main(final String[] args) throws Exception {
+            final File countersFile = new File(args[0]);
+            final int numberOfCounters = Integer.parseInt(args[1]);
+            final long churn = Long.parseLong(args[2]);
+            final long durationNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(args[3]));
+
+            try (MCountersReader reader = open(countersFile, numberOfCounters)) {
+                final long[] probeId = {-1};
+                reader.forEachCounter((id, label, value) -> {
+                    if (PROBE_LABEL.equals(label)) {
+                        probeId[0] = id;
+                    }
+                });
+
+                final long[] latencies = new long[MAX_NUMBER_OF_SAMPLES];
+                int numberOfLatencies = 0;
+
+                long lastValue = reader.getCounterValue(probeId[0]);
+
+                final long latencyEndTime = System.nanoTime() + durationNanos;
+                long now = System.nanoTime();
+                while (now - latencyEndTime < 0 && numberOfLatencies < latencies.length) {
+                    final long value = reader.getCounterValue(probeId[0]); // the probe is in the first slot,
+                    // so the lookup is short
+                    now = System.nanoTime(); // after the read, so the latency isn't underestimated
+                    if (value != lastValue) {
+                        latencies[numberOfLatencies++] = now - value;
+                        lastValue = value;
+                    }
+                }
+
+                final long[] sum = {0};
+                final MCounterValueConsumer valueConsumer = (id, value) -> sum[0] += value;
+                final MCounterConsumer counterConsumer = (id, label, value) -> sum[0] += label.length();
+
+                final long scanNanos = durationNanos / 2;
+                final long valueScans = scans(() -> reader.forEachCounterValue(valueConsumer), scanNanos);
+                final long counterScans = scans(() -> reader.forEachCounter(counterConsumer), scanNanos);
+
+                final double scanSeconds = scanNanos / 1e9;
+
+                System.out.println("{\"counters\":" + numberOfCounters +
+                        ",\"churn\":" + churn +
+                        ",\"samples\":" + numberOfLatencies +
+                        ",\"latencyNanos\":" + percentiles(latencies, numberOfLatencies) +
+                        ",\"valueScansPerSecond\":" + Math.round(valueScans / scanSeconds) +
+                        ",\"counterScansPerSecond\":" + Math.round(counterScans / scanSeconds) +
+                        ",\"checksum\":" + (sum[0] & 1) + "}"); // keeps the scans from being eliminated
+            }
+        }
+
+        private static MCountersReader open(final File countersFile, final int numberOfCounters)
+                throws InterruptedException, IOException {
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (true) {
+                try {
+                    final MCountersReader reader = new MCountersReader(countersFile);
+                    final int[] allocated = {0};
+                    reader.forEachCounterValue((id, value) -> allocated[0]++);
+                    if (allocated[0] >= numberOfCounters - 1) { // the writer has allocated its counters,
+                        // one of them may be churned at the moment
+                        return reader;
+                    }
+                    reader.close();
+                } catch (final IOException e) {
+                    if (System.nanoTime() - deadline > 0) {
+                        throw e;
+                    }
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IOException("The writer hasn't allocated its counters in time");
+                }
+                Thread.sleep(10);
+            }
+        }
+
+        private static long scans(final Runnable scan, final long durationNanos) {
+            final long endTime = System.nanoTime() + durationNanos;
+            long result = 0;
+            while (System.nanoTime() - endTime < 0) {
+                scan.run();
+                result++;
+            }
+            return result;
+        }
+    }
+}
@@ -23,28 +23,17 @@
  */
 package org.java.mc4j;
 
-import sun.misc.Unsafe;
-
-import java.nio.Buffer;
 import java.nio.ByteBuffer;
 
 /**
  * This is a wrapper around {@code java.nio.DirectByteBuffer} to provide direct memory access.
+ * The memory is accessed with {@code sun.misc.Unsafe}, {@code VarHandle}s or {@code MemorySegment}s
+ * depending on the JVM (see {@link MemoryAccess}).
  */
 public class DirectMemoryBuffer {
-    private static final Unsafe UNSAFE = UnsafeAccess.getUnsafe();
-    private static final long ARRAY_BASE_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
-    private static final long BYTE_BUFFER_ADDRESS_FIELD_OFFSET;
-
-    static {
-        try {
-            BYTE_BUFFER_ADDRESS_FIELD_OFFSET =
-                    UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
-        } catch (final Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
+    private static final MemoryAccess MEMORY_ACCESS = MemoryAccess.INSTANCE;
 
+    private final Object memory;
     private final long addressOffset;
     private final int capacity;
 
@@ -59,11 +48,19 @@ public class DirectMemoryBuffer {
             throw new IllegalArgumentException("Only direct byte buffers supported");
         }
 
-        final long address = UNSAFE.getLong(buffer, BYTE_BUFFER_ADDRESS_FIELD_OFFSET);
-        addressOffset = address + offset;
+        memory = MEMORY_ACCESS.memory(buffer);
+        addressOffset = MEMORY_ACCESS.baseOffset(buffer) + offset;
         capacity = length;
     }
 
+    /**
+     * Returns the name of the memory access of the JVM: {@code unsafe}, {@code varhandle} or {@code segment}.
+     * @return the name of the memory access
+     */
+    public static String memoryAccess() {
+        return MEMORY_ACCESS.name();
+    }
+
     /**
      * Returns capacity of the buffer.
      * @return capacity of the buffer
@@ -73,78 +70,70 @@ public class DirectMemoryBuffer {
     }
 
     public int getInt(final int index) {
-        return UNSAFE.getInt(null, addressOffset + index);
+        return MEMORY_ACCESS.getInt(memory, addressOffset + index);
     }
 
     public int getIntVolatile(final int index) {
-        return UNSAFE.getIntVolatile(null, addressOffset + index);
+        return MEMORY_ACCESS.getIntVolatile(memory, addressOffset + index);
     }
 
     public void putInt(final int index, final int value) {
-        UNSAFE.putInt(null, addressOffset + index, value);
+        MEMORY_ACCESS.putInt(memory, addressOffset + index, value);
     }
 
     public void putIntOrdered(final int index, final int value) {
-        UNSAFE.putOrderedInt(null, addressOffset + index, value);
+        MEMORY_ACCESS.putIntOrdered(memory, addressOffset + index, value);
     }
 
     public void putIntVolatile(final int index, final int value) {
-        UNSAFE.putIntVolatile(null, addressOffset + index, value);
+        MEMORY_ACCESS.putIntVolatile(memory, addressOffset + index, value);
     }
 
     public long getLong(final int index) {
-        return UNSAFE.getLong(null, addressOffset + index);
+        return MEMORY_ACCESS.getLong(memory, addressOffset + index);
     }
 
     public long getLongVolatile(final int index) {
-        return UNSAFE.getLongVolatile(null, addressOffset + index);
+        return MEMORY_ACCESS.getLongVolatile(memory, addressOffset + index);
     }
 
     public void putLong(final int index, final long value) {
-        UNSAFE.putLong(null, addressOffset + index, value);
+        MEMORY_ACCESS.putLong(memory, addressOffset + index, value);
     }
 
     public void putLongOrdered(final int index, final long value) {
-        UNSAFE.putOrderedLong(null, addressOffset + index, value);
+        MEMORY_ACCESS.putLongOrdered(memory, addressOffset + index, value);
     }
 
     public void putLongVolatile(final int index, final long value) {
-        UNSAFE.putLongVolatile(null, addressOffset + index, value);
+        MEMORY_ACCESS.putLongVolatile(memory, addressOffset + index, value);
     }
 
     public long getAndAddLong(final int index, final long increment) {
-        return UNSAFE.getAndAddLong(null, addressOffset + index, increment);
+        return MEMORY_ACCESS.getAndAddLong(memory, addressOffset + index, increment);
     }
 
     public long getAndSetLong(final int index, final long value) {
-        return UNSAFE.getAndSetLong(null, addressOffset + index, value);
+        return MEMORY_ACCESS.getAndSetLong(memory, addressOffset + index, value);
     }
 
     public boolean compareAndSwapLong(final int index, final long expectedValue, final long newValue) {
-        return UNSAFE.compareAndSwapLong(null, addressOffset + index, expectedValue, newValue);
+        return MEMORY_ACCESS.compareAndSwapLong(memory, addressOffset + index, expectedValue, newValue);
     }
 
     public void getBytes(final int index, final byte[] dst) {
-        UNSAFE.copyMemory(null, addressOffset + index, dst, ARRAY_BASE_OFFSET, dst.length);
+        MEMORY_ACCESS.getBytes(memory, addressOffset + index, dst, 0, dst.length);
     }
 
     public void getBytes(final int index, final byte[] dst, final int offset, final int length) {
-        UNSAFE.copyMemory(null,
-                addressOffset + index,
-                dst,
-                ARRAY_BASE_OFFSET + offset,
-                length);
+        MEMORY_ACCESS.getBytes(memory, addressOffset + index, dst, offset, length);
     }
 
     public void putBytes(final int index, final byte[] src) {
-        UNSAFE.copyMemory(src,
-                ARRAY_BASE_OFFSET,
-                null,
-                addressOffset + index,
-                src.length);
+        MEMORY_ACCESS.putBytes(memory, addressOffset + index, src, 0, src.length);
     }
 
     public void putBytes(final int index, final byte[] src, final int offset, final int length) {
-        UNSAFE.copyMemory(src, ARRAY_BASE_OFFSET + offset, null, addressOffset + index, length);
+        MEMORY_ACCESS.putBytes(memory, addressOffset + index, src, offset, length);
     }
 }
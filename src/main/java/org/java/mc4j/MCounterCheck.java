@@ -0,0 +1,95 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+/**
+ * Checks of the counters' updates, which catch the use of a counter after its slot has been freed, so a stale counter
+ * doesn't corrupt a newer counter, which has reused the slot. The slot's idStatus word is stamped with the ID of
+ * its counter, which is never reused by a writer, so a counter is valid while the word keeps its ID with
+ * the allocated status. An update of an invalid counter throws {@link IllegalStateException}.
+ * <p>
+ * The checks are set per writer with {@link MCountersWriter#setCounterCheck(MCounterCheck)} for the counters added
+ * afterwards, or with the {@link #CHECK_PROP_NAME} property.
+ */
+public enum MCounterCheck {
+    /**
+     * No checks, the updates are as cheap as possible.
+     */
+    NONE,
+    /**
+     * One in {@link #sampling()} updates of a counter, picked at random, is checked, so the stale counters are
+     * caught in production without a volatile read of the metadata on every update.
+     */
+    SAMPLED,
+    /**
+     * Every update is checked.
+     */
+    FULL;
+
+    /**
+     * Property name for the checks of the writers, which haven't been set.
+     */
+    public static final String CHECK_PROP_NAME = "mcounters.counter.check";
+    /**
+     * Property name for the average number of updates of a counter per check in the {@link #SAMPLED} mode.
+     */
+    public static final String SAMPLING_PROP_NAME = "mcounters.counter.check.sampling";
+    public static final int SAMPLING_DEFAULT = 1024;
+
+    /**
+     * Returns the checks set with the {@link #CHECK_PROP_NAME} property or {@link #NONE}.
+     *
+     * @return the default checks
+     */
+    public static MCounterCheck defaultCheck() {
+        return defaultCheck(System.getProperty(CHECK_PROP_NAME));
+    }
+
+    /**
+     * Returns the checks by their name.
+     *
+     * @param name The name of the checks, can be {@code null}
+     * @return the checks or {@link #NONE} if the name is unknown
+     */
+    static MCounterCheck defaultCheck(final String name) {
+        if (name != null) {
+            try {
+                return valueOf(name.trim().toUpperCase());
+            } catch (final IllegalArgumentException ignore) { // unknown, e.g. misspelled
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns the average number of updates of a counter per check in the {@link #SAMPLED} mode set with
+     * the {@link #SAMPLING_PROP_NAME} property, rounded up to a power of 2.
+     *
+     * @return the number of updates per check
+     */
+    public static int sampling() {
+        return MCountersUtils.findNextPositivePowerOfTwo(
+                Math.max(1, Integer.getInteger(SAMPLING_PROP_NAME, SAMPLING_DEFAULT)));
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Checkpoints the counters of a writer on a daemon thread, so their values survive a restart of the machine
+ * (see {@link MCountersWriter#startCheckpoints(File, long)}). A checkpoint is either a snapshot of the counters
+ * written to a temporary file, forced to the storage and renamed to the checkpoint's file, so the checkpoint is
+ * never torn, or, without a checkpoint's file, a force (msync) of the counters' file itself if it's on
+ * persistent storage.
+ */
+final class MCountersCheckpointer {
+    static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    private final ByteBuffer buffer;
+    private final File checkpointFile; // null - the counters' file is forced
+    private final long interval; // millis
+
+    private final Thread thread;
+    private boolean running = true;
+
+    MCountersCheckpointer(final ByteBuffer buffer, final File checkpointFile, final long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive: " + interval);
+        }
+        if (checkpointFile == null && !(buffer instanceof MappedByteBuffer)) {
+            throw new IllegalArgumentException("No file to force, a checkpoint's file is required");
+        }
+        this.buffer = buffer;
+        this.checkpointFile = checkpointFile;
+        this.interval = interval;
+
+        thread = new Thread(this::run, "mc4j-checkpointer");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Takes a checkpoint now.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    synchronized void checkpoint() throws IOException {
+        if (checkpointFile == null) {
+            ((MappedByteBuffer) buffer).force();
+            return;
+        }
+
+        final File tempFile = new File(checkpointFile.getPath() + TEMP_FILE_EXTENSION);
+        final ByteBuffer snapshot = buffer.duplicate();
+        snapshot.clear();
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), CREATE, TRUNCATE_EXISTING, WRITE)) {
+            while (snapshot.hasRemaining()) {
+                channel.write(snapshot);
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile.toPath(), checkpointFile.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    /**
+     * Stops the thread. The buffer isn't used after the return unless {@link #checkpoint()} is called.
+     */
+    void stop() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void run() {
+        long checkpointTime = System.currentTimeMillis() + interval;
+        while (running) {
+            final long now = System.currentTimeMillis();
+            if (now < checkpointTime) {
+                try {
+                    wait(checkpointTime - now);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+
+            try {
+                checkpoint();
+            } catch (final IOException ignore) { // try again next time
+            }
+
+            checkpointTime += interval;
+            if (checkpointTime <= now) { // too late, skip the missed checkpoints
+                checkpointTime = now + interval;
+            }
+        }
+    }
+}
@@ -27,6 +27,11 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public final class MCountersDecoder extends MCountersLayout {
+    /**
+     * Returned by {@link #forEachChange(long, MCounterChangeConsumer)} if some changes have been lost and
+     * the counters should be rescanned completely.
+     */
+    public static final long CHANGES_LOST = -1;
 
     public static MCountersDecoder prepare(final ByteBuffer countersByteBuffer) {
         final DirectMemoryBuffer header =
@@ -35,20 +40,29 @@ public final class MCountersDecoder extends MCountersLayout {
         final int staticsLength = header.getIntVolatile(HEADER_STATICS_LENGTH_OFFSET); // HB read
         final int metadataLength = header.getInt(HEADER_METADATA_LENGTH_OFFSET);
         final int valuesLength = header.getInt(HEADER_VALUES_LENGTH_OFFSET);
+        final int changesLength = header.getInt(HEADER_CHANGES_LENGTH_OFFSET);
 
         return new MCountersDecoder(header,
                 new DirectMemoryBuffer(countersByteBuffer, HEADER_LENGTH, staticsLength),
                 new DirectMemoryBuffer(countersByteBuffer, HEADER_LENGTH + staticsLength, metadataLength),
                 new DirectMemoryBuffer(countersByteBuffer,
                         HEADER_LENGTH + staticsLength + metadataLength,
-                        valuesLength));
+                        valuesLength),
+                new DirectMemoryBuffer(countersByteBuffer,
+                        HEADER_LENGTH + staticsLength + metadataLength + valuesLength,
+                        changesLength));
     }
 
+    private final int numberOfChanges;
+
     public MCountersDecoder(final DirectMemoryBuffer header,
                             final DirectMemoryBuffer statics,
                             final DirectMemoryBuffer countersMetadata,
-                            final DirectMemoryBuffer countersValues) {
-        super(header, statics, countersMetadata, countersValues);
+                            final DirectMemoryBuffer countersValues,
+                            final DirectMemoryBuffer countersChanges) {
+        super(header, statics, countersMetadata, countersValues, countersChanges);
+
+        numberOfChanges = numberOfChanges(countersChanges.capacity());
     }
 
     public int getVersion() {
@@ -63,6 +77,14 @@ public final class MCountersDecoder extends MCountersLayout {
         return header.getLongVolatile(HEADER_START_TIME_OFFSET);
     }
 
+    public MCountersPreTouch getPreTouch() {
+        return MCountersPreTouch.fromCode(header.getIntVolatile(HEADER_PRE_TOUCH_OFFSET));
+    }
+
+    public long getPreTouchedLength() {
+        return header.getLongVolatile(HEADER_PRE_TOUCHED_LENGTH_OFFSET);
+    }
+
     public void forEachStatic(final StaticConsumer consumer) {
         int offset = STATICS_NUMBER_OF_STATICS_OFFSET;
 
@@ -159,6 +181,46 @@ public final class MCountersDecoder extends MCountersLayout {
         }
     }
 
+    /**
+     * The same as {@link #forEachCounter(MCounterConsumer)}, but doesn't decode labels of the counters,
+     * so it's much cheaper to be called periodically.
+     *
+     * @param consumer of the counters' values
+     */
+    public void forEachCounterValue(final MCounterValueConsumer consumer) {
+        int metadataOffset = 0;
+        int valueOffset = 0;
+
+        _stop:
+        while (metadataOffset < metadata.capacity()) {
+            final int idStatusOffset = metadataOffset + METADATA_COUNTER_ID_STATUS_OFFSET;
+
+            final long idStatus = metadata.getLongVolatile(idStatusOffset); // HB read
+
+            final int status = extractStatus(idStatus);
+
+            switch (status) {
+                case COUNTER_STATUS_NOT_USED:
+                    break _stop;
+
+                case COUNTER_STATUS_ALLOCATED:
+                    final long value = values.getLong(valueOffset);
+
+                    if (metadata.getLongVolatile(idStatusOffset) == idStatus) { // the counter's status
+                        // wasn't changed yet
+                        consumer.accept(extractId(idStatus), value);
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+
+            metadataOffset += METADATA_RECORD_LENGTH;
+            valueOffset += VALUES_COUNTER_LENGTH;
+        }
+    }
+
     public long getCounterValue(final long counterId) throws MCounterNotFoundException {
         int metadataOffset = 0;
         int valueOffset = 0;
@@ -199,6 +261,71 @@ public final class MCountersDecoder extends MCountersLayout {
         throw new MCounterNotFoundException(counterId);
     }
 
+    /**
+     * Returns the slot of the counter, so its value can be read with {@link #getCounterValue(int, long)}
+     * without searching for the counter.
+     *
+     * @param counterId id of the counter
+     * @return slot of the counter
+     * @throws MCounterNotFoundException if there is no such counter
+     */
+    public int getCounterSlot(final long counterId) throws MCounterNotFoundException {
+        int metadataOffset = 0;
+        int slot = 0;
+
+        while (metadataOffset < metadata.capacity()) {
+            final int idStatusOffset = metadataOffset + METADATA_COUNTER_ID_STATUS_OFFSET;
+
+            final long idStatus = metadata.getLongVolatile(idStatusOffset); // HB read
+
+            final int status = extractStatus(idStatus);
+
+            if (status == COUNTER_STATUS_NOT_USED) {
+                break;
+            }
+
+            if (status == COUNTER_STATUS_ALLOCATED && extractId(idStatus) == counterId) {
+                return slot;
+            }
+
+            metadataOffset += METADATA_RECORD_LENGTH;
+            slot++;
+        }
+
+        throw new MCounterNotFoundException(counterId);
+    }
+
+    /**
+     * Returns the value of the counter in the slot.
+     *
+     * @param slot      slot of the counter, see {@link #getCounterSlot(long)} and
+     *                  {@link #forEachChange(long, MCounterChangeConsumer)}
+     * @param counterId id of the counter
+     * @return value of the counter
+     * @throws MCounterNotFoundException if the slot doesn't hold the counter anymore
+     */
+    public long getCounterValue(final int slot, final long counterId) throws MCounterNotFoundException {
+        if (slot < 0 || slot >= metadata.capacity() / METADATA_RECORD_LENGTH) {
+            throw new MCounterNotFoundException(counterId);
+        }
+
+        final int idStatusOffset = slot * METADATA_RECORD_LENGTH + METADATA_COUNTER_ID_STATUS_OFFSET;
+
+        final long idStatus = metadata.getLongVolatile(idStatusOffset); // HB read
+
+        if (extractStatus(idStatus) != COUNTER_STATUS_ALLOCATED || extractId(idStatus) != counterId) {
+            throw new MCounterNotFoundException(counterId);
+        }
+
+        final long value = values.getLong(slot * VALUES_COUNTER_LENGTH);
+
+        if (metadata.getLongVolatile(idStatusOffset) != idStatus) { // the counter has been freed meanwhile
+            throw new MCounterNotFoundException(counterId);
+        }
+
+        return value;
+    }
+
     public String getCounterLabel(final long counterId) throws MCounterNotFoundException {
         int metadataOffset = 0;
 
@@ -239,4 +366,71 @@ public final class MCountersDecoder extends MCountersLayout {
 
         throw new MCounterNotFoundException(counterId);
     }
+
+    /**
+     * Returns the sequence of the next change to be recorded. A reader should take the sequence before
+     * a full scan of the counters and then pass it to {@link #forEachChange(long, MCounterChangeConsumer)}
+     * to catch up incrementally.
+     *
+     * @return sequence of the next change or {@link #CHANGES_LOST} if there is no changes' ring buffer
+     */
+    public long getChangesSequence() {
+        if (numberOfChanges == 0) {
+            return CHANGES_LOST;
+        }
+        return changes.getLongVolatile(CHANGES_NEXT_SEQUENCE_OFFSET); // HB read
+    }
+
+    /**
+     * Passes all recorded allocations and frees of the counters, starting from the sequence specified,
+     * to the consumer.
+     *
+     * @param fromSequence sequence of the first change to be consumed
+     * @param consumer     of the changes
+     * @return sequence to continue from or {@link #CHANGES_LOST} if the changes since {@code fromSequence}
+     * have been overwritten already, so the counters should be rescanned completely
+     */
+    public long forEachChange(final long fromSequence, final MCounterChangeConsumer consumer) {
+        if (numberOfChanges == 0 || fromSequence < 0) {
+            return CHANGES_LOST;
+        }
+
+        final int changesMask = numberOfChanges - 1;
+
+        final long nextSequence = changes.getLongVolatile(CHANGES_NEXT_SEQUENCE_OFFSET); // HB read
+
+        if (fromSequence > nextSequence || nextSequence - fromSequence > numberOfChanges) {
+            return CHANGES_LOST;
+        }
+
+        long sequence = fromSequence;
+
+        while (sequence < nextSequence) {
+            final int recordOffset = CHANGES_RECORDS_OFFSET +
+                    (int) (sequence & changesMask) * CHANGES_RECORD_LENGTH;
+
+            final long recordSequence = changes.getLongVolatile(recordOffset + CHANGES_SEQUENCE_OFFSET);
+
+            if (recordSequence != sequence + 1) {
+                if (recordSequence > sequence + 1 ||
+                        changes.getLongVolatile(CHANGES_NEXT_SEQUENCE_OFFSET) - sequence > numberOfChanges) {
+                    return CHANGES_LOST; // the record has been overwritten by a newer change
+                }
+                break; // the change is still being recorded, so continue from it next time
+            }
+
+            final int slot = changes.getIntVolatile(recordOffset + CHANGES_SLOT_OFFSET);
+            final long idStatus = changes.getLongVolatile(recordOffset + CHANGES_ID_STATUS_OFFSET);
+
+            if (changes.getLongVolatile(recordOffset + CHANGES_SEQUENCE_OFFSET) != recordSequence) {
+                return CHANGES_LOST; // the record has been overwritten while we were reading it
+            }
+
+            consumer.accept(slot, extractId(idStatus), extractStatus(idStatus) == COUNTER_STATUS_ALLOCATED);
+
+            sequence++;
+        }
+
+        return sequence;
+    }
 }
\ No newline at end of file
@@ -35,7 +35,8 @@ public final class MCountersEncoder extends MCountersLayout {
         int result = STATICS_RECORDS_OFFSET; // some space for number of statics
 
         if (statics == null || statics.isEmpty()) {
-            return result;
+            // the next sections must stay aligned for atomic accesses of their longs
+            return MCountersUtils.align(result, MCountersUtils.SIZE_OF_CACHE_LINE * 2);
         }
 
         final List<String> labels = new ArrayList<>(statics.stringPropertyNames());
@@ -63,27 +64,62 @@ public final class MCountersEncoder extends MCountersLayout {
         return numberOfCounters * VALUES_COUNTER_LENGTH;
     }
 
+    /**
+     * Returns length of the changes' ring buffer. The number of changes is rounded up to a power of 2.
+     *
+     * @param numberOfChanges the ring buffer should keep. 0 means no changes' ring buffer.
+     * @return length of the changes' ring buffer
+     */
+    public static int changesLength(final int numberOfChanges) {
+        if (numberOfChanges <= 0) {
+            return 0;
+        }
+        return CHANGES_RECORDS_OFFSET +
+                MCountersUtils.findNextPositivePowerOfTwo(numberOfChanges) * CHANGES_RECORD_LENGTH;
+    }
+
+    private final int changesMask;
+
     public MCountersEncoder(final ByteBuffer countersByteBuffer,
                             final int staticsLength,
                             final int metadataLength,
                             final int valuesLength) {
+        this(countersByteBuffer, staticsLength, metadataLength, valuesLength, 0);
+    }
+
+    public MCountersEncoder(final ByteBuffer countersByteBuffer,
+                            final int staticsLength,
+                            final int metadataLength,
+                            final int valuesLength,
+                            final int changesLength) {
         this(new DirectMemoryBuffer(countersByteBuffer, 0, HEADER_LENGTH),
                 new DirectMemoryBuffer(countersByteBuffer, HEADER_LENGTH, staticsLength),
                 new DirectMemoryBuffer(countersByteBuffer, HEADER_LENGTH + staticsLength, metadataLength),
                 new DirectMemoryBuffer(countersByteBuffer,
                         HEADER_LENGTH + staticsLength + metadataLength,
-                        valuesLength));
+                        valuesLength),
+                new DirectMemoryBuffer(countersByteBuffer,
+                        HEADER_LENGTH + staticsLength + metadataLength + valuesLength,
+                        changesLength));
     }
 
     public MCountersEncoder(final DirectMemoryBuffer header,
                             final DirectMemoryBuffer statics,
                             final DirectMemoryBuffer metadata,
-                            final DirectMemoryBuffer values) {
-        super(header, statics, metadata, values);
+                            final DirectMemoryBuffer values,
+                            final DirectMemoryBuffer changes) {
+        super(header, statics, metadata, values, changes);
+
+        final int numberOfChanges = numberOfChanges(changes.capacity());
+        if (Integer.bitCount(numberOfChanges) > 1) {
+            throw new IllegalArgumentException("Number of changes must be a power of 2: " + numberOfChanges);
+        }
+        changesMask = numberOfChanges - 1;
 
         header.putInt(HEADER_STATICS_LENGTH_OFFSET, statics.capacity());
         header.putInt(HEADER_METADATA_LENGTH_OFFSET, metadata.capacity());
         header.putInt(HEADER_VALUES_LENGTH_OFFSET, values.capacity());
+        header.putInt(HEADER_CHANGES_LENGTH_OFFSET, numberOfChanges > 0 ? changes.capacity() : 0);
         // will be finished by HB write/volatile write of VERSION at the end
         // of header preparation
     }
@@ -100,6 +136,14 @@ public final class MCountersEncoder extends MCountersLayout {
         header.putLongVolatile(HEADER_START_TIME_OFFSET, startTime);
     }
 
+    public void setPreTouch(final MCountersPreTouch preTouch) {
+        header.putIntVolatile(HEADER_PRE_TOUCH_OFFSET, preTouch.code());
+    }
+
+    public void setPreTouchedLength(final long preTouchedLength) {
+        header.putLongOrdered(HEADER_PRE_TOUCHED_LENGTH_OFFSET, preTouchedLength);
+    }
+
     public void setStatics(final Properties statics) {
         int offset = 0;
 
@@ -145,6 +189,7 @@ public final class MCountersEncoder extends MCountersLayout {
     public int addCounter(final long id, final String label, final long initialValue) {
         int metadataOffset = 0;
         int valueOffset = 0;
+        int slot = 0;
 
         while (metadataOffset < metadata.capacity()) {
             final int idStatusOffset = metadataOffset + METADATA_COUNTER_ID_STATUS_OFFSET;
@@ -173,6 +218,8 @@ public final class MCountersEncoder extends MCountersLayout {
 
                         metadata.putLongOrdered(idStatusOffset, allocatedIdStatus); // HB write
 
+                        appendChange(slot, allocatedIdStatus);
+
                         return valueOffset;
                     }
 
@@ -183,13 +230,43 @@ public final class MCountersEncoder extends MCountersLayout {
 
             metadataOffset += METADATA_RECORD_LENGTH;
             valueOffset += VALUES_COUNTER_LENGTH;
+            slot++;
         }
 
         throw new IllegalArgumentException("There is no free space to add new counter");
     }
 
+    /**
+     * Checks whether the slot of the value is still allocated to the counter: the idStatus word of the slot keeps
+     * the counter's ID with the allocated status, i.e. the counter hasn't been freed and its slot hasn't been
+     * reused by another counter.
+     *
+     * @param id          The ID of the counter
+     * @param valueOffset The offset of the counter's value returned by {@link #addCounter(long, String, long)}
+     * @return {@code true} if the counter is allocated
+     */
+    public boolean isAllocated(final long id, final int valueOffset) {
+        return isAllocated(metadata, id, valueOffset);
+    }
+
+    /**
+     * Checks whether the slot of the value is allocated to the counter in the metadata, which can be a copy of
+     * the metadata of the encoder.
+     *
+     * @param metadata    The metadata of an encoder
+     * @param id          The ID of the counter
+     * @param valueOffset The offset of the counter's value
+     * @return {@code true} if the counter is allocated
+     */
+    static boolean isAllocated(final DirectMemoryBuffer metadata, final long id, final int valueOffset) {
+        final int idStatusOffset = valueOffset / VALUES_COUNTER_LENGTH * METADATA_RECORD_LENGTH +
+                METADATA_COUNTER_ID_STATUS_OFFSET;
+        return metadata.getLongVolatile(idStatusOffset) == makeIdStatus(id, COUNTER_STATUS_ALLOCATED); // HB read
+    }
+
     public boolean freeCounter(final long id) {
         int metadataOffset = 0;
+        int slot = 0;
 
         while (metadataOffset < metadata.capacity()) {
             final int idStatusOffset = metadataOffset + METADATA_COUNTER_ID_STATUS_OFFSET;
@@ -204,9 +281,11 @@ public final class MCountersEncoder extends MCountersLayout {
                 switch (status) {
                     case COUNTER_STATUS_ALLOCATED:
                         final long newIdStatus = makeIdStatus(id, COUNTER_STATUS_FREED);
-                        metadata.compareAndSwapLong(idStatusOffset, idStatus, newIdStatus); // HB write; we don't care
-                        // about result of CAS, since the counter may be freed by another thread already
-                        // (a race condition) and this is good for us anyway
+                        if (metadata.compareAndSwapLong(idStatusOffset, idStatus, newIdStatus)) { // HB write;
+                            // the counter may be freed by another thread already (a race condition) and this is
+                            // good for us anyway, but the change is recorded by the winner only
+                            appendChange(slot, newIdStatus);
+                        }
                         return true;
                     default:
                         return false;
@@ -214,7 +293,85 @@ public final class MCountersEncoder extends MCountersLayout {
             }
 
             metadataOffset += METADATA_RECORD_LENGTH;
+            slot++;
         }
         return false;
     }
+
+    /**
+     * Recovers the counters of a previous writer of the same memory: the counters, which allocation hasn't been
+     * finished, are freed, and the allocated ones are passed to the consumer to be adopted or freed later.
+     *
+     * @param consumer The consumer of the allocated counters
+     * @return the max ID of the counters ever allocated in the memory, so IDs of new counters don't clash with them
+     */
+    public long recoverCounters(final RecoveredCounterConsumer consumer) {
+        long maxId = 0;
+
+        int metadataOffset = 0;
+        int valueOffset = 0;
+        int slot = 0;
+
+        while (metadataOffset < metadata.capacity()) {
+            final int idStatusOffset = metadataOffset + METADATA_COUNTER_ID_STATUS_OFFSET;
+
+            final long idStatus = metadata.getLongVolatile(idStatusOffset); // HB read
+
+            final long id = extractId(idStatus);
+            maxId = Math.max(maxId, id);
+
+            switch (extractStatus(idStatus)) {
+                case COUNTER_STATUS_ALLOCATION_IN_PROGRESS:
+                    final long freedIdStatus = makeIdStatus(id, COUNTER_STATUS_FREED);
+                    metadata.putLongOrdered(idStatusOffset, freedIdStatus); // HB write
+                    appendChange(slot, freedIdStatus);
+                    break;
+                case COUNTER_STATUS_ALLOCATED:
+                    final int labelLength = metadata.getInt(metadataOffset + METADATA_LABEL_LENGTH_OFFSET);
+                    final byte[] labelBytes = new byte[labelLength];
+                    metadata.getBytes(metadataOffset + METADATA_LABEL_OFFSET, labelBytes);
+
+                    consumer.accept(id, new String(labelBytes, STRING_CHARSET), valueOffset);
+                    break;
+                default:
+                    break;
+            }
+
+            metadataOffset += METADATA_RECORD_LENGTH;
+            valueOffset += VALUES_COUNTER_LENGTH;
+            slot++;
+        }
+        return maxId;
+    }
+
+    /**
+     * Returns the label as it's stored in the metadata, i.e. truncated to the max length.
+     */
+    static String storedLabel(final String label) {
+        final byte[] labelBytes = label.getBytes(STRING_CHARSET);
+        return labelBytes.length <= METADATA_LABEL_MAX_LENGTH ?
+                label :
+                new String(labelBytes, 0, METADATA_LABEL_MAX_LENGTH, STRING_CHARSET);
+    }
+
+    @FunctionalInterface
+    public interface RecoveredCounterConsumer {
+        void accept(long id, String label, int valueOffset);
+    }
+
+    private void appendChange(final int slot, final long idStatus) {
+        if (changesMask < 0) { // no changes' ring buffer
+            return;
+        }
+
+        final long sequence = changes.getAndAddLong(CHANGES_NEXT_SEQUENCE_OFFSET, 1);
+
+        final int recordOffset = CHANGES_RECORDS_OFFSET + (int) (sequence & changesMask) * CHANGES_RECORD_LENGTH;
+
+        changes.putLongVolatile(recordOffset + CHANGES_SEQUENCE_OFFSET, 0); // invalidate the record for readers,
+        // which might be reading the lapped change right now
+        changes.putInt(recordOffset + CHANGES_SLOT_OFFSET, slot);
+        changes.putLong(recordOffset + CHANGES_ID_STATUS_OFFSET, idStatus);
+        changes.putLongOrdered(recordOffset + CHANGES_SEQUENCE_OFFSET, sequence + 1); // HB write
+    }
 }
\ No newline at end of file
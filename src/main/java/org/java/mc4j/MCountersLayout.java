@@ -48,7 +48,14 @@ import java.nio.charset.StandardCharsets;
  *  |                      Start time millis                        |
  *  |                                                               |
  *  +---------------------------------------------------------------+
- *  |                     96 bytes of padding                      ...
+ *  |                       Changes length                          |
+ *  +---------------------------------------------------------------+
+ *  |                     Pre-touch policy code                     |
+ *  +---------------------------------------------------------------+
+ *  |                      Pre-touched length                       |
+ *  |                                                               |
+ *  +---------------------------------------------------------------+
+ *  |                     80 bytes of padding                      ...
  * ...                                                              |
  *  +---------------------------------------------------------------+
  * </pre>
@@ -123,6 +130,38 @@ import java.nio.charset.StandardCharsets;
  * ...                                                              |
  *  +---------------------------------------------------------------+
  * </pre>
+ *
+ * <p>
+ * <b>Changes</b>
+ * <p>
+ * An optional ring buffer of allocation and free events of the counters. The number of records is a power of 2.
+ * A record of a change with the sequence S is stored at the position S modulo the number of records.
+ * The record's sequence field holds S + 1 and is written after the rest of the record.
+ * <pre>
+ *   0                   1                   2                   3
+ *   0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ *  +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ *  |                  Sequence of the next change                  |
+ *  |                                                               |
+ *  +---------------------------------------------------------------+
+ *  |                     120 bytes of padding                     ...
+ * ...                                                              |
+ *  +---------------------------------------------------------------+
+ *  |                   Change[0]'s sequence + 1                    |
+ *  |                                                               |
+ *  +---------------------------------------------------------------+
+ *  |                Change[0]'s counter slot index                 |
+ *  +---------------------------------------------------------------+
+ *  |                     4 bytes of padding                        |
+ *  +---------------------------------------------------------------+
+ *  |                Change[0]'s counter ID << 8 | Status           |
+ *  |                                                               |
+ *  +---------------------------------------------------------------+
+ *  |               Repeats for Change[1]-Change[N]                ...
+ *  |                                                               |
+ * ...                                                              |
+ *  +---------------------------------------------------------------+
+ * </pre>
  */
 
 public abstract class MCountersLayout {
@@ -137,9 +176,12 @@ public abstract class MCountersLayout {
     protected static final int HEADER_VALUES_LENGTH_OFFSET = HEADER_METADATA_LENGTH_OFFSET + MCountersUtils.SIZE_OF_INT;
     protected static final int HEADER_PID_OFFSET = HEADER_VALUES_LENGTH_OFFSET + MCountersUtils.SIZE_OF_INT;
     protected static final int HEADER_START_TIME_OFFSET = HEADER_PID_OFFSET + MCountersUtils.SIZE_OF_LONG;
+    protected static final int HEADER_CHANGES_LENGTH_OFFSET = HEADER_START_TIME_OFFSET + MCountersUtils.SIZE_OF_LONG;
+    protected static final int HEADER_PRE_TOUCH_OFFSET = HEADER_CHANGES_LENGTH_OFFSET + MCountersUtils.SIZE_OF_INT;
+    protected static final int HEADER_PRE_TOUCHED_LENGTH_OFFSET = HEADER_PRE_TOUCH_OFFSET + MCountersUtils.SIZE_OF_INT;
 
     static final int HEADER_LENGTH =
-            MCountersUtils.align(HEADER_START_TIME_OFFSET + MCountersUtils.SIZE_OF_LONG,
+            MCountersUtils.align(HEADER_PRE_TOUCHED_LENGTH_OFFSET + MCountersUtils.SIZE_OF_LONG,
                     MCountersUtils.SIZE_OF_CACHE_LINE * 2);
 
     protected static final int STATICS_NUMBER_OF_STATICS_OFFSET = 0;
@@ -165,6 +207,21 @@ public abstract class MCountersLayout {
 
     protected static final int VALUES_COUNTER_LENGTH = MCountersUtils.SIZE_OF_CACHE_LINE * 2;
 
+    protected static final int CHANGES_NEXT_SEQUENCE_OFFSET = 0;
+    protected static final int CHANGES_RECORDS_OFFSET = MCountersUtils.SIZE_OF_CACHE_LINE * 2;
+
+    protected static final int CHANGES_SEQUENCE_OFFSET = 0;
+    protected static final int CHANGES_SLOT_OFFSET = CHANGES_SEQUENCE_OFFSET + MCountersUtils.SIZE_OF_LONG;
+    protected static final int CHANGES_ID_STATUS_OFFSET = CHANGES_SLOT_OFFSET + MCountersUtils.SIZE_OF_LONG;
+    protected static final int CHANGES_RECORD_LENGTH = CHANGES_ID_STATUS_OFFSET + MCountersUtils.SIZE_OF_LONG;
+
+    protected static int numberOfChanges(final int changesLength) {
+        if (changesLength <= CHANGES_RECORDS_OFFSET) {
+            return 0;
+        }
+        return (changesLength - CHANGES_RECORDS_OFFSET) / CHANGES_RECORD_LENGTH;
+    }
+
     protected static final int COUNTER_STATUS_NOT_USED = 0;
     protected static final int COUNTER_STATUS_ALLOCATION_IN_PROGRESS = 1;
     protected static final int COUNTER_STATUS_ALLOCATED = 2;
@@ -186,15 +243,18 @@ public abstract class MCountersLayout {
     protected final DirectMemoryBuffer statics;
     protected final DirectMemoryBuffer metadata;
     protected final DirectMemoryBuffer values;
+    protected final DirectMemoryBuffer changes;
 
     protected MCountersLayout(final DirectMemoryBuffer header,
                               final DirectMemoryBuffer statics,
                               final DirectMemoryBuffer metadata,
-                              final DirectMemoryBuffer values) {
+                              final DirectMemoryBuffer values,
+                              final DirectMemoryBuffer changes) {
         this.header = header;
         this.statics = statics;
         this.metadata = metadata;
         this.values = values;
+        this.changes = changes;
     }
 
     public DirectMemoryBuffer header() {
@@ -212,4 +272,8 @@ public abstract class MCountersLayout {
     public DirectMemoryBuffer values() {
         return values;
     }
+
+    public DirectMemoryBuffer changes() {
+        return changes;
+    }
 }
@@ -0,0 +1,112 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+/**
+ * Policies of pre-touching pages of a new counters' file, so the page faults are taken before the counters are
+ * used. The policy of a file is recorded in its header together with the number of bytes pre-touched so far
+ * (see {@link MCountersReader#getPreTouch()} and {@link MCountersReader#getPreTouchedLength()}).
+ * <p>
+ * A page is touched by atomically adding zero to its first long, so the touch never loses a value written
+ * concurrently and the pages can be touched while the counters are in use.
+ */
+public enum MCountersPreTouch {
+    /**
+     * All the pages are touched by the writer's constructor.
+     */
+    EAGER(0),
+    /**
+     * The pages are touched by a few threads, which the writer's constructor waits for.
+     */
+    PARALLEL(1),
+    /**
+     * The pages are touched by a daemon thread, so the writer's constructor returns as soon as the header
+     * is valid.
+     */
+    BACKGROUND(2),
+    /**
+     * No pages are touched, they are faulted on the first use.
+     */
+    NONE(3);
+
+    /**
+     * Property name for the policy of the writers, which aren't given one.
+     */
+    public static final String PRE_TOUCH_PROP_NAME = "mcounters.pre.touch";
+
+    private final int code;
+
+    MCountersPreTouch(final int code) {
+        this.code = code;
+    }
+
+    /**
+     * Returns the code of the policy in the header of a counters' file.
+     *
+     * @return the code
+     */
+    public int code() {
+        return code;
+    }
+
+    /**
+     * Returns the policy by its code.
+     *
+     * @param code The code of the policy
+     * @return the policy or {@code null} if the code is unknown
+     */
+    public static MCountersPreTouch fromCode(final int code) {
+        for (final MCountersPreTouch preTouch : values()) {
+            if (preTouch.code == code) {
+                return preTouch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the policy set with the {@link #PRE_TOUCH_PROP_NAME} property or {@link #EAGER}.
+     *
+     * @return the default policy
+     */
+    public static MCountersPreTouch defaultPreTouch() {
+        return defaultPreTouch(System.getProperty(PRE_TOUCH_PROP_NAME));
+    }
+
+    /**
+     * Returns the policy by its name.
+     *
+     * @param name The name of the policy, can be {@code null}
+     * @return the policy or {@link #EAGER} if the name is unknown
+     */
+    static MCountersPreTouch defaultPreTouch(final String name) {
+        if (name != null) {
+            try {
+                return valueOf(name.trim().toUpperCase());
+            } catch (final IllegalArgumentException ignore) { // unknown, e.g. misspelled
+            }
+        }
+        return EAGER;
+    }
+}
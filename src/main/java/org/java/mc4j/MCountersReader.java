@@ -29,6 +29,7 @@ import java.nio.ByteBuffer;
 
 public final class MCountersReader implements AutoCloseable {
     private final ByteBuffer buffer;
+    private final boolean bufferOwned; // the buffer is mapped by the reader, so it's unmapped on close
     private final org.java.mc4j.MCountersDecoder decoder;
 
     public MCountersReader(final String countersFileName) throws IOException {
@@ -36,11 +37,29 @@ public final class MCountersReader implements AutoCloseable {
     }
 
     public MCountersReader(final File countersFile) throws IOException {
-        this(MCountersUtils.mapExistingFileReadOnly(countersFile));
+        this(MCountersUtils.mapExistingFileReadOnly(countersFile), true);
     }
 
+    /**
+     * Creates a reader over a buffer, for example the buffer of {@link MCountersWriter} in the same process
+     * (see {@link MCountersWriter#countersBuffer()}). The buffer is owned by the caller: it isn't unmapped or freed
+     * when the reader is closed.
+     *
+     * @param countersBuffer The direct buffer of counters
+     * @throws IOException if the counters haven't been initialized yet or their version is unknown
+     */
     public MCountersReader(final ByteBuffer countersBuffer) throws IOException {
+        this(countersBuffer, false);
+    }
+
+    private MCountersReader(final ByteBuffer countersBuffer, final boolean bufferOwned) throws IOException {
         buffer = countersBuffer;
+        this.bufferOwned = bufferOwned;
+
+        if (countersBuffer.capacity() < MCountersLayout.HEADER_LENGTH) { // the file has just been created
+            // and isn't sized yet
+            throw new IOException("Counters haven't been initialized yet");
+        }
 
         decoder = MCountersDecoder.prepare(countersBuffer);
 
@@ -65,6 +84,25 @@ public final class MCountersReader implements AutoCloseable {
         return decoder.getStartTime();
     }
 
+    /**
+     * Returns the policy the writer pre-touches the counters' pages with.
+     *
+     * @return the policy or {@code null} if it's unknown
+     */
+    public MCountersPreTouch getPreTouch() {
+        return decoder.getPreTouch();
+    }
+
+    /**
+     * Returns the number of bytes from the beginning of the counters, which pages have been pre-touched.
+     * It grows while the pages are pre-touched in the background.
+     *
+     * @return the number of bytes
+     */
+    public long getPreTouchedLength() {
+        return decoder.getPreTouchedLength();
+    }
+
     public void forEachStatic(final StaticConsumer consumer) {
         decoder.forEachStatic(consumer);
     }
@@ -77,16 +115,38 @@ public final class MCountersReader implements AutoCloseable {
         decoder.forEachCounter(consumer);
     }
 
+    public void forEachCounterValue(final MCounterValueConsumer consumer) {
+        decoder.forEachCounterValue(consumer);
+    }
+
     public long getCounterValue(final long counterId) throws MCounterNotFoundException {
         return decoder.getCounterValue(counterId);
     }
 
+    public int getCounterSlot(final long counterId) throws MCounterNotFoundException {
+        return decoder.getCounterSlot(counterId);
+    }
+
+    public long getCounterValue(final int slot, final long counterId) throws MCounterNotFoundException {
+        return decoder.getCounterValue(slot, counterId);
+    }
+
     public String getCounterLabel(final long counterId) throws MCounterNotFoundException {
         return decoder.getCounterLabel(counterId);
     }
 
+    public long getChangesSequence() {
+        return decoder.getChangesSequence();
+    }
+
+    public long forEachChange(final long fromSequence, final MCounterChangeConsumer consumer) {
+        return decoder.forEachChange(fromSequence, consumer);
+    }
+
     @Override
     public void close() throws IOException {
-        MCountersUtils.unmap(buffer);
+        if (bufferOwned) {
+            MCountersUtils.unmap(buffer);
+        }
     }
 }
\ No newline at end of file
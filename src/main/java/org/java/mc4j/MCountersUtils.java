@@ -32,6 +32,13 @@ import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static java.lang.System.getProperty;
 import static java.lang.invoke.MethodType.methodType;
@@ -62,6 +69,22 @@ public class MCountersUtils {
      */
     public static final int FILE_PAGE_SIZE;
 
+    /**
+     * Property name for comma-separated directories, which files are backed by huge pages, for example
+     * a tmpfs mount with transparent huge pages. Mounts of hugetlbfs are found without the property.
+     */
+    public static final String HUGE_PAGE_DIRS_PROP_NAME = "mcounters.huge.page.dirs";
+
+    /**
+     * Property name for the size of huge pages of the directories set with {@link #HUGE_PAGE_DIRS_PROP_NAME}.
+     */
+    public static final String HUGE_PAGE_SIZE_PROP_NAME = "mcounters.huge.page.size";
+
+    /**
+     * Default size of huge pages.
+     */
+    public static final int HUGE_PAGE_SIZE_DEFAULT = 2 * 1024 * 1024;
+
     /**
      *
      */
@@ -85,10 +108,15 @@ public class MCountersUtils {
 
     private static final boolean IS_LINUX;
 
+    private static final Map<Path, Integer> HUGE_PAGE_DIRS; // page sizes by directories
+
     private static final MethodHandle INVOKE_CLEANER;
     private static final MethodHandle GET_CLEANER;
     private static final MethodHandle CLEAN;
 
+    private static final long[] DURATION_UNITS = {24 * 60 * 60 * 1000L, 60 * 60 * 1000L, 60 * 1000L, 1000L, 1L};
+    private static final String[] DURATION_UNIT_NAMES = {"d", "h", "m", "s", "ms"};
+
     static {
         final String osName = System.getProperty("os.name").toLowerCase();
         IS_LINUX = osName.contains("linux");
@@ -126,6 +154,25 @@ public class MCountersUtils {
 
         FILE_PAGE_SIZE = Integer.getInteger(FILE_PAGE_SIZE_PROP_NAME, FILE_PAGE_SIZE_DEFAULT);
 
+        final Map<Path, Integer> hugePageDirs = new LinkedHashMap<>();
+        final String configuredHugePageDirs = getProperty(HUGE_PAGE_DIRS_PROP_NAME);
+        if (configuredHugePageDirs != null) {
+            final int hugePageSize = Integer.getInteger(HUGE_PAGE_SIZE_PROP_NAME, HUGE_PAGE_SIZE_DEFAULT);
+            for (final String dir : configuredHugePageDirs.split(",")) {
+                if (!dir.trim().isEmpty()) {
+                    hugePageDirs.put(canonicalPath(new File(dir.trim())), hugePageSize);
+                }
+            }
+        }
+        if (IS_LINUX) {
+            try {
+                hugePageDirs.putAll(hugetlbfsMounts(new String(Files.readAllBytes(Paths.get("/proc/mounts")),
+                        StandardCharsets.UTF_8)));
+            } catch (final IOException | RuntimeException ignore) { // no huge pages then
+            }
+        }
+        HUGE_PAGE_DIRS = Collections.unmodifiableMap(hugePageDirs);
+
         try {
             MethodHandle invokeCleaner = null;
             MethodHandle getCleaner = null;
@@ -173,36 +220,159 @@ public class MCountersUtils {
         return getProperty(MCOUNTERS_DIR_PROP_NAME, MCOUNTERS_DIR_PROP_DEFAULT);
     }
 
+    /**
+     * Returns the directories, which files are backed by huge pages: mounts of hugetlbfs and the directories set
+     * with {@link #HUGE_PAGE_DIRS_PROP_NAME}.
+     *
+     * @return sizes of huge pages by the directories
+     */
+    public static Map<Path, Integer> getHugePageDirectories() {
+        return HUGE_PAGE_DIRS;
+    }
+
+    /**
+     * Returns the size of pages, which the file is aligned and pre-touched with: the size of huge pages if the file
+     * is in a directory from {@link #getHugePageDirectories()}, or {@link #FILE_PAGE_SIZE} otherwise.
+     *
+     * @param file The file
+     * @return the size of pages
+     */
+    public static int filePageSize(final File file) {
+        if (HUGE_PAGE_DIRS.isEmpty()) {
+            return FILE_PAGE_SIZE;
+        }
+        final Path path = canonicalPath(file);
+        for (final Map.Entry<Path, Integer> dir : HUGE_PAGE_DIRS.entrySet()) {
+            if (path.startsWith(dir.getKey())) {
+                return dir.getValue();
+            }
+        }
+        return FILE_PAGE_SIZE;
+    }
+
+    /**
+     * Parses mount points of hugetlbfs and their page sizes from the content of /proc/mounts. The mounts without
+     * the 'pagesize' option use {@link #HUGE_PAGE_SIZE_DEFAULT}.
+     *
+     * @param mounts The content of /proc/mounts
+     * @return sizes of huge pages by the mount points
+     */
+    static Map<Path, Integer> hugetlbfsMounts(final String mounts) {
+        final Map<Path, Integer> result = new LinkedHashMap<>();
+        for (final String line : mounts.split("\n")) {
+            final String[] fields = line.trim().split("\\s+");
+            if (fields.length < 4 || !"hugetlbfs".equals(fields[2])) {
+                continue;
+            }
+            int pageSize = HUGE_PAGE_SIZE_DEFAULT;
+            for (final String option : fields[3].split(",")) {
+                if (option.startsWith("pagesize=")) {
+                    pageSize = parseSize(option.substring("pagesize=".length()));
+                }
+            }
+            result.put(Paths.get(fields[1].replace("\\040", " ")), pageSize);
+        }
+        return result;
+    }
+
+    private static int parseSize(final String size) {
+        final char unit = Character.toUpperCase(size.charAt(size.length() - 1));
+        final String number = Character.isDigit(unit) ? size : size.substring(0, size.length() - 1);
+        switch (unit) {
+            case 'K':
+                return Integer.parseInt(number) << 10;
+            case 'M':
+                return Integer.parseInt(number) << 20;
+            case 'G':
+                return Integer.parseInt(number) << 30;
+            default:
+                return Integer.parseInt(number);
+        }
+    }
+
+    private static Path canonicalPath(final File file) {
+        try {
+            return file.getCanonicalFile().toPath();
+        } catch (final IOException e) {
+            return file.getAbsoluteFile().toPath().normalize();
+        }
+    }
+
     /**
      * Creates a new file and returns a {@link java.nio.MappedByteBuffer} for the file.
      * <p>
-     * The file itself will be closed, but the mapping will persist.
+     * The file itself will be closed, but the mapping will persist. The length is aligned to the size of pages of
+     * the file (see {@link #filePageSize(File)}), since hugetlbfs can only map whole huge pages, and every page
+     * is pre-touched.
      *
      * @param pathToFile of the file to create and map.
      * @param length     of the file to create and map.
      * @return {@link java.nio.MappedByteBuffer} for the file.
      */
     public static MappedByteBuffer mapNewFile(final File pathToFile, final long length) throws IOException {
+        return mapNewFile(pathToFile, length, true);
+    }
+
+    /**
+     * Creates a new file and returns a {@link java.nio.MappedByteBuffer} for the file, optionally without
+     * pre-touching its pages, so they can be pre-touched later or concurrently (see {@link MCountersPreTouch}).
+     *
+     * @param pathToFile of the file to create and map.
+     * @param length     of the file to create and map.
+     * @param preTouch   {@code true} to pre-touch every page.
+     * @return {@link java.nio.MappedByteBuffer} for the file.
+     */
+    public static MappedByteBuffer mapNewFile(final File pathToFile, final long length, final boolean preTouch)
+            throws IOException {
         final MappedByteBuffer result;
 
+        final int pageSize = filePageSize(pathToFile);
+        final long alignedLength = (length + pageSize - 1) & -(long) pageSize;
+
         try (FileChannel channel = FileChannel.open(pathToFile.toPath(), CREATE_NEW, READ, WRITE)) {
-            result = channel.map(READ_WRITE, 0, length);
+            result = channel.map(READ_WRITE, 0, alignedLength);
             // now pre-touch all the pages
             int position = 0;
-            while (position < length) {
+            while (preTouch && position < alignedLength) {
                 result.put(position, (byte) 0);
-                position += FILE_PAGE_SIZE;
+                position += pageSize;
             }
         }
 
         return result;
     }
 
+    /**
+     * Maps an existing file to read and write, for example to reopen a counters' file of a previous run
+     * of the application.
+     *
+     * @param pathToFile of the file to map.
+     * @return {@link java.nio.MappedByteBuffer} for the file.
+     */
+    public static MappedByteBuffer mapExistingFile(final File pathToFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(pathToFile.toPath(), READ, WRITE)) {
+            return channel.map(READ_WRITE, 0, channel.size());
+        }
+    }
+
+    /**
+     * Maps an existing file to read. A file in a directory backed by huge pages is pre-touched, so a scan
+     * of the file doesn't take a page fault per huge page.
+     *
+     * @param pathToFile of the file to map.
+     * @return {@link java.nio.MappedByteBuffer} for the file.
+     */
     public static MappedByteBuffer mapExistingFileReadOnly(final File pathToFile) throws IOException {
+        final MappedByteBuffer result;
         try (RandomAccessFile file =
                      new RandomAccessFile(pathToFile, "r"); FileChannel channel = file.getChannel()) {
-            return channel.map(READ_ONLY, 0, channel.size());
+            result = channel.map(READ_ONLY, 0, channel.size());
+        }
+
+        if (filePageSize(pathToFile) > FILE_PAGE_SIZE) {
+            result.load();
         }
+        return result;
     }
 
     public static void unmap(final ByteBuffer buffer) throws IOException {
@@ -236,4 +406,49 @@ public class MCountersUtils {
     public static int align(final int value, final int alignment) {
         return (value + (alignment - 1)) & -alignment;
     }
+
+    /**
+     * Returns the next power of 2 for a value. If the value is a power of 2 already then it is returned unchanged.
+     * <p>
+     *
+     * @param value to be rounded up.
+     * @return the next power of 2 for the value.
+     */
+    public static int findNextPositivePowerOfTwo(final int value) {
+        return 1 << (Integer.SIZE - Integer.numberOfLeadingZeros(value - 1));
+    }
+
+    /**
+     * Parses a duration like "500ms", "10s", "5m", "6h" or "3d". A number without a unit is millis.
+     *
+     * @param duration to be parsed
+     * @return duration in millis
+     */
+    public static long parseDuration(final String duration) {
+        final String s = duration.trim().toLowerCase();
+
+        for (int i = DURATION_UNIT_NAMES.length - 1; i >= 0; i--) { // 'ms' must be checked before 'm' and 's'
+            final String unitName = DURATION_UNIT_NAMES[i];
+            if (s.endsWith(unitName)) {
+                return Long.parseLong(s.substring(0, s.length() - unitName.length()).trim()) * DURATION_UNITS[i];
+            }
+        }
+
+        return Long.parseLong(s);
+    }
+
+    /**
+     * Formats a duration in the largest unit the duration is a multiple of.
+     *
+     * @param duration in millis
+     * @return text representation of the duration
+     */
+    public static String formatDuration(final long duration) {
+        for (int i = 0; i < DURATION_UNITS.length; i++) {
+            if (duration != 0 && duration % DURATION_UNITS[i] == 0) {
+                return (duration / DURATION_UNITS[i]) + DURATION_UNIT_NAMES[i];
+            }
+        }
+        return duration + "ms";
+    }
 }
\ No newline at end of file
@@ -26,7 +26,17 @@ package org.java.mc4j;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -36,20 +46,47 @@ import java.util.concurrent.atomic.AtomicLong;
  * <p><b>IMPORTANT:</b>
  * <ul>
  *     <li>Don't do read/write from/to an MCounter after it was closed. This may lead to corruption of values
- *     of another counters</li>
- *     <li>Don't do read/write/close with an MCounter after the CounterWriter is closed,
- *     since this will lead to the crash of the process</li>
+ *     of another counters, see {@link MCounterCheck} to catch such updates</li>
+ *     <li>Don't do read/write/close with an MCounter after the CounterWriter is closed. The counters are switched
+ *     to a copy of their values, which isn't published, but an operation in progress at the moment of the close
+ *     still addresses the counters' file, which is unmapped after the grace period of {@link #close(long)};
+ *     an operation, which outlives the grace period, leads to the crash of the process</li>
  * </ul>
  */
 public final class MCountersWriter implements AutoCloseable {
     public static final int MAX_POSSIBLE_NUMBER_OF_COUNTERS = 10_000;
+    public static final int DEFAULT_NUMBER_OF_CHANGES = 256;
+    public static final int PRE_TOUCH_THREADS = 4;
+    /**
+     * Property name for the grace period in millis between {@link #close()} and the unmap of the counters' file.
+     */
+    public static final String SAFE_CLOSE_GRACE_PROP_NAME = "mcounters.safe.close.grace";
+    public static final long SAFE_CLOSE_GRACE_DEFAULT = 0;
+    /**
+     * Extension of the file next to a durable counters' file, which is locked while a writer has the file open.
+     */
+    public static final String LOCK_FILE_EXTENSION = ".lock";
 
     private final AtomicLong idSequence = new AtomicLong(0);
 
-    private final File countersFile;
+    private final File countersFile; // null - the buffer is supplied by the caller
     private final ByteBuffer buffer;
     private final MCountersEncoder encoder;
-    private final DirectMemoryBuffer values;
+    // the counters read it once per operation: on close it's replaced with a copy, so the counters used after
+    // the close never address unmapped memory. Not volatile to keep the updates cheap: the copy is published by
+    // the write of closed, and a thread, which hasn't seen it yet, addresses the file until it's unmapped
+    private DirectMemoryBuffer values;
+    // read by the checks of the counters the same way
+    private DirectMemoryBuffer metadata;
+
+    private Thread preTouchThread; // of the background pre-touch
+
+    // the counters of a previous run of the application to be adopted by labels, null - nothing has been recovered
+    private final Map<String, Deque<RecoveredCounter>> recoveredCounters;
+    private MCountersCheckpointer checkpointer;
+    private FileChannel lock; // of the durable file, released on close
+
+    private volatile MCounterCheck counterCheck = MCounterCheck.defaultCheck();
 
     private volatile boolean closed;
 
@@ -60,42 +97,381 @@ public final class MCountersWriter implements AutoCloseable {
 
     public MCountersWriter(final File countersFile, final Properties statics, final int maxNumbersOfCounters)
             throws IOException {
-        if (maxNumbersOfCounters < 0 || maxNumbersOfCounters > MAX_POSSIBLE_NUMBER_OF_COUNTERS) {
-            throw new IllegalArgumentException("Incorrect max numbers of counters: " + maxNumbersOfCounters);
-        }
+        this(countersFile, statics, maxNumbersOfCounters, DEFAULT_NUMBER_OF_CHANGES);
+    }
+
+    /**
+     * @param countersFile         The counters file to be created
+     * @param statics              Static properties of the application
+     * @param maxNumbersOfCounters Max number of counters which can be allocated at the same time
+     * @param numberOfChanges      Size of the ring buffer to record allocations and frees of the counters for
+     *                             incremental readers. 0 means no ring buffer.
+     * @throws IOException
+     */
+    public MCountersWriter(final File countersFile,
+                           final Properties statics,
+                           final int maxNumbersOfCounters,
+                           final int numberOfChanges) throws IOException {
+        this(countersFile, statics, maxNumbersOfCounters, numberOfChanges, MCountersPreTouch.defaultPreTouch());
+    }
+
+    /**
+     * @param countersFile         The counters file to be created
+     * @param statics              Static properties of the application
+     * @param maxNumbersOfCounters Max number of counters which can be allocated at the same time
+     * @param numberOfChanges      Size of the ring buffer to record allocations and frees of the counters for
+     *                             incremental readers. 0 means no ring buffer.
+     * @param preTouch             How the pages of the file are pre-touched
+     * @throws IOException
+     */
+    public MCountersWriter(final File countersFile,
+                           final Properties statics,
+                           final int maxNumbersOfCounters,
+                           final int numberOfChanges,
+                           final MCountersPreTouch preTouch) throws IOException {
+        final int countersFileLength = MCountersUtils.align(
+                countersBufferLength(statics, maxNumbersOfCounters, numberOfChanges),
+                MCountersUtils.FILE_PAGE_SIZE);
 
         this.countersFile = countersFile;
 
         this.countersFile.getParentFile().mkdirs();
 
-        final int staticsLength = MCountersEncoder.staticsLength(statics);
-        final int metadataLength = MCountersEncoder.metadataLength(maxNumbersOfCounters);
-        final int valuesLength = MCountersEncoder.valuesLength(maxNumbersOfCounters);
+        buffer = MCountersUtils.mapNewFile(this.countersFile, countersFileLength, false);
 
-        final int countersFileLength = MCountersUtils.align(
-                MCountersLayout.HEADER_LENGTH +
-                        staticsLength +
-                        metadataLength +
-                        valuesLength,
-                MCountersUtils.FILE_PAGE_SIZE);
+        encoder = init(buffer, statics, maxNumbersOfCounters, numberOfChanges, preTouch);
+        values = encoder.values;
+        metadata = encoder.metadata;
+        recoveredCounters = null;
 
-        buffer = MCountersUtils.mapNewFile(this.countersFile, countersFileLength);
+        preTouch(preTouch, MCountersUtils.filePageSize(this.countersFile));
+    }
 
-        encoder = new MCountersEncoder(buffer,
-                staticsLength,
-                metadataLength,
-                valuesLength
-        );
+    /**
+     * Creates a writer over a direct buffer without any file behind it, for example for tests, short-lived tools
+     * or readers in the same process, which share the buffer with {@link MCountersReader#MCountersReader(ByteBuffer)}.
+     * The buffer is owned by the caller: it isn't freed when the writer is closed.
+     *
+     * @param countersBuffer       The direct buffer of at least {@link #countersBufferLength(Properties, int, int)}
+     *                             bytes, aligned to 8 bytes like the buffers of {@link ByteBuffer#allocateDirect(int)}.
+     *                             The buffer is cleared.
+     * @param statics              Static properties of the application
+     * @param maxNumbersOfCounters Max number of counters which can be allocated at the same time
+     * @param numberOfChanges      Size of the ring buffer to record allocations and frees of the counters for
+     *                             incremental readers. 0 means no ring buffer.
+     */
+    public MCountersWriter(final ByteBuffer countersBuffer,
+                           final Properties statics,
+                           final int maxNumbersOfCounters,
+                           final int numberOfChanges) {
+        if (!countersBuffer.isDirect()) {
+            throw new IllegalArgumentException("Only direct byte buffers supported");
+        }
+        final int length = countersBufferLength(statics, maxNumbersOfCounters, numberOfChanges);
+        if (countersBuffer.capacity() < length) {
+            throw new IllegalArgumentException("Buffer of " + countersBuffer.capacity() + " bytes is less than " +
+                    length + " bytes required");
+        }
+
+        countersFile = null;
+        buffer = countersBuffer;
+
+        for (int i = 0; i < length; i += MCountersUtils.SIZE_OF_LONG) {
+            buffer.putLong(i, 0);
+        }
+
+        encoder = init(buffer, statics, maxNumbersOfCounters, numberOfChanges, MCountersPreTouch.EAGER);
+        values = encoder.values;
+        metadata = encoder.metadata;
+        recoveredCounters = null;
+
+        encoder.setPreTouchedLength(length); // by the clearing
+    }
+
+    /**
+     * Opens a counters' file, which values survive restarts of the application. If the file has been left
+     * by a previous run with the same layout (the same max number of counters, number of changes and length
+     * of statics), the file is reopened: its counters keep their values and IDs and are adopted by
+     * {@link #addCounter(String, long)} with the same labels, so monotonic totals don't reset and the readers
+     * keep reading the same file. Otherwise, the file is restored from the checkpoint's file if it's compatible,
+     * or created anew.
+     * <p>
+     * Only one writer may have the file open at a time: the writer locks the file with the same name and
+     * {@link #LOCK_FILE_EXTENSION} until it's closed, and another writer, in this or another process, fails to open
+     * the file meanwhile. The recovered counters, which haven't been adopted, stay allocated until
+     * {@link #freeRecoveredCounters()} is called.
+     *
+     * @param countersFile         The counters' file to be reopened or created
+     * @param statics              Static properties of the application
+     * @param maxNumbersOfCounters Max number of counters which can be allocated at the same time
+     * @param numberOfChanges      Size of the ring buffer to record allocations and frees of the counters for
+     *                             incremental readers. 0 means no ring buffer.
+     * @param checkpointFile       The checkpoint of the counters to restore them from if the counters' file is lost,
+     *                             see {@link #startCheckpoints(File, long)}; can be {@code null}
+     * @return the writer
+     * @throws IOException if the file cannot be opened or created, or it's open by another writer
+     */
+    public static MCountersWriter openDurable(final File countersFile,
+                                              final Properties statics,
+                                              final int maxNumbersOfCounters,
+                                              final int numberOfChanges,
+                                              final File checkpointFile) throws IOException {
+        final int length = countersBufferLength(statics, maxNumbersOfCounters, numberOfChanges);
+
+        countersFile.getParentFile().mkdirs();
+
+        final FileChannel lock = lock(countersFile); // before the file is checked, deleted or restored
+        try {
+            final MCountersWriter writer = openLocked(countersFile,
+                    statics,
+                    maxNumbersOfCounters,
+                    numberOfChanges,
+                    checkpointFile,
+                    length);
+            writer.lock = lock;
+            return writer;
+        } catch (final IOException | RuntimeException e) {
+            lock.close();
+            throw e;
+        }
+    }
+
+    private static MCountersWriter openLocked(final File countersFile,
+                                              final Properties statics,
+                                              final int maxNumbersOfCounters,
+                                              final int numberOfChanges,
+                                              final File checkpointFile,
+                                              final int length) throws IOException {
+        if (!isCompatible(countersFile, statics, maxNumbersOfCounters, numberOfChanges, length)) {
+            Files.deleteIfExists(countersFile.toPath());
+
+            if (checkpointFile == null ||
+                    !isCompatible(checkpointFile, statics, maxNumbersOfCounters, numberOfChanges, length)) {
+                return new MCountersWriter(countersFile, statics, maxNumbersOfCounters, numberOfChanges);
+            }
+
+            // readers must never see a partially copied file
+            final File tempFile = new File(countersFile.getPath() + MCountersCheckpointer.TEMP_FILE_EXTENSION);
+            Files.copy(checkpointFile.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile.toPath(), countersFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        return new MCountersWriter(countersFile,
+                MCountersUtils.mapExistingFile(countersFile),
+                statics,
+                maxNumbersOfCounters,
+                numberOfChanges,
+                MCountersPreTouch.defaultPreTouch());
+    }
+
+    /**
+     * Locks the lock file of a counters' file. The lock file isn't deleted, since another writer can be locking it
+     * at the moment. The OS releases the lock if the process dies.
+     */
+    private static FileChannel lock(final File countersFile) throws IOException {
+        final File lockFile = new File(countersFile.getPath() + LOCK_FILE_EXTENSION);
+        final FileChannel channel = FileChannel.open(lockFile.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        boolean locked = false;
+        try {
+            locked = channel.tryLock() != null; // null - locked by another process
+        } catch (final OverlappingFileLockException ignore) { // locked by another writer of this process
+        } finally {
+            if (!locked) {
+                channel.close();
+            }
+        }
+        if (!locked) {
+            throw new IOException("The counters' file is open by another writer: " + countersFile);
+        }
+        return channel;
+    }
+
+    private static boolean isCompatible(final File file,
+                                        final Properties statics,
+                                        final int maxNumbersOfCounters,
+                                        final int numberOfChanges,
+                                        final int length) throws IOException {
+        if (!file.exists() || file.length() < length) {
+            return false;
+        }
+
+        final ByteBuffer buffer = MCountersUtils.mapExistingFileReadOnly(file);
+        try {
+            final DirectMemoryBuffer header = MCountersDecoder.prepare(buffer).header();
+            return header.getIntVolatile(MCountersLayout.HEADER_COUNTERS_VERSION_OFFSET) ==
+                    MCountersLayout.COUNTERS_VERSION &&
+                    header.getInt(MCountersLayout.HEADER_STATICS_LENGTH_OFFSET) ==
+                            MCountersEncoder.staticsLength(statics) &&
+                    header.getInt(MCountersLayout.HEADER_METADATA_LENGTH_OFFSET) ==
+                            MCountersEncoder.metadataLength(maxNumbersOfCounters) &&
+                    header.getInt(MCountersLayout.HEADER_VALUES_LENGTH_OFFSET) ==
+                            MCountersEncoder.valuesLength(maxNumbersOfCounters) &&
+                    header.getInt(MCountersLayout.HEADER_CHANGES_LENGTH_OFFSET) ==
+                            MCountersEncoder.changesLength(numberOfChanges);
+        } finally {
+            MCountersUtils.unmap(buffer);
+        }
+    }
 
+    /**
+     * Reopens a counters' file of a previous run.
+     */
+    private MCountersWriter(final File countersFile,
+                            final ByteBuffer buffer,
+                            final Properties statics,
+                            final int maxNumbersOfCounters,
+                            final int numberOfChanges,
+                            final MCountersPreTouch preTouch) {
+        this.countersFile = countersFile;
+        this.buffer = buffer;
+
+        encoder = new MCountersEncoder(buffer,
+                MCountersEncoder.staticsLength(statics),
+                MCountersEncoder.metadataLength(maxNumbersOfCounters),
+                MCountersEncoder.valuesLength(maxNumbersOfCounters),
+                MCountersEncoder.changesLength(numberOfChanges)
+        ); // rewrites the same lengths
         values = encoder.values;
+        metadata = encoder.metadata;
+
+        final Map<String, Deque<RecoveredCounter>> recovered = new HashMap<>();
+        idSequence.set(encoder.recoverCounters((id, label, valueOffset) ->
+                recovered.computeIfAbsent(label, l -> new ArrayDeque<>()).add(new RecoveredCounter(id, valueOffset))));
+        recoveredCounters = recovered;
+
+        encoder.setPid(MCountersUtils.PID);
+        encoder.setStartTime(System.currentTimeMillis());
+        encoder.setStatics(statics);
+        encoder.setPreTouch(preTouch);
+        encoder.setPreTouchedLength(0);
+
+        preTouch(preTouch, MCountersUtils.filePageSize(countersFile));
+    }
+
+    /**
+     * Returns the length of counters' memory.
+     *
+     * @param statics              Static properties of the application
+     * @param maxNumbersOfCounters Max number of counters which can be allocated at the same time
+     * @param numberOfChanges      Size of the ring buffer of allocations and frees of the counters
+     * @return the length in bytes
+     */
+    public static int countersBufferLength(final Properties statics,
+                                           final int maxNumbersOfCounters,
+                                           final int numberOfChanges) {
+        if (maxNumbersOfCounters < 0 || maxNumbersOfCounters > MAX_POSSIBLE_NUMBER_OF_COUNTERS) {
+            throw new IllegalArgumentException("Incorrect max numbers of counters: " + maxNumbersOfCounters);
+        }
+        if (numberOfChanges < 0) {
+            throw new IllegalArgumentException("Incorrect number of changes: " + numberOfChanges);
+        }
+
+        return MCountersUtils.align(
+                MCountersLayout.HEADER_LENGTH +
+                        MCountersEncoder.staticsLength(statics) +
+                        MCountersEncoder.metadataLength(maxNumbersOfCounters) +
+                        MCountersEncoder.valuesLength(maxNumbersOfCounters) +
+                        MCountersEncoder.changesLength(numberOfChanges),
+                MCountersUtils.SIZE_OF_LONG);
+    }
+
+    private static MCountersEncoder init(final ByteBuffer buffer,
+                                         final Properties statics,
+                                         final int maxNumbersOfCounters,
+                                         final int numberOfChanges,
+                                         final MCountersPreTouch preTouch) {
+        final MCountersEncoder encoder = new MCountersEncoder(buffer,
+                MCountersEncoder.staticsLength(statics),
+                MCountersEncoder.metadataLength(maxNumbersOfCounters),
+                MCountersEncoder.valuesLength(maxNumbersOfCounters),
+                MCountersEncoder.changesLength(numberOfChanges)
+        );
 
         encoder.setPid(MCountersUtils.PID);
         encoder.setStartTime(System.currentTimeMillis());
         encoder.setStatics(statics);
+        encoder.setPreTouch(preTouch);
 
         encoder.setVersion(MCountersLayout.COUNTERS_VERSION); // HB write
+        return encoder;
     }
 
+    private void preTouch(final MCountersPreTouch preTouch, final int pageSize) {
+        final DirectMemoryBuffer memory = new DirectMemoryBuffer(buffer, 0, buffer.capacity());
+        final int numberOfPages = (memory.capacity() + pageSize - 1) / pageSize;
+
+        switch (preTouch) {
+            case EAGER:
+                touch(memory, pageSize, 0, numberOfPages);
+                encoder.setPreTouchedLength(memory.capacity());
+                break;
+
+            case PARALLEL: {
+                final int numberOfThreads = Math.max(1, Math.min(PRE_TOUCH_THREADS, numberOfPages));
+                final Thread[] threads = new Thread[numberOfThreads - 1];
+                for (int i = 0; i < threads.length; i++) { // the current thread touches the first part
+                    final int fromPage = (int) ((long) numberOfPages * (i + 1) / numberOfThreads);
+                    final int toPage = (int) ((long) numberOfPages * (i + 2) / numberOfThreads);
+                    threads[i] = new Thread(() -> touch(memory, pageSize, fromPage, toPage), "mc4j-pre-touch");
+                    threads[i].setDaemon(true);
+                    threads[i].start();
+                }
+                touch(memory, pageSize, 0, numberOfPages / numberOfThreads);
+                for (final Thread thread : threads) {
+                    join(thread);
+                }
+                encoder.setPreTouchedLength(memory.capacity());
+                break;
+            }
+
+            case BACKGROUND:
+                preTouchThread = new Thread(() -> {
+                    for (int page = 0; page < numberOfPages; page++) {
+                        if (closed) { // the memory is about to be unmapped
+                            return;
+                        }
+                        touch(memory, pageSize, page, page + 1);
+                        encoder.setPreTouchedLength(Math.min((long) (page + 1) * pageSize, memory.capacity()));
+                    }
+                }, "mc4j-pre-touch");
+                preTouchThread.setDaemon(true);
+                preTouchThread.start();
+                break;
+
+            default: // NONE
+                break;
+        }
+    }
+
+    private static void touch(final DirectMemoryBuffer memory,
+                              final int pageSize,
+                              final int fromPage,
+                              final int toPage) {
+        for (int page = fromPage; page < toPage; page++) {
+            memory.getAndAddLong(page * pageSize, 0); // faults the page in for writing, but keeps its value
+        }
+    }
+
+    private static void join(final Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * Returns the counters' file.
+     *
+     * @return the file or {@code null} if the writer works over a buffer supplied by the caller
+     */
     public File countersFile() {
         return countersFile;
     }
@@ -108,8 +484,105 @@ public final class MCountersWriter implements AutoCloseable {
         return addCounter(label, 0);
     }
 
+    /**
+     * Adds a counter. If the writer has been opened with {@link #openDurable(File, Properties, int, int, File)},
+     * a recovered counter with the same label is adopted instead, and it keeps its value and ID.
+     *
+     * @param label        The label of the counter
+     * @param initialValue The value of a new counter
+     * @return the counter
+     */
     public MCounter addCounter(final String label, final long initialValue) {
-        return new WritableCounter(label, initialValue);
+        if (recoveredCounters != null) {
+            final RecoveredCounter recovered;
+            synchronized (recoveredCounters) {
+                final String storedLabel = MCountersEncoder.storedLabel(label);
+                final Deque<RecoveredCounter> sameLabel = recoveredCounters.get(storedLabel);
+                recovered = sameLabel != null ? sameLabel.poll() : null;
+                if (sameLabel != null && sameLabel.isEmpty()) {
+                    recoveredCounters.remove(storedLabel);
+                }
+            }
+            if (recovered != null) {
+                return newCounter(recovered.id, label, recovered.valueOffset);
+            }
+        }
+        final long id = idSequence.incrementAndGet();
+        return newCounter(id, label, encoder.addCounter(id, label, initialValue));
+    }
+
+    private WritableCounter newCounter(final long id, final String label, final int valueOffset) {
+        switch (counterCheck) {
+            case FULL:
+                return new CheckedCounter(id, label, valueOffset);
+            case SAMPLED:
+                return new SampledCounter(id, label, valueOffset, MCounterCheck.sampling());
+            default:
+                return new WritableCounter(id, label, valueOffset);
+        }
+    }
+
+    /**
+     * Sets the checks of the updates of the counters, which will be added.
+     *
+     * @param counterCheck The checks
+     */
+    public void setCounterCheck(final MCounterCheck counterCheck) {
+        if (counterCheck == null) {
+            throw new IllegalArgumentException("No counter check");
+        }
+        this.counterCheck = counterCheck;
+    }
+
+    /**
+     * Frees the counters recovered by {@link #openDurable(File, Properties, int, int, File)}, which haven't been
+     * adopted by {@link #addCounter(String, long)}, for example once the application has added all its counters.
+     *
+     * @return the number of the freed counters
+     */
+    public int freeRecoveredCounters() {
+        if (recoveredCounters == null) {
+            return 0;
+        }
+        int result = 0;
+        synchronized (recoveredCounters) {
+            synchronized (this) { // the close cannot unmap the memory meanwhile
+                for (final Deque<RecoveredCounter> sameLabel : recoveredCounters.values()) {
+                    for (final RecoveredCounter recovered : sameLabel) {
+                        if (!closed && encoder.freeCounter(recovered.id)) {
+                            result++;
+                        }
+                    }
+                }
+            }
+            recoveredCounters.clear();
+        }
+        return result;
+    }
+
+    /**
+     * Starts checkpointing the counters on a daemon thread with the interval. The checkpoints are written to
+     * the checkpoint's file, which should be on persistent storage, so
+     * {@link #openDurable(File, Properties, int, int, File)} restores the counters from it when the counters' file
+     * is lost, for example with a reboot of the machine, which clears tmpfs. Without a checkpoint's file
+     * the counters' file is forced (msync) to its storage. A last checkpoint is taken by {@link #close()}.
+     *
+     * @param checkpointFile The checkpoint's file or {@code null} to force the counters' file
+     * @param interval       The interval of checkpoints in millis
+     * @throws IllegalStateException if the checkpoints have been started already
+     */
+    public synchronized void startCheckpoints(final File checkpointFile, final long interval) {
+        if (closed) {
+            throw new IllegalStateException("Closed");
+        }
+        if (checkpointer != null) {
+            throw new IllegalStateException("Already started");
+        }
+        if (checkpointFile != null) {
+            checkpointFile.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        checkpointer = new MCountersCheckpointer(buffer, checkpointFile, interval);
+        checkpointer.start();
     }
 
     public boolean isClosed() {
@@ -117,33 +590,112 @@ public final class MCountersWriter implements AutoCloseable {
     }
 
     /**
-     * Closes the writer and unmap the counters file. MCounters, created by this writer, MUST NOT be
-     * used after the close, since they will address unmapped memory and this will lead to the crash of the process.
+     * Closes the writer and unmaps the counters' file at once, unless a grace period is set by
+     * the {@link #SAFE_CLOSE_GRACE_PROP_NAME} property, see {@link #close(long)}.
      * @throws IOException
      */
     @Override
     public void close() throws IOException {
+        close(Long.getLong(SAFE_CLOSE_GRACE_PROP_NAME, SAFE_CLOSE_GRACE_DEFAULT));
+    }
+
+    /**
+     * Closes the writer and unmaps the counters file after the grace period. MCounters, created by this writer,
+     * are switched to a copy of their values and of the stamps of their slots, which their checks read, so they can
+     * be used after the close without a crash of the process, but their values aren't published anymore.
+     * The grace period lets the operations, which have been started before the close or by threads, which haven't
+     * seen it yet, finish with the counters' file before it's unmapped by a daemon thread.
+     * A buffer supplied by the caller is left as it is.
+     *
+     * @param gracePeriod The grace period in millis, 0 - the file is unmapped before the return
+     * @throws IOException if the last checkpoint cannot be written or the file cannot be unmapped
+     */
+    public void close(final long gracePeriod) throws IOException {
+        if (gracePeriod < 0) {
+            throw new IllegalArgumentException("Grace period must not be negative: " + gracePeriod);
+        }
         synchronized (this) {
             if (closed) {
                 return;
             }
-            closed = true;
+            values = copyOf(values);
+            metadata = copyOf(metadata); // the counters allocated at the moment stay allocated in the copy
+            closed = true; // HB write: publishes the copies
+        }
+        if (preTouchThread != null) {
+            join(preTouchThread);
+        }
+
+        try {
+            if (checkpointer != null) {
+                checkpointer.stop();
+                checkpointer.checkpoint(); // the last values
+            }
+        } finally {
+            try {
+                if (countersFile != null) {
+                    if (gracePeriod == 0) {
+                        MCountersUtils.unmap(buffer);
+                    } else {
+                        unmapAfter(gracePeriod);
+                    }
+                }
+            } finally {
+                if (lock != null) {
+                    lock.close(); // releases the lock, so the file can be opened again
+                }
+            }
+        }
+    }
+
+    private static DirectMemoryBuffer copyOf(final DirectMemoryBuffer values) {
+        final byte[] bytes = new byte[values.capacity()];
+        values.getBytes(0, bytes);
+
+        // freed by GC when the last counter is gone
+        final DirectMemoryBuffer result = new DirectMemoryBuffer(ByteBuffer.allocateDirect(bytes.length),
+                0,
+                bytes.length);
+        result.putBytes(0, bytes);
+        return result;
+    }
+
+    private void unmapAfter(final long gracePeriod) {
+        final Thread unmapThread = new Thread(() -> {
+            try {
+                Thread.sleep(gracePeriod);
+            } catch (final InterruptedException ignore) { // unmap now
+            }
+            try {
+                MCountersUtils.unmap(buffer);
+            } catch (final IOException ignore) { // the mapping is left to GC
+            }
+        }, "mc4j-unmap");
+        unmapThread.setDaemon(true);
+        unmapThread.start();
+    }
+
+    private static final class RecoveredCounter {
+        final long id;
+        final int valueOffset;
+
+        RecoveredCounter(final long id, final int valueOffset) {
+            this.id = id;
+            this.valueOffset = valueOffset;
         }
-        MCountersUtils.unmap(buffer);
     }
 
     private class WritableCounter implements MCounter {
-        private final long id;
-        private final String label;
-        private final int valueOffset;
+        final long id;
+        final String label;
+        final int valueOffset;
 
         private volatile boolean closed;
 
-        WritableCounter(final String label, final long initialValue) {
-            this.id = idSequence.incrementAndGet();
+        WritableCounter(final long id, final String label, final int valueOffset) {
+            this.id = id;
             this.label = label;
-
-            valueOffset = encoder.addCounter(id, label, initialValue);
+            this.valueOffset = valueOffset;
         }
 
         @Override
@@ -209,6 +761,83 @@ public final class MCountersWriter implements AutoCloseable {
                 }
                 closed = true;
             }
+            synchronized (MCountersWriter.this) { // the writer's close cannot unmap the memory meanwhile
+                if (!MCountersWriter.this.closed) {
+                    encoder.freeCounter(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the slot's stamp before every update.
+     */
+    private class CheckedCounter extends WritableCounter {
+        CheckedCounter(final long id, final String label, final int valueOffset) {
+            super(id, label, valueOffset);
+        }
+
+        void check() {
+            if (!MCountersEncoder.isAllocated(metadata, id, valueOffset)) {
+                throw new IllegalStateException("Counter " + id + " '" + label +
+                        "' is updated after its slot has been freed");
+            }
+        }
+
+        @Override
+        public void set(final long value) {
+            check();
+            super.set(value);
+        }
+
+        @Override
+        public void setWeak(final long value) {
+            check();
+            super.setWeak(value);
+        }
+
+        @Override
+        public long increment() {
+            check();
+            return super.increment();
+        }
+
+        @Override
+        public long getAndAdd(final long increment) {
+            check();
+            return super.getAndAdd(increment);
+        }
+
+        @Override
+        public long getAndSet(final long value) {
+            check();
+            return super.getAndSet(value);
+        }
+
+        @Override
+        public boolean compareAndSet(final long expectedValue, final long updateValue) {
+            check();
+            return super.compareAndSet(expectedValue, updateValue);
+        }
+    }
+
+    /**
+     * Checks the slot's stamp before every sampling-th update.
+     */
+    private final class SampledCounter extends CheckedCounter {
+        private final int samplingMask;
+
+        SampledCounter(final long id, final String label, final int valueOffset, final int sampling) {
+            super(id, label, valueOffset);
+            samplingMask = sampling - 1;
+        }
+
+        @Override
+        void check() {
+            // picked at random, so the threads updating the counter don't contend on a shared count of the updates
+            if ((ThreadLocalRandom.current().nextInt() & samplingMask) == 0) {
+                super.check();
+            }
         }
     }
-}
\ No newline at end of file
+}
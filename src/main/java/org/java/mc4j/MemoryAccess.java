@@ -0,0 +1,154 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Access to the memory of direct byte buffers behind {@link DirectMemoryBuffer}. The implementation is chosen once
+ * per JVM and kept in a static final field, so the JIT binds the calls statically and inlines them.
+ * <p>
+ * {@code sun.misc.Unsafe} is used on Java 8. The {@code VarHandle} (Java 9+) and {@code MemorySegment} (Java 22+)
+ * implementations are shipped in the versioned directories of the multi-release jar and loaded by name, so they
+ * are found only by JVMs, which support them. An implementation can be chosen with
+ * the {@link #MEMORY_ACCESS_PROP_NAME} property; if it's unknown or not available the default one is used.
+ */
+abstract class MemoryAccess {
+    /**
+     * Property name for the implementation: {@code unsafe}, {@code varhandle} or {@code segment}.
+     */
+    static final String MEMORY_ACCESS_PROP_NAME = "mcounters.memory.access";
+
+    static final String UNSAFE = "unsafe";
+    static final String VAR_HANDLE = "varhandle";
+    static final String SEGMENT = "segment";
+
+    static final MemoryAccess INSTANCE = defaultMemoryAccess(System.getProperty(MEMORY_ACCESS_PROP_NAME));
+
+    /**
+     * Chooses the implementation. It never throws, since a failure would make {@link DirectMemoryBuffer} unusable.
+     *
+     * @param name The name of the preferred implementation, can be {@code null}
+     * @return the preferred implementation or the default one if the preferred one is unknown or not available
+     */
+    static MemoryAccess defaultMemoryAccess(final String name) {
+        if (name != null) {
+            try {
+                final MemoryAccess memoryAccess = create(name.trim().toLowerCase());
+                if (memoryAccess != null) {
+                    return memoryAccess;
+                }
+            } catch (final IllegalArgumentException ignore) { // unknown, e.g. misspelled
+            }
+        }
+
+        for (final String preferred : new String[]{UNSAFE, SEGMENT, VAR_HANDLE}) {
+            final MemoryAccess memoryAccess = create(preferred);
+            if (memoryAccess != null) {
+                return memoryAccess;
+            }
+        }
+        throw new AssertionError("No memory access");
+    }
+
+    /**
+     * Creates the implementation.
+     *
+     * @param name The name of the implementation
+     * @return the implementation or {@code null} if it's not supported by the JVM
+     */
+    static MemoryAccess create(final String name) {
+        try {
+            switch (name) {
+                case UNSAFE:
+                    return new UnsafeMemoryAccess();
+                case VAR_HANDLE:
+                    return load("org.java.mc4j.VarHandleMemoryAccess");
+                case SEGMENT:
+                    return load("org.java.mc4j.SegmentMemoryAccess");
+                default:
+                    throw new IllegalArgumentException("Unknown memory access: " + name);
+            }
+        } catch (final ReflectiveOperationException | LinkageError | AssertionError e) {
+            return null;
+        }
+    }
+
+    private static MemoryAccess load(final String className) throws ReflectiveOperationException {
+        return (MemoryAccess) Class.forName(className).getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * Returns the name of the implementation.
+     *
+     * @return the name
+     */
+    abstract String name();
+
+    /**
+     * Returns the memory of the buffer to be passed to the accessors.
+     *
+     * @param buffer The direct byte buffer
+     * @return the memory, {@code null} for raw addresses
+     */
+    abstract Object memory(ByteBuffer buffer);
+
+    /**
+     * Returns the offset of the first byte of the buffer in its memory.
+     *
+     * @param buffer The direct byte buffer
+     * @return the offset
+     */
+    abstract long baseOffset(ByteBuffer buffer);
+
+    abstract int getInt(Object memory, long offset);
+
+    abstract int getIntVolatile(Object memory, long offset);
+
+    abstract void putInt(Object memory, long offset, int value);
+
+    abstract void putIntOrdered(Object memory, long offset, int value);
+
+    abstract void putIntVolatile(Object memory, long offset, int value);
+
+    abstract long getLong(Object memory, long offset);
+
+    abstract long getLongVolatile(Object memory, long offset);
+
+    abstract void putLong(Object memory, long offset, long value);
+
+    abstract void putLongOrdered(Object memory, long offset, long value);
+
+    abstract void putLongVolatile(Object memory, long offset, long value);
+
+    abstract long getAndAddLong(Object memory, long offset, long increment);
+
+    abstract long getAndSetLong(Object memory, long offset, long value);
+
+    abstract boolean compareAndSwapLong(Object memory, long offset, long expectedValue, long newValue);
+
+    abstract void getBytes(Object memory, long offset, byte[] dst, int dstOffset, int length);
+
+    abstract void putBytes(Object memory, long offset, byte[] src, int srcOffset, int length);
+}
@@ -0,0 +1,137 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+import sun.misc.Unsafe;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link MemoryAccess} with {@code sun.misc.Unsafe} over the raw addresses of the buffers.
+ */
+final class UnsafeMemoryAccess extends MemoryAccess {
+    private static final Unsafe UNSAFE = UnsafeAccess.getUnsafe();
+    private static final long ARRAY_BASE_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+    private static final long BYTE_BUFFER_ADDRESS_FIELD_OFFSET;
+
+    static {
+        try {
+            BYTE_BUFFER_ADDRESS_FIELD_OFFSET =
+                    UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (final Exception e) {
+            throw new AssertionError("Cannot access the address of buffers", e);
+        }
+    }
+
+    @Override
+    String name() {
+        return MemoryAccess.UNSAFE;
+    }
+
+    @Override
+    Object memory(final ByteBuffer buffer) {
+        return null;
+    }
+
+    @Override
+    long baseOffset(final ByteBuffer buffer) {
+        return UNSAFE.getLong(buffer, BYTE_BUFFER_ADDRESS_FIELD_OFFSET);
+    }
+
+    @Override
+    int getInt(final Object memory, final long offset) {
+        return UNSAFE.getInt(null, offset);
+    }
+
+    @Override
+    int getIntVolatile(final Object memory, final long offset) {
+        return UNSAFE.getIntVolatile(null, offset);
+    }
+
+    @Override
+    void putInt(final Object memory, final long offset, final int value) {
+        UNSAFE.putInt(null, offset, value);
+    }
+
+    @Override
+    void putIntOrdered(final Object memory, final long offset, final int value) {
+        UNSAFE.putOrderedInt(null, offset, value);
+    }
+
+    @Override
+    void putIntVolatile(final Object memory, final long offset, final int value) {
+        UNSAFE.putIntVolatile(null, offset, value);
+    }
+
+    @Override
+    long getLong(final Object memory, final long offset) {
+        return UNSAFE.getLong(null, offset);
+    }
+
+    @Override
+    long getLongVolatile(final Object memory, final long offset) {
+        return UNSAFE.getLongVolatile(null, offset);
+    }
+
+    @Override
+    void putLong(final Object memory, final long offset, final long value) {
+        UNSAFE.putLong(null, offset, value);
+    }
+
+    @Override
+    void putLongOrdered(final Object memory, final long offset, final long value) {
+        UNSAFE.putOrderedLong(null, offset, value);
+    }
+
+    @Override
+    void putLongVolatile(final Object memory, final long offset, final long value) {
+        UNSAFE.putLongVolatile(null, offset, value);
+    }
+
+    @Override
+    long getAndAddLong(final Object memory, final long offset, final long increment) {
+        return UNSAFE.getAndAddLong(null, offset, increment);
+    }
+
+    @Override
+    long getAndSetLong(final Object memory, final long offset, final long value) {
+        return UNSAFE.getAndSetLong(null, offset, value);
+    }
+
+    @Override
+    boolean compareAndSwapLong(final Object memory, final long offset, final long expectedValue, final long newValue) {
+        return UNSAFE.compareAndSwapLong(null, offset, expectedValue, newValue);
+    }
+
+    @Override
+    void getBytes(final Object memory, final long offset, final byte[] dst, final int dstOffset, final int length) {
+        UNSAFE.copyMemory(null, offset, dst, ARRAY_BASE_OFFSET + dstOffset, length);
+    }
+
+    @Override
+    void putBytes(final Object memory, final long offset, final byte[] src, final int srcOffset, final int length) {
+        UNSAFE.copyMemory(src, ARRAY_BASE_OFFSET + srcOffset, null, offset, length);
+    }
+}
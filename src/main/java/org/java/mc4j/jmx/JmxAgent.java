@@ -0,0 +1,264 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.jmx;
+
+import org.java.mc4j.MCountersUtils;
+import org.java.mc4j.MCountersWriter;
+
+import javax.management.MalformedObjectNameException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A Java agent, which publishes JMX attributes of any JVM as counters with a {@link JmxPublisher}, so the JVM
+ * doesn't need any changes. The agent can be loaded at startup:
+ * <pre>
+ * java -javaagent:mc4j.jar=file=kafka.dat;interval=1s;mbeans=kafka.server:type=*,name=*[Count] ...
+ * </pre>
+ * or attached to a running JVM (see {@link #agentmain(String, Instrumentation)}).
+ * <p>
+ * The arguments are separated with ';' and have the format 'NAME=VALUE':
+ * <ul>
+ *     <li>{@code file} - the counters' file; a relative path is resolved against the directory of counters
+ *     (see {@link MCountersUtils#getMCountersDirectoryName()}). By default 'jmx-PID.dat'.</li>
+ *     <li>{@code counters} - the max number of counters, by default {@value #DEFAULT_MAX_NUMBER_OF_COUNTERS}</li>
+ *     <li>{@code interval} - the refresh interval like '500ms' or '5s' of MBeans without their own interval,
+ *     by default {@value #DEFAULT_INTERVAL}</li>
+ *     <li>{@code statics} - statics of the counters' file as comma-separated 'NAME=VALUE' pairs</li>
+ *     <li>{@code mbeans} - MBeans and their attributes in the format of {@link JmxPublisher}</li>
+ *     <li>{@code mbeansfile} - a file with MBeans and their attributes in the same format</li>
+ *     <li>{@code jvm} - {@code true} to publish {@link JvmMetrics} too</li>
+ *     <li>{@code delay} - a delay before the start, for the application servers, which need to set up
+ *     the platform MBeanServer themselves, by default {@code 0}</li>
+ * </ul>
+ * Everything is done on the daemon thread {@value #THREAD_NAME}, and errors are reported to the standard
+ * error stream without affecting the JVM.
+ */
+public final class JmxAgent {
+    public static final int DEFAULT_MAX_NUMBER_OF_COUNTERS = 1000;
+    public static final String DEFAULT_INTERVAL = "1s";
+
+    static final String THREAD_NAME = "mc4j-jmx-agent";
+
+    private static final char ARGS_SEPARATOR = ';';
+    private static final char STATICS_SEPARATOR = ',';
+
+    private final File countersFile;
+    private final int maxNumberOfCounters;
+    private final long interval;
+    private final long delay;
+    private final Properties statics = new Properties();
+    private final String mBeans;
+    private final boolean jvm;
+
+    private MCountersWriter writer;
+    private JmxPublisher publisher;
+    private JvmMetrics jvmMetrics;
+    private boolean closed; // by the shutdown hook, for example, before the delay is over
+
+    public static void premain(final String args, final Instrumentation instrumentation) {
+        start(args);
+    }
+
+    /**
+     * The entry point for a JVM, which the agent is attached to with the Attach API.
+     *
+     * @param args            The agent's arguments
+     * @param instrumentation The instrumentation, not used
+     */
+    public static void agentmain(final String args, final Instrumentation instrumentation) {
+        start(args);
+    }
+
+    /**
+     * Parses the arguments and starts publishing on a daemon thread.
+     *
+     * @param args The agent's arguments
+     * @return the thread, which starts the publishing, or {@code null} if the arguments are incorrect
+     */
+    static Thread start(final String args) {
+        final JmxAgent agent;
+        try {
+            agent = new JmxAgent(parseArgs(args));
+        } catch (final Exception e) {
+            System.err.println("mc4j agent: incorrect arguments '" + args + "': " + e);
+            return null;
+        }
+
+        final Thread thread = new Thread(agent::run, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Splits the arguments. The value of an argument is everything after the first '=' up to the next ';'.
+     *
+     * @param args The agent's arguments
+     * @return values by lower-case names of the arguments
+     */
+    static Map<String, String> parseArgs(final String args) {
+        final Map<String, String> result = new LinkedHashMap<>();
+        if (args == null) {
+            return result;
+        }
+
+        int start = 0;
+        while (start < args.length()) {
+            int end = args.indexOf(ARGS_SEPARATOR, start);
+            if (end < 0) {
+                end = args.length();
+            }
+
+            final String arg = args.substring(start, end).trim();
+            if (!arg.isEmpty()) {
+                final int eq = arg.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("Argument must be NAME=VALUE: " + arg);
+                }
+                result.put(arg.substring(0, eq).trim().toLowerCase(Locale.ROOT), arg.substring(eq + 1).trim());
+            }
+
+            start = end + 1;
+        }
+        return result;
+    }
+
+    JmxAgent(final Map<String, String> args) throws IOException {
+        final Map<String, String> unknownArgs = new LinkedHashMap<>(args);
+
+        final String file = remove(unknownArgs, "file", "jmx-" + MCountersUtils.PID + ".dat");
+        countersFile = new File(file).isAbsolute() ?
+                new File(file) :
+                new File(MCountersUtils.getMCountersDirectoryName(), file);
+
+        maxNumberOfCounters = Integer.parseInt(remove(unknownArgs, "counters",
+                String.valueOf(DEFAULT_MAX_NUMBER_OF_COUNTERS)));
+        interval = MCountersUtils.parseDuration(remove(unknownArgs, "interval", DEFAULT_INTERVAL));
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        }
+        delay = MCountersUtils.parseDuration(remove(unknownArgs, "delay", "0"));
+
+        final String staticPairs = remove(unknownArgs, "statics", "");
+        for (final String pair : staticPairs.split(String.valueOf(STATICS_SEPARATOR))) {
+            if (pair.trim().isEmpty()) {
+                continue;
+            }
+            final int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Static must be NAME=VALUE: " + pair);
+            }
+            statics.setProperty(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+        }
+
+        final StringBuilder mBeansBuilder = new StringBuilder(remove(unknownArgs, "mbeans", ""));
+        final String mBeansFile = remove(unknownArgs, "mbeansfile", null);
+        if (mBeansFile != null) {
+            mBeansBuilder
+                    .append(' ')
+                    .append(new String(Files.readAllBytes(new File(mBeansFile).toPath()), StandardCharsets.UTF_8));
+        }
+        mBeans = mBeansBuilder.toString();
+        try {
+            MBean.parseMBeans(mBeans); // fail fast
+        } catch (final MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Incorrect MBeans: " + mBeans, e);
+        }
+
+        jvm = Boolean.parseBoolean(remove(unknownArgs, "jvm", "false"));
+
+        if (!unknownArgs.isEmpty()) {
+            throw new IllegalArgumentException("Unknown arguments: " + unknownArgs.keySet());
+        }
+    }
+
+    File countersFile() {
+        return countersFile;
+    }
+
+    synchronized JmxPublisher publisher() {
+        return publisher;
+    }
+
+    void run() {
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::close, THREAD_NAME + "-shutdown"));
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+
+            synchronized (this) { // the close either waits for the start or the start is skipped
+                if (closed) {
+                    return;
+                }
+                writer = new MCountersWriter(countersFile, statics, maxNumberOfCounters);
+
+                publisher = new JmxPublisher(writer, mBeans);
+                publisher.start(interval);
+
+                if (jvm) {
+                    jvmMetrics = new JvmMetrics(writer);
+                    jvmMetrics.start(interval);
+                }
+            }
+        } catch (final InterruptedException ignore) {
+            close();
+        } catch (final Throwable t) {
+            System.err.println("mc4j agent: cannot publish to " + countersFile + ": " + t);
+            close();
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+        if (jvmMetrics != null) {
+            jvmMetrics.close();
+            jvmMetrics = null;
+        }
+        if (publisher != null) {
+            publisher.close();
+            publisher = null;
+        }
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (final IOException ignore) {
+            }
+            writer = null;
+        }
+    }
+
+    private static String remove(final Map<String, String> args, final String name, final String defaultValue) {
+        final String value = args.remove(name);
+        return value != null ? value : defaultValue;
+    }
+}
@@ -25,12 +25,27 @@ package org.java.mc4j.jmx;
 
 import org.java.mc4j.MCountersWriter;
 
-import javax.management.MBeanServer;
+import javax.management.InstanceNotFoundException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
 import javax.management.MalformedObjectNameException;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class exposes JMX attributes as counters. Attributes of the following types are supported:
@@ -42,6 +57,7 @@ import java.util.Map;
  *     <li>{@code double}</li>
  *     <li>{@code float}</li>
  *     <li>{@code boolean}</li>
+ *     <li>{@code CompositeData} and {@code TabularData} with items of the types above</li>
  * </ul>
  * <p>
  * Floating-point variables {@code double} and {@code float} are converted to {@code long} with possible loss
@@ -51,6 +67,8 @@ import java.util.Map;
  * <p>
  * A counter's label format looks like 'jmx://OBJECT_NAME?ATTRIBUTE_NAME'. For example:
  * {@code jmx://java.lang:type=Runtime?StartTime }; {@code jmx://java.lang:type=Runtime?BootClassPathSupported}.
+ * An item of CompositeData or TabularData gets a counter for its path, for example
+ * {@code jmx://java.lang:type=Memory?HeapMemoryUsage.used}.
  * <p>
  * The class should be configured with a list of MBeans' ObjectNames and names of attributes in the format:
  * "OBJECT_NAME_1[ATTRIBUTE_NAME_1, ATTRIBUTE_NAME_2,...ATTRIBUTE_NAME_X]
@@ -59,6 +77,14 @@ import java.util.Map;
  * <p>
  * Wildcard '<b>*</b>' can be used to specify all available attributes of supported types.
  * <p>
+ * An OBJECT_NAME can be a pattern, for example {@code java.lang:type=GarbageCollector,name=*}. Such a pattern
+ * is expanded to all matching MBeans (see {@link MBeanPattern}) once.
+ * <p>
+ * The publisher listens to registration and unregistration notifications of the MBeanServerDelegate. Counters of
+ * an MBean are created when the MBean is registered and closed when it is unregistered, so a refresh neither probes
+ * missing MBeans nor queries the names matching the patterns. The notifications only record the latest state
+ * of every changed MBean, which is applied on the next refresh.
+ * <p>
  * An example of usage:
  * <pre>
  * try (JmxPublisher jmxPublisher = ...) {
@@ -69,14 +95,48 @@ import java.util.Map;
  *     ...
  * }
  * </pre>
- *
- * <b>IMPORTANT:</b> this class isn't thread safe.
+ * <p>
+ * An MBean or a pattern can be followed by its own refresh interval, for example
+ * {@code java.lang:type=Memory[HeapMemoryUsage]@100ms java.lang:type=GarbageCollector,name=*[*]@1m}.
+ * The intervals are used by {@link #start(long)}, which refreshes all MBeans on one thread taking the earliest
+ * due refresh from a time-ordered queue. The MBeans without an interval are refreshed with the interval
+ * passed to {@link #start(long)}; {@link #refresh()} still refreshes all MBeans at once.
+ * <p>
+ * With {@link #refreshInParallel(int, long)} MBeans are refreshed concurrently, each with a timeout, so one MBean,
+ * which blocks, doesn't make the counters of the others stale.
+ * <p>
+ * <b>IMPORTANT:</b> this class isn't thread safe unless it's started, in which case its methods are synchronized
+ * with the refreshing thread.
  */
 public class JmxPublisher implements AutoCloseable {
     private final Map<String, MBean> mBeans = new HashMap<>();
+    private final Map<String, MBeanPattern> mBeanPatterns = new HashMap<>();
 
     private final MCountersWriter mCountersWriter;
-    private final MBeanServer server;
+    private final MBeanServerConnection server;
+
+    private final Map<ObjectName, MBean> mBeansByName = new HashMap<>();
+
+    // the latest registration state of every MBean changed since the last refresh, so the map stays bounded
+    // by the number of MBeans no matter how often they come and go
+    private final Map<ObjectName, Boolean> registrationChanges = new ConcurrentHashMap<>();
+    private final NotificationListener registrationsListener = (notification, handback) -> {
+        if (notification instanceof MBeanServerNotification) {
+            registrationChanges.put(((MBeanServerNotification) notification).getMBeanName(),
+                    MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType()));
+        }
+    };
+    private boolean registrationsListened;
+
+    // refreshes of concrete MBeans and patterns by their ObjectNames
+    private final Map<ObjectName, MBeanRefresh> refreshes = new LinkedHashMap<>();
+
+    private final PriorityQueue<MBeanRefresh> schedule = new PriorityQueue<>(); // the earliest refresh first
+    private Thread scheduler;
+    private long refreshInterval; // millis, of the MBeans without their own interval
+
+    private ExecutorService refreshPool; // null - MBeans are refreshed one by one in the calling thread
+    private long refreshTimeout; // nanos
 
     /**
      * Creates an instance of JmxPublisher with no MBeans specified.
@@ -102,26 +162,343 @@ public class JmxPublisher implements AutoCloseable {
         addMBeans(objectNamesWithAttributes);
     }
 
+    /**
+     * Creates an instance of the publisher, which publishes MBeans of another JVM. If the connection breaks,
+     * the counters stay as they are until it's restored.
+     *
+     * @param countersWriter            The counter writer
+     * @param server                    The connection to the MBeanServer of the JVM, for example
+     *                                  {@link javax.management.remote.JMXConnector#getMBeanServerConnection()}
+     * @param objectNamesWithAttributes MBeans and their attributes, can be {@code null}
+     * @throws MalformedObjectNameException if an ObjectName is incorrect
+     */
+    public JmxPublisher(final MCountersWriter countersWriter,
+                        final MBeanServerConnection server,
+                        final String objectNamesWithAttributes) throws MalformedObjectNameException {
+        this.mCountersWriter = countersWriter;
+        this.server = server;
+
+        addMBeans(objectNamesWithAttributes);
+    }
+
     /**
      * @param objectNamesWithAttributes
      * @throws MalformedObjectNameException
      */
-    public void addMBeans(final String objectNamesWithAttributes) throws MalformedObjectNameException {
+    public synchronized void addMBeans(final String objectNamesWithAttributes) throws MalformedObjectNameException {
         final Map<String, MBean> newMBeans = MBean.parseMBeans(objectNamesWithAttributes);
-        newMBeans.forEach(mBeans::putIfAbsent);
+        if (!newMBeans.isEmpty()) {
+            listenRegistrations(); // before checking the registrations to not miss changes made meanwhile
+        }
+
+        newMBeans.forEach((objectName, mBean) -> {
+            if (!mBean.objectName().isPattern()) {
+                if (mBeans.putIfAbsent(objectName, mBean) == null) {
+                    mBeansByName.put(mBean.objectName(), mBean);
+                    if (registrationsListened) {
+                        followRegistrations(mBean);
+                    }
+                    addRefresh(mBean.objectName(),
+                            () -> mBean.refresh(mCountersWriter, server),
+                            mBean.refreshInterval());
+                }
+                return;
+            }
+            if (!mBeanPatterns.containsKey(objectName)) {
+                final MBeanPattern mBeanPattern = new MBeanPattern(mBean.objectName(),
+                        mBean.attributeNames(),
+                        mBean.refreshInterval());
+                if (registrationsListened) {
+                    mBeanPattern.followRegistrations();
+                }
+                mBeanPatterns.put(objectName, mBeanPattern); // is expanded on the next refresh
+                addRefresh(mBeanPattern.objectName(), () -> refresh(mBeanPattern), mBeanPattern.refreshInterval());
+            }
+        });
     }
 
+    /**
+     * Starts a thread, which refreshes every MBean with its own refresh interval specified in the expression or
+     * with the given one if it's not specified. After the start the publisher can be used from other threads.
+     *
+     * @param refreshInterval The refresh interval in millis of MBeans without their own interval
+     * @throws IllegalStateException if the publisher has been started already
+     */
+    public synchronized void start(final long refreshInterval) {
+        if (refreshInterval <= 0) {
+            throw new IllegalArgumentException("Refresh interval must be positive: " + refreshInterval);
+        }
+        if (scheduler != null) {
+            throw new IllegalStateException("Already started");
+        }
+        this.refreshInterval = refreshInterval;
+
+        scheduler = new Thread(this::runScheduler, "mc4j-jmx-publisher");
+        scheduler.setDaemon(true);
+
+        for (final MBean mBean : mBeans.values()) {
+            schedule(refreshes.get(mBean.objectName()), mBean.refreshInterval());
+        }
+        for (final MBeanPattern mBeanPattern : mBeanPatterns.values()) {
+            schedule(refreshes.get(mBeanPattern.objectName()), mBeanPattern.refreshInterval());
+        }
+
+        scheduler.start();
+    }
+
+    /**
+     * Makes the publisher refresh MBeans concurrently, so an MBean, which blocks, doesn't delay refreshes
+     * of the others. Every refresh is given the timeout, after which it's interrupted, and a refresh stuck
+     * in an MBean gets a thread of its own, so the others keep their threads. A refresh of an MBean (or of all
+     * MBeans matching a pattern), which is still running, isn't started again, and the MBeans overrunning
+     * the timeout repeatedly are backed off for a while (see {@link MBeanRefresh}). {@link #refresh()} waits for
+     * the refreshes until the timeout expires.
+     * <p>
+     * The latency of every refresh is published as counter 'jmxpublisher://OBJECT_NAME?RefreshNanos' and the number
+     * of overruns as 'jmxpublisher://OBJECT_NAME?RefreshOverruns'.
+     *
+     * @param parallelism    The number of refreshing threads, {@code 0} - a virtual thread per refresh if it's
+     *                       supported by the JVM (JDK 21+) or a thread per available processor otherwise
+     * @param refreshTimeout The timeout in millis of a refresh
+     * @throws IllegalStateException if concurrent refresh has been turned on already
+     */
+    public synchronized void refreshInParallel(final int parallelism, final long refreshTimeout) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("Negative parallelism: " + parallelism);
+        }
+        if (refreshTimeout <= 0) {
+            throw new IllegalArgumentException("Refresh timeout must be positive: " + refreshTimeout);
+        }
+        if (refreshPool != null) {
+            throw new IllegalStateException("Already refreshed in parallel");
+        }
+
+        refreshPool = parallelism == 0 ? newVirtualThreadPerTaskExecutor() : null;
+        if (refreshPool == null) {
+            final int numberOfThreads = parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism;
+            refreshPool = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, // resized by the refreshes
+                    0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                final Thread thread = new Thread(r, "mc4j-jmx-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.refreshTimeout = TimeUnit.MILLISECONDS.toNanos(refreshTimeout);
+
+        for (final MBeanRefresh refresh : refreshes.values()) {
+            refresh.runOn(refreshPool, this.refreshTimeout, mCountersWriter);
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException | RuntimeException ignore) { // JDK 20 and earlier
+            return null;
+        }
+    }
+
+    /**
+     * Stops the thread started with {@link #start(long)}. The counters stay as they are.
+     */
+    public void stop() {
+        final Thread thread;
+        synchronized (this) {
+            thread = scheduler;
+            scheduler = null;
+            schedule.clear();
+            notifyAll();
+        }
+
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized boolean isStarted() {
+        return scheduler != null;
+    }
+
+    /**
+     * Returns MBeans specified with concrete ObjectNames.
+     *
+     * @return MBeans with concrete ObjectNames
+     */
     public Collection<MBean> getMBeans() {
         return mBeans.values();
     }
 
+    /**
+     * Returns MBeans specified with ObjectName patterns.
+     *
+     * @return MBeans with ObjectName patterns
+     */
+    public Collection<MBeanPattern> getMBeanPatterns() {
+        return mBeanPatterns.values();
+    }
+
     /**
      * Refreshes counters for currently available MBeans. If an MBean has disappeared, all the counters associated
      * with its attributes are closed/removed.
      */
-    public void refresh() {
-        for (final MBean mBean : mBeans.values()) {
-            mBean.refresh(mCountersWriter, server);
+    public synchronized void refresh() {
+        if (!registrationChanges.isEmpty()) {
+            applyRegistrationChanges();
+        }
+
+        final long now = System.nanoTime();
+        for (final MBeanRefresh refresh : refreshes.values()) {
+            refresh.start(now);
+        }
+
+        if (refreshPool == null) {
+            return;
+        }
+        final long deadline = now + refreshTimeout;
+        try {
+            for (final MBeanRefresh refresh : refreshes.values()) {
+                refresh.await(deadline);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void refresh(final MBeanPattern mBeanPattern) {
+        if (!mBeanPattern.isExpanded() || !registrationsListened) { // nothing tells us about new MBeans
+            mBeanPattern.expand(server);
+        }
+        mBeanPattern.refresh(mCountersWriter, server);
+    }
+
+    private void addRefresh(final ObjectName objectName, final Runnable refresh, final long refreshInterval) {
+        final MBeanRefresh mBeanRefresh = new MBeanRefresh(objectName.getCanonicalName(), refresh);
+        if (refreshPool != null) {
+            mBeanRefresh.runOn(refreshPool, refreshTimeout, mCountersWriter);
+        }
+        refreshes.put(objectName, mBeanRefresh);
+        schedule(mBeanRefresh, refreshInterval);
+    }
+
+    private void schedule(final MBeanRefresh refresh, final long refreshInterval) {
+        if (scheduler == null) {
+            return; // not started, will be scheduled on start
+        }
+        refresh.interval = TimeUnit.MILLISECONDS.toNanos(refreshInterval > 0 ? refreshInterval :
+                this.refreshInterval);
+        refresh.refreshTime = System.nanoTime();
+        schedule.add(refresh);
+        notifyAll(); // the new refresh can be the earliest one
+    }
+
+    private synchronized void runScheduler() {
+        final Thread thread = Thread.currentThread();
+        while (scheduler == thread) {
+            final MBeanRefresh next = schedule.peek();
+            try {
+                if (next == null) {
+                    wait();
+                    continue;
+                }
+                final long now = System.nanoTime();
+                if (next.refreshTime - now > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, next.refreshTime - now); // releases the lock
+                    continue;
+                }
+            } catch (final InterruptedException e) {
+                return;
+            }
+
+            if (!registrationChanges.isEmpty()) {
+                applyRegistrationChanges();
+            }
+
+            schedule.poll();
+            next.start(System.nanoTime()); // returns at once if runs on the pool
+
+            next.refreshTime += next.interval;
+            final long now = System.nanoTime();
+            if (next.refreshTime - now < 0) { // too late, skip the missed refreshes
+                next.refreshTime = now + next.interval;
+            }
+            schedule.add(next);
+        }
+    }
+
+    private void applyRegistrationChanges() {
+        for (final Map.Entry<ObjectName, Boolean> change : registrationChanges.entrySet()) {
+            final ObjectName name = change.getKey();
+            final boolean registered = change.getValue();
+            if (isRefreshing(name)) {
+                continue; // the MBean is in use, so the change will be applied next time
+            }
+            if (!registrationChanges.remove(name, registered)) {
+                continue; // changed again meanwhile, so the latest state will be applied on the next refresh
+            }
+
+            final MBean mBean = mBeansByName.get(name);
+            if (mBean != null) {
+                if (registered) {
+                    mBean.registered();
+                } else {
+                    mBean.unregistered();
+                }
+            }
+
+            for (final MBeanPattern mBeanPattern : mBeanPatterns.values()) {
+                if (!mBeanPattern.isExpanded()) {
+                    continue; // the expansion will find the MBean if it is there
+                }
+                if (registered) {
+                    mBeanPattern.registered(name);
+                } else {
+                    mBeanPattern.unregistered(name);
+                }
+            }
+        }
+    }
+
+    private boolean isRefreshing(final ObjectName name) {
+        if (refreshPool == null) {
+            return false; // refreshes run in the calling thread, so nothing is running now
+        }
+        if (mBeansByName.containsKey(name) && refreshes.get(name).isRunning()) {
+            return true;
+        }
+        for (final MBeanPattern mBeanPattern : mBeanPatterns.values()) {
+            if (mBeanPattern.objectName().apply(name) && refreshes.get(mBeanPattern.objectName()).isRunning()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void followRegistrations(final MBean mBean) {
+        try {
+            mBean.followRegistrations(server.isRegistered(mBean.objectName()));
+        } catch (final IOException ignore) { // the MBean will be probed on every refresh
+        }
+    }
+
+    private void listenRegistrations() {
+        if (registrationsListened) {
+            return;
+        }
+        try {
+            server.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, registrationsListener, null, null);
+            registrationsListened = true;
+        } catch (final InstanceNotFoundException | IOException ignore) { // the MBeans are probed on every refresh
         }
     }
 
@@ -130,17 +507,49 @@ public class JmxPublisher implements AutoCloseable {
      */
     @Override
     public void close() {
-        if (mBeans.isEmpty()) {
-            return;
-        }
+        stop();
 
-        for (final MBean mBean : mBeans.values()) {
-            try {
-                mBean.close();
-            } catch (final Throwable ignore) {
+        synchronized (this) {
+            if (refreshPool != null) {
+                refreshPool.shutdownNow(); // interrupts the running refreshes
+                try {
+                    refreshPool.awaitTermination(refreshTimeout, TimeUnit.NANOSECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                refreshPool = null;
             }
-        }
 
-        mBeans.clear();
+            if (registrationsListened) {
+                try {
+                    server.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, registrationsListener);
+                } catch (final InstanceNotFoundException | ListenerNotFoundException | IOException ignore) {
+                }
+                registrationsListened = false;
+            }
+
+            // the MBeans are closed once the refreshes, which are still using them, finish
+            for (final MBean mBean : mBeans.values()) {
+                refreshes.get(mBean.objectName()).closeWhenFinished(() -> {
+                    try {
+                        mBean.close();
+                    } catch (final Throwable ignore) {
+                    }
+                });
+            }
+            mBeans.clear();
+            mBeansByName.clear();
+            registrationChanges.clear();
+
+            for (final MBeanPattern mBeanPattern : mBeanPatterns.values()) {
+                refreshes.get(mBeanPattern.objectName()).closeWhenFinished(mBeanPattern::close);
+            }
+            mBeanPatterns.clear();
+
+            for (final MBeanRefresh refresh : refreshes.values()) {
+                refresh.close();
+            }
+            refreshes.clear();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,285 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.jmx;
+
+import org.java.mc4j.MCounter;
+import org.java.mc4j.MCountersWriter;
+
+import javax.management.ObjectName;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.PlatformManagedObject;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Publishes standard JVM metrics as counters, reading the platform MXBeans through their Java interfaces
+ * instead of the MBeanServer's string-based API:
+ * <ul>
+ *     <li>{@link MemoryMXBean}: heap and non-heap usage, objects pending finalization</li>
+ *     <li>{@link GarbageCollectorMXBean}s: collection counts and times</li>
+ *     <li>{@link ThreadMXBean}: live, daemon, peak and started threads</li>
+ *     <li>{@link BufferPoolMXBean}s: direct and mapped buffers</li>
+ *     <li>{@link ClassLoadingMXBean}: loaded and unloaded classes</li>
+ *     <li>{@link CompilationMXBean}: JIT compilation time</li>
+ *     <li>{@link OperatingSystemMXBean}: processors, load average and, if available, process CPU time and
+ *     open file descriptors</li>
+ * </ul>
+ * The counters have the same labels as the counters of {@link JmxPublisher} for the same attributes, for example
+ * {@code jmx://java.lang:type=Memory?HeapMemoryUsage.used} or
+ * {@code jmx://java.lang:name=G1 Young Generation,type=GarbageCollector?CollectionCount}.
+ * <p>
+ * An example of usage:
+ * <pre>
+ * try (JvmMetrics jvmMetrics = new JvmMetrics(countersWriter)) {
+ *     jvmMetrics.start(1000);
+ *     ...
+ * }
+ * </pre>
+ */
+public class JvmMetrics implements AutoCloseable {
+    private static final String[] MEMORY_USAGE_ITEMS = {"init", "used", "committed", "max"};
+
+    private final MCountersWriter mCountersWriter;
+
+    private final List<MCounter> counters = new ArrayList<>();
+    private final List<Runnable> probes = new ArrayList<>();
+
+    private Thread refresher;
+    private boolean closed;
+
+    /**
+     * Creates counters for all the metrics available in this JVM.
+     *
+     * @param countersWriter The counter writer
+     */
+    public JvmMetrics(final MCountersWriter countersWriter) {
+        this.mCountersWriter = countersWriter;
+
+        try {
+            addMemory(ManagementFactory.getMemoryMXBean());
+            for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                addGauge(gc, "CollectionCount", gc::getCollectionCount);
+                addGauge(gc, "CollectionTime", gc::getCollectionTime);
+            }
+            addThreads(ManagementFactory.getThreadMXBean());
+            for (final BufferPoolMXBean bufferPool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+                addGauge(bufferPool, "Count", bufferPool::getCount);
+                addGauge(bufferPool, "MemoryUsed", bufferPool::getMemoryUsed);
+                addGauge(bufferPool, "TotalCapacity", bufferPool::getTotalCapacity);
+            }
+            addClassLoading(ManagementFactory.getClassLoadingMXBean());
+            addCompilation(ManagementFactory.getCompilationMXBean());
+            addOperatingSystem(ManagementFactory.getOperatingSystemMXBean());
+        } catch (final RuntimeException e) { // the counters are added all or none, e.g. no free space for them
+            counters.forEach(MCounter::close);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads all metrics and sets their counters.
+     */
+    public synchronized void refresh() {
+        if (closed) {
+            return;
+        }
+        for (final Runnable probe : probes) {
+            try {
+                probe.run();
+            } catch (final Throwable ignore) { // keep refreshing the rest
+            }
+        }
+    }
+
+    /**
+     * Starts a thread, which refreshes the metrics with the given interval.
+     *
+     * @param refreshInterval The refresh interval in millis
+     * @throws IllegalStateException if already started
+     */
+    public synchronized void start(final long refreshInterval) {
+        if (refreshInterval <= 0) {
+            throw new IllegalArgumentException("Refresh interval must be positive: " + refreshInterval);
+        }
+        if (refresher != null) {
+            throw new IllegalStateException("Already started");
+        }
+        if (closed) {
+            throw new IllegalStateException("Closed");
+        }
+
+        refresher = new Thread(() -> run(TimeUnit.MILLISECONDS.toNanos(refreshInterval)), "mc4j-jvm-metrics");
+        refresher.setDaemon(true);
+        refresher.start();
+    }
+
+    /**
+     * Stops the thread started with {@link #start(long)}. The counters stay as they are.
+     */
+    public void stop() {
+        final Thread thread;
+        synchronized (this) {
+            thread = refresher;
+            refresher = null;
+        }
+
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        thread.interrupt();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized boolean isStarted() {
+        return refresher != null;
+    }
+
+    /**
+     * Stops refreshing and closes all counters.
+     */
+    @Override
+    public void close() {
+        stop();
+
+        synchronized (this) {
+            closed = true;
+            for (final MCounter counter : counters) {
+                counter.close();
+            }
+            counters.clear();
+            probes.clear();
+        }
+    }
+
+    private void run(final long refreshInterval) {
+        long refreshTime = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            refresh();
+
+            refreshTime += refreshInterval;
+            final long now = System.nanoTime();
+            if (refreshTime - now < 0) { // too late, skip the missed refreshes
+                refreshTime = now + refreshInterval;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(refreshTime - now);
+            } catch (final InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void addMemory(final MemoryMXBean memory) {
+        final MCounter[] heap = addMemoryUsage(memory, "HeapMemoryUsage");
+        final MCounter[] nonHeap = addMemoryUsage(memory, "NonHeapMemoryUsage");
+        probes.add(() -> {
+            set(heap, memory.getHeapMemoryUsage());
+            set(nonHeap, memory.getNonHeapMemoryUsage());
+        });
+        addGauge(memory, "ObjectPendingFinalizationCount", memory::getObjectPendingFinalizationCount);
+    }
+
+    private void addThreads(final ThreadMXBean threads) {
+        addGauge(threads, "ThreadCount", threads::getThreadCount);
+        addGauge(threads, "DaemonThreadCount", threads::getDaemonThreadCount);
+        addGauge(threads, "PeakThreadCount", threads::getPeakThreadCount);
+        addGauge(threads, "TotalStartedThreadCount", threads::getTotalStartedThreadCount);
+    }
+
+    private void addClassLoading(final ClassLoadingMXBean classLoading) {
+        addGauge(classLoading, "LoadedClassCount", classLoading::getLoadedClassCount);
+        addGauge(classLoading, "TotalLoadedClassCount", classLoading::getTotalLoadedClassCount);
+        addGauge(classLoading, "UnloadedClassCount", classLoading::getUnloadedClassCount);
+    }
+
+    private void addCompilation(final CompilationMXBean compilation) {
+        if (compilation == null || !compilation.isCompilationTimeMonitoringSupported()) {
+            return; // no JIT compiler
+        }
+        addGauge(compilation, "TotalCompilationTime", compilation::getTotalCompilationTime);
+    }
+
+    private void addOperatingSystem(final OperatingSystemMXBean os) {
+        addGauge(os, "AvailableProcessors", os::getAvailableProcessors);
+        addGauge(os, "SystemLoadAverage", () -> (long) os.getSystemLoadAverage());
+
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            final com.sun.management.OperatingSystemMXBean sunOs = (com.sun.management.OperatingSystemMXBean) os;
+            addGauge(os, "ProcessCpuTime", sunOs::getProcessCpuTime);
+        }
+        if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+            final com.sun.management.UnixOperatingSystemMXBean unixOs =
+                    (com.sun.management.UnixOperatingSystemMXBean) os;
+            addGauge(os, "OpenFileDescriptorCount", unixOs::getOpenFileDescriptorCount);
+        }
+    }
+
+    private MCounter[] addMemoryUsage(final PlatformManagedObject mxBean, final String attributeName) {
+        final MCounter[] result = new MCounter[MEMORY_USAGE_ITEMS.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = addCounter(mxBean, attributeName + OpenDataCounters.PATH_SEPARATOR + MEMORY_USAGE_ITEMS[i]);
+        }
+        return result;
+    }
+
+    private static void set(final MCounter[] counters, final MemoryUsage usage) {
+        counters[0].set(usage.getInit());
+        counters[1].set(usage.getUsed());
+        counters[2].set(usage.getCommitted());
+        counters[3].set(usage.getMax());
+    }
+
+    private void addGauge(final PlatformManagedObject mxBean, final String attributeName, final LongSupplier value) {
+        final MCounter counter = addCounter(mxBean, attributeName);
+        probes.add(() -> counter.set(value.getAsLong()));
+    }
+
+    private MCounter addCounter(final PlatformManagedObject mxBean, final String attributeName) {
+        final ObjectName objectName = mxBean.getObjectName();
+        final MCounter result = mCountersWriter.addCounter("jmx://" + objectName.getCanonicalName() + "?" +
+                attributeName);
+        counters.add(result);
+        return result;
+    }
+}
@@ -24,17 +24,24 @@
 package org.java.mc4j.jmx;
 
 import org.java.mc4j.MCounter;
+import org.java.mc4j.MCountersUtils;
 import org.java.mc4j.MCountersWriter;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanException;
 import javax.management.MBeanInfo;
-import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.TabularData;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -54,9 +61,21 @@ public class MBean implements AutoCloseable {
     private static final int ATTR_LIST_STARTED_STATE = OBJECT_NAME_ESCAPING_STARTED_STATE + 1;
     private static final int ATTR_NAME_STARTED_STATE = ATTR_LIST_STARTED_STATE + 1;
     private static final int ATTR_NAME_FINISHED_STATE = ATTR_NAME_STARTED_STATE + 1;
+    private static final int ATTR_LIST_FINISHED_STATE = ATTR_NAME_FINISHED_STATE + 1;
+    private static final int REFRESH_INTERVAL_STARTED_STATE = ATTR_LIST_FINISHED_STATE + 1;
+
+    private static final String COMPOSITE_DATA_TYPE = CompositeData.class.getName();
+    private static final String TABULAR_DATA_TYPE = TabularData.class.getName();
+
+    /**
+     * Separates an optional refresh interval from the list of attributes.
+     */
+    public static final char REFRESH_INTERVAL_SEPARATOR = '@';
 
     /**
      * Converts an expression with a list of MBeans and their attributes to a number of instances of MBean. See
+     * {@link JmxPublisher} for the format. The list of attributes can be followed by a refresh interval of
+     * the MBean, for example {@code java.lang:type=Memory[HeapMemoryUsage]@100ms}.
      * @param objectNamesWithAttributeNames
      * @return Map of pairs Object Name to MBean
      * @throws MalformedObjectNameException
@@ -78,12 +97,25 @@ public class MBean implements AutoCloseable {
 
         final StringBuilder attributeName = new StringBuilder();
 
+        final StringBuilder refreshInterval = new StringBuilder();
+        MBean mBean = null; // the last parsed MBean
+
         for (int i = 0; i < objectNamesWithAttributeNames.length(); i++) {
             final char c = objectNamesWithAttributeNames.charAt(i);
 
+            if (state == ATTR_LIST_FINISHED_STATE) { // a refresh interval or the next MBean follows the list
+                if (c == REFRESH_INTERVAL_SEPARATOR) {
+                    state = REFRESH_INTERVAL_STARTED_STATE;
+                    refreshInterval.setLength(0);
+                    continue;
+                }
+                state = INITIAL_STATE; // no refresh interval specified
+            }
+
             switch (state) {
                 case INITIAL_STATE:
                     if (Character.isWhitespace(c)) {
+                        state = INITIAL_STATE;
                         break;
                     }
                     if (c == '\\') {
@@ -134,11 +166,11 @@ public class MBean implements AutoCloseable {
                         break;
                     }
                     if (c == ']') {
-                        state = INITIAL_STATE;
+                        state = ATTR_LIST_FINISHED_STATE;
                         attributeNames.add(attributeName.toString());
 
                         final String objName = objectName.toString();
-                        final MBean mBean = new MBean(objName, attributeNames);
+                        mBean = new MBean(objName, attributeNames);
                         result.put(objName, mBean);
 
                         break;
@@ -153,11 +185,11 @@ public class MBean implements AutoCloseable {
                         break;
                     }
                     if (c == ']') {
-                        state = INITIAL_STATE;
+                        state = ATTR_LIST_FINISHED_STATE;
                         attributeNames.add(attributeName.toString());
 
                         final String objName = objectName.toString();
-                        final MBean mBean = new MBean(objName, attributeNames);
+                        mBean = new MBean(objName, attributeNames);
                         result.put(objName, mBean);
 
                         break;
@@ -168,6 +200,18 @@ public class MBean implements AutoCloseable {
                     }
                     throw new IllegalArgumentException(unexpectedCharAtMessage + i);
 
+                case REFRESH_INTERVAL_STARTED_STATE:
+                    if (Character.isWhitespace(c)) {
+                        state = INITIAL_STATE;
+                        mBean.refreshInterval(parseRefreshInterval(refreshInterval, i));
+                        break;
+                    }
+                    if (Character.isLetterOrDigit(c)) {
+                        refreshInterval.append(c);
+                        break;
+                    }
+                    throw new IllegalArgumentException(unexpectedCharAtMessage + i);
+
                 default:
                     throw new IllegalArgumentException(unexpectedCharAtMessage + i);
             }
@@ -175,6 +219,10 @@ public class MBean implements AutoCloseable {
 
         switch (state) {
             case INITIAL_STATE:
+            case ATTR_LIST_FINISHED_STATE:
+                break;
+            case REFRESH_INTERVAL_STARTED_STATE:
+                mBean.refreshInterval(parseRefreshInterval(refreshInterval, objectNamesWithAttributeNames.length()));
                 break;
             default:
                 throw new IllegalArgumentException("The list must ends with ']'");
@@ -183,14 +231,33 @@ public class MBean implements AutoCloseable {
         return result;
     }
 
+    private static long parseRefreshInterval(final CharSequence refreshInterval, final int pos) {
+        final long result;
+        try {
+            result = MCountersUtils.parseDuration(refreshInterval.toString());
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Incorrect refresh interval before pos: " + pos, e);
+        }
+        if (result <= 0) {
+            throw new IllegalArgumentException("Refresh interval must be positive before pos: " + pos);
+        }
+        return result;
+    }
+
     private final List<MBeanAttribute> mBeanAttributes = new ArrayList<>();
     private final List<MBeanAttribute> badMBeanAttributes = new ArrayList<>();
+    private String[] mBeanAttributeNames; // names of mBeanAttributes to be requested at once
 
     private final ObjectName objectName;
     private final Set<String> attributeNames;
 
     private MBeanInfo mBeanInfo;
 
+    private long refreshInterval; // millis, 0 - refreshed with the publisher's interval
+
+    private boolean registrationsFollowed; // registrations are reported with registered() and unregistered()
+    private boolean registered = true;
+
     public MBean(final String objectName, final Collection<String> attributeNames)
             throws MalformedObjectNameException {
         this.objectName = new ObjectName(objectName);
@@ -205,6 +272,19 @@ public class MBean implements AutoCloseable {
         return attributeNames;
     }
 
+    /**
+     * Returns the refresh interval of the MBean specified in the expression.
+     *
+     * @return refresh interval in millis or {@code 0} if not specified
+     */
+    public long refreshInterval() {
+        return refreshInterval;
+    }
+
+    void refreshInterval(final long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
     public MBeanInfo mBeanInfo() {
         return mBeanInfo;
     }
@@ -212,9 +292,13 @@ public class MBean implements AutoCloseable {
     /**
      * Refresh counters' values in the CounterWriter provided.
      * @param countersWriter The counter writer to create/refresh counters
-     * @param server The MBeanServer to query attributes and their values
+     * @param server The MBeanServer or a connection to it to query attributes and their values
      */
-    public void refresh(final MCountersWriter countersWriter, final MBeanServer server) {
+    public void refresh(final MCountersWriter countersWriter, final MBeanServerConnection server) {
+        if (!registered) { // wait for the registration
+            return;
+        }
+
         if (mBeanInfo == null) {
             try {
                 mBeanInfo = server.getMBeanInfo(objectName);
@@ -241,15 +325,25 @@ public class MBean implements AutoCloseable {
                                     "byte".equals(type) ||
                                     "double".equals(type) ||
                                     "float".equals(type) ||
-                                    "boolean".equals(type);
+                                    "boolean".equals(type) ||
+                                    COMPOSITE_DATA_TYPE.equals(type) ||
+                                    TABULAR_DATA_TYPE.equals(type);
                         })
                         .forEach(ai -> mBeanAttributes.add(new MBeanAttribute(ai)));
+
+                mBeanAttributeNames = null;
+            } catch (final InstanceNotFoundException e) {
+                unregistered();
+                return;
             } catch (final Throwable ignore) { // cannot reach specified MBean with its attributes right now
                 return; // just return
             }
         }
 
         if (mBeanAttributes.isEmpty()) {
+            if (registrationsFollowed) { // nothing to refresh until the MBean is unregistered
+                return;
+            }
             try {
                 server.getMBeanInfo(objectName); // check object's availability
             } catch (final Throwable t) {
@@ -259,11 +353,64 @@ public class MBean implements AutoCloseable {
             }
         }
 
+        if (mBeanAttributeNames == null) {
+            mBeanAttributeNames = new String[mBeanAttributes.size()];
+            for (int i = 0; i < mBeanAttributeNames.length; i++) {
+                mBeanAttributeNames[i] = mBeanAttributes.get(i).attributeInfo.getName();
+            }
+        }
+
+        AttributeList values;
+        try {
+            values = server.getAttributes(objectName, mBeanAttributeNames); // one call instead of a call
+            // per attribute
+        } catch (final InstanceNotFoundException e) { // we have lost the MBean
+            unregistered();
+            return;
+        } catch (final IOException e) { // the connection has failed
+            return; // try again next time
+        } catch (final Throwable t) { // the MBean cannot get its attributes in bulk,
+            values = new AttributeList(); // so get them one by one below
+        }
+
         for (final MBeanAttribute mBeanAttribute : mBeanAttributes) {
+            mBeanAttribute.refreshed = false;
+        }
+
+        int expectedIndex = 0;
+        for (final Object value : values) {
+            if (!(value instanceof Attribute)) {
+                continue;
+            }
+            final Attribute attribute = (Attribute) value;
+
+            int index = expectedIndex; // values usually go in the order of the requested names
+            if (index >= mBeanAttributeNames.length || !mBeanAttributeNames[index].equals(attribute.getName())) {
+                index = Arrays.asList(mBeanAttributeNames).indexOf(attribute.getName());
+                if (index < 0) {
+                    continue;
+                }
+            }
+            expectedIndex = index + 1;
+
+            final MBeanAttribute mBeanAttribute = mBeanAttributes.get(index);
             try {
+                mBeanAttribute.refresh(countersWriter, attribute.getValue());
+            } catch (final Throwable t) { // UnsupportedOperationException (for unsupported type) etc.
+                badMBeanAttributes.add(mBeanAttribute);
+            }
+            mBeanAttribute.refreshed = true;
+        }
+
+        for (final MBeanAttribute mBeanAttribute : mBeanAttributes) {
+            if (mBeanAttribute.refreshed) {
+                continue;
+            }
+            try { // getAttributes() just skips the attributes it failed to get, so get the attribute alone
+                // to learn what's wrong with it
                 mBeanAttribute.refresh(countersWriter, server);
             } catch (final InstanceNotFoundException e) { // we have lost the MBean
-                close();
+                unregistered();
                 return;
             } catch (final Throwable t) { // any other problem like AttributeNotFoundException,
                 // MBeanException, UnsupportedOperationException (for unsupported type) etc.
@@ -280,9 +427,38 @@ public class MBean implements AutoCloseable {
             }
             mBeanAttributes.removeAll(badMBeanAttributes);
             badMBeanAttributes.clear();
+            mBeanAttributeNames = null;
         }
     }
 
+    /**
+     * Makes the MBean rely on {@link #registered()} and {@link #unregistered()} to learn about availability of
+     * the MBean instead of probing the MBeanServer on every refresh.
+     *
+     * @param registered whether the MBean is registered at the moment
+     */
+    void followRegistrations(final boolean registered) {
+        registrationsFollowed = true;
+        this.registered = registered;
+    }
+
+    /**
+     * Called when an MBean with the ObjectName has been registered. Its attributes will be discovered again
+     * on the next refresh, since this can be a new instance of the MBean.
+     */
+    void registered() {
+        close();
+        registered = true;
+    }
+
+    /**
+     * Called when the MBean has been unregistered. Its counters are closed.
+     */
+    void unregistered() {
+        close();
+        registered = !registrationsFollowed;
+    }
+
     /**
      * Closes all counters prepared for attributes of this MBean.
      */
@@ -302,6 +478,7 @@ public class MBean implements AutoCloseable {
         } finally {
             badMBeanAttributes.clear();
             mBeanAttributes.clear();
+            mBeanAttributeNames = null;
             mBeanInfo = null;
         }
     }
@@ -323,17 +500,31 @@ public class MBean implements AutoCloseable {
     private class MBeanAttribute implements AutoCloseable {
         private final MBeanAttributeInfo attributeInfo;
         private MCounter counter;
+        private OpenDataCounters openDataCounters; // for CompositeData and TabularData
+        private boolean refreshed;
 
         MBeanAttribute(final MBeanAttributeInfo attributeInfo) {
             this.attributeInfo = attributeInfo;
         }
 
-        void refresh(final MCountersWriter countersWriter, final MBeanServer server)
-                throws AttributeNotFoundException, MBeanException, ReflectionException, InstanceNotFoundException {
+        void refresh(final MCountersWriter countersWriter, final MBeanServerConnection server)
+                throws AttributeNotFoundException, MBeanException, ReflectionException, InstanceNotFoundException,
+                IOException {
 
+            refresh(countersWriter, server.getAttribute(objectName, attributeInfo.getName()));
+        }
+
+        void refresh(final MCountersWriter countersWriter, final Object value) {
             final String attributeName = attributeInfo.getName();
 
-            final Object value = server.getAttribute(objectName, attributeName);
+            if (value instanceof CompositeData || value instanceof TabularData) {
+                refreshOpenData(countersWriter, value);
+                return;
+            }
+            if (value == null && (COMPOSITE_DATA_TYPE.equals(attributeInfo.getType()) ||
+                    TABULAR_DATA_TYPE.equals(attributeInfo.getType()))) {
+                return; // not available yet, like LastGcInfo before the first GC
+            }
 
             final long counterValue;
             if (value instanceof Number) {
@@ -354,8 +545,31 @@ public class MBean implements AutoCloseable {
             counter.set(counterValue);
         }
 
+        private void refreshOpenData(final MCountersWriter countersWriter, final Object value) {
+            final OpenType<?> type = value instanceof CompositeData ?
+                    ((CompositeData) value).getCompositeType() :
+                    ((TabularData) value).getTabularType();
+
+            if (openDataCounters == null ||
+                    openDataCounters.type() != type && !openDataCounters.type().equals(type)) {
+                if (openDataCounters != null) {
+                    openDataCounters.close();
+                }
+                openDataCounters = OpenDataCounters.of(type, "jmx://" +
+                        objectName.getCanonicalName() + "?" +
+                        attributeInfo.getName());
+            }
+
+            openDataCounters.refresh(countersWriter, value);
+        }
+
         @Override
         public void close() throws Exception {
+            if (openDataCounters != null) {
+                openDataCounters.close();
+                openDataCounters = null;
+            }
+
             if (counter == null) {
                 return;
             }
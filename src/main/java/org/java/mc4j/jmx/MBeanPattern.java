@@ -0,0 +1,221 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.jmx;
+
+import org.java.mc4j.MCountersWriter;
+
+import javax.management.MBeanServerConnection;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class publishes the attributes of all MBeans, which names match an ObjectName pattern. For example,
+ * {@code java.lang:type=GarbageCollector,name=*[CollectionCount,CollectionTime]}.
+ * <p>
+ * The pattern is expanded to a set of {@link MBean}s with {@link MBeanServerConnection#queryNames(ObjectName,
+ * javax.management.QueryExp)}. The MBeans, which names don't match the pattern anymore, are closed together with
+ * their counters. After the expansion, the set can be kept up to date with {@link #registered(ObjectName)} and
+ * {@link #unregistered(ObjectName)} without querying the MBeanServer again.
+ */
+public class MBeanPattern implements AutoCloseable {
+    private final ObjectName objectName;
+    private final Set<String> attributeNames;
+
+    private final Map<ObjectName, MBean> mBeans = new HashMap<>();
+
+    private boolean expanded;
+    private boolean registrationsFollowed;
+
+    private final long refreshInterval;
+
+    public MBeanPattern(final ObjectName objectName, final Set<String> attributeNames) {
+        this(objectName, attributeNames, 0);
+    }
+
+    /**
+     * @param objectName      The ObjectName pattern
+     * @param attributeNames  Names of attributes to be published
+     * @param refreshInterval Refresh interval in millis of all MBeans matching the pattern, {@code 0} - refreshed
+     *                        with the publisher's interval
+     */
+    public MBeanPattern(final ObjectName objectName, final Set<String> attributeNames, final long refreshInterval) {
+        if (!objectName.isPattern()) {
+            throw new IllegalArgumentException("Not a pattern: " + objectName);
+        }
+        if (refreshInterval < 0) {
+            throw new IllegalArgumentException("Negative refresh interval: " + refreshInterval);
+        }
+        this.objectName = objectName;
+        this.attributeNames = attributeNames;
+        this.refreshInterval = refreshInterval;
+    }
+
+    public ObjectName objectName() {
+        return objectName;
+    }
+
+    public Set<String> attributeNames() {
+        return attributeNames;
+    }
+
+    public long refreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * Returns the MBeans the pattern has been expanded to.
+     *
+     * @return MBeans matching the pattern
+     */
+    public Collection<MBean> mBeans() {
+        return mBeans.values();
+    }
+
+    public boolean isExpanded() {
+        return expanded;
+    }
+
+    /**
+     * Queries names of the MBeans matching the pattern, adds new MBeans and closes the MBeans
+     * which names don't match the pattern anymore.
+     *
+     * @param server The MBeanServer or a connection to it to query the names
+     */
+    public void expand(final MBeanServerConnection server) {
+        final Set<ObjectName> names;
+        try {
+            names = server.queryNames(objectName, null);
+        } catch (final IOException e) { // the connection is broken, so try again next time
+            return;
+        }
+
+        expanded = true;
+
+        final Iterator<Map.Entry<ObjectName, MBean>> it = mBeans.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<ObjectName, MBean> entry = it.next();
+            if (!names.contains(entry.getKey())) {
+                entry.getValue().close();
+                it.remove();
+            }
+        }
+
+        for (final ObjectName name : names) {
+            if (!mBeans.containsKey(name)) {
+                add(name);
+            }
+        }
+    }
+
+    /**
+     * Makes the MBeans of the pattern rely on {@link #registered(ObjectName)} and {@link #unregistered(ObjectName)}
+     * to learn about their availability instead of probing the MBeanServer.
+     */
+    void followRegistrations() {
+        registrationsFollowed = true;
+    }
+
+    /**
+     * Adds an MBean if its name matches the pattern.
+     *
+     * @param name of a registered MBean
+     */
+    void registered(final ObjectName name) {
+        if (!objectName.apply(name)) {
+            return;
+        }
+        final MBean mBean = mBeans.get(name);
+        if (mBean != null) { // has been unregistered and registered again
+            mBean.registered();
+            return;
+        }
+        add(name);
+    }
+
+    /**
+     * Closes and removes an MBean if its name matches the pattern.
+     *
+     * @param name of an unregistered MBean
+     */
+    void unregistered(final ObjectName name) {
+        final MBean mBean = mBeans.remove(name);
+        if (mBean != null) {
+            mBean.close();
+        }
+    }
+
+    /**
+     * Refresh counters' values of all MBeans the pattern has been expanded to.
+     *
+     * @param countersWriter The counter writer to create/refresh counters
+     * @param server         The MBeanServer or a connection to it to query attributes and their values
+     */
+    public void refresh(final MCountersWriter countersWriter, final MBeanServerConnection server) {
+        for (final MBean mBean : mBeans.values()) {
+            mBean.refresh(countersWriter, server);
+        }
+    }
+
+    /**
+     * Closes all MBeans the pattern has been expanded to.
+     */
+    @Override
+    public void close() {
+        for (final MBean mBean : mBeans.values()) {
+            try {
+                mBean.close();
+            } catch (final Throwable ignore) {
+            }
+        }
+        mBeans.clear();
+        expanded = false;
+    }
+
+    private void add(final ObjectName name) {
+        try {
+            final MBean mBean = new MBean(name.getCanonicalName(), attributeNames);
+            if (registrationsFollowed) {
+                mBean.followRegistrations(true);
+            }
+            mBeans.put(name, mBean);
+        } catch (final MalformedObjectNameException ignore) { // cannot happen for a registered name
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MBeanPattern{" +
+                "objectName=" + objectName +
+                ", attributeNames=" + attributeNames +
+                ", refreshInterval=" + refreshInterval +
+                ", mBeans=" + mBeans.keySet() +
+                '}';
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.jmx;
+
+import org.java.mc4j.MCounter;
+import org.java.mc4j.MCountersWriter;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A refresh of an MBean or of all MBeans matching a pattern, which can run on a pool of threads.
+ * <p>
+ * A refresh running on a pool is given a timeout. A refresh, which overruns the timeout, is cancelled: its thread is
+ * interrupted. If the refresh ignores the interruption, the pool (a {@link ThreadPoolExecutor}) is given one more
+ * thread until the refresh finishes, so the refreshes stuck in MBeans don't take the threads of the others.
+ * A refresh, which is still running when it's time to start it again, isn't started twice. A refresh, which has
+ * overrun the timeout {@link #QUARANTINE_OVERRUNS} times in a row, is quarantined: it isn't started for a period
+ * of time, which doubles with every next overrun up to {@link #MAX_QUARANTINE}. A refresh in time ends
+ * the quarantine.
+ * <p>
+ * The latency of the latest refresh in nanos and the total number of overruns are published as counters
+ * 'jmxpublisher://OBJECT_NAME?RefreshNanos' and 'jmxpublisher://OBJECT_NAME?RefreshOverruns'.
+ */
+final class MBeanRefresh implements Runnable, Comparable<MBeanRefresh>, AutoCloseable {
+    static final int QUARANTINE_OVERRUNS = 3;
+    static final long MAX_QUARANTINE = TimeUnit.MINUTES.toNanos(1);
+
+    private final String name;
+    private final Runnable refresh;
+
+    // scheduling, guarded by the publisher
+    long interval; // nanos
+    long refreshTime; // System.nanoTime()
+
+    private Executor executor; // null - runs in the calling thread
+    private long timeout; // nanos
+    private MCounter latencyCounter;
+    private MCounter overrunsCounter;
+
+    private boolean running;
+    private FutureTask<Void> task; // of the running refresh
+    private boolean started; // by a thread of the executor
+    private long startTime;
+    private boolean overrunCounted;
+    private boolean threadAdded; // to the pool for the overrunning refresh
+    private Runnable closeAction; // to be run when the running refresh finishes
+    private int overruns; // in a row
+    private boolean quarantined;
+    private long quarantinedUntil;
+
+    MBeanRefresh(final String name, final Runnable refresh) {
+        this.name = name;
+        this.refresh = refresh;
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * Makes the refresh run on the executor and publish its latency.
+     *
+     * @param executor       The executor to run the refresh
+     * @param timeout        The timeout in nanos
+     * @param countersWriter The counter writer for the latency counters
+     */
+    synchronized void runOn(final Executor executor, final long timeout, final MCountersWriter countersWriter) {
+        this.executor = executor;
+        this.timeout = timeout;
+
+        latencyCounter = countersWriter.addCounter("jmxpublisher://" + name + "?RefreshNanos");
+        overrunsCounter = countersWriter.addCounter("jmxpublisher://" + name + "?RefreshOverruns");
+    }
+
+    /**
+     * Starts the refresh unless it's still running or quarantined.
+     *
+     * @param now System.nanoTime()
+     * @return true if the refresh has been started
+     */
+    boolean start(final long now) {
+        final Executor executor;
+        final FutureTask<Void> task;
+        synchronized (this) {
+            if (running) {
+                checkOverrun(now);
+                return false;
+            }
+            if (quarantined && now - quarantinedUntil < 0) {
+                return false;
+            }
+            running = true;
+            started = false;
+            overrunCounted = false;
+
+            executor = this.executor;
+            task = executor == null ? null : new FutureTask<>(this, null);
+            this.task = task;
+        }
+
+        if (executor == null) {
+            run();
+            return true;
+        }
+        try {
+            executor.execute(task);
+        } catch (final RejectedExecutionException e) { // the pool is shut down
+            finished(false, 0);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            started = true;
+            startTime = System.nanoTime(); // the time spent in the queue of the pool isn't the MBean's latency
+        }
+        try {
+            refresh.run();
+        } catch (final Throwable ignore) { // keep refreshing the rest
+        } finally {
+            finished(true, System.nanoTime());
+        }
+    }
+
+    synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Waits for the running refresh to finish, and counts an overrun if it doesn't finish before the deadline.
+     *
+     * @param deadline System.nanoTime() to wait until
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void await(final long deadline) throws InterruptedException {
+        long now = System.nanoTime();
+        while (running && deadline - now > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, deadline - now);
+            now = System.nanoTime();
+        }
+        if (running) {
+            checkOverrun(now);
+        }
+    }
+
+    synchronized boolean isQuarantined() {
+        return quarantined;
+    }
+
+    /**
+     * Runs the action now if the refresh isn't running, otherwise when the refresh finishes, so the resources
+     * the refresh uses can be released without waiting for it.
+     *
+     * @param action to be run
+     */
+    void closeWhenFinished(final Runnable action) {
+        synchronized (this) {
+            if (running) {
+                closeAction = action;
+                return;
+            }
+        }
+        action.run();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (latencyCounter != null) {
+            latencyCounter.close();
+            overrunsCounter.close();
+        }
+    }
+
+    @Override
+    public int compareTo(final MBeanRefresh o) {
+        return Long.signum(refreshTime - o.refreshTime); // System.nanoTime() can overflow
+    }
+
+    /**
+     * @param refreshed whether the refresh has been run
+     * @param now       System.nanoTime()
+     */
+    private void finished(final boolean refreshed, final long now) {
+        final Runnable action;
+        synchronized (this) {
+            if (refreshed) {
+                final long latency = now - startTime;
+                if (latencyCounter != null && !latencyCounter.isClosed()) {
+                    latencyCounter.set(latency);
+                }
+
+                if (executor != null && latency > timeout) {
+                    if (!overrunCounted) {
+                        overrun();
+                    }
+                    if (overruns >= QUARANTINE_OVERRUNS) {
+                        final int shift = Math.min(overruns - QUARANTINE_OVERRUNS + 1, 20);
+                        final long quarantine = timeout > MAX_QUARANTINE >> shift ?
+                                MAX_QUARANTINE : timeout << shift; // can't overflow
+                        quarantined = true;
+                        quarantinedUntil = now + quarantine;
+                    }
+                } else {
+                    overruns = 0;
+                    quarantined = false;
+                }
+            }
+
+            if (threadAdded) {
+                threadAdded = false;
+                resizePool(-1);
+            }
+
+            running = false;
+            task = null;
+            notifyAll();
+
+            action = closeAction;
+            closeAction = null;
+        }
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    private void checkOverrun(final long now) {
+        if (task != null && started && !overrunCounted && now - startTime > timeout) {
+            overrun();
+
+            task.cancel(true); // interrupts the refresh
+            threadAdded = resizePool(1); // in case the refresh doesn't respond to the interruption
+        }
+    }
+
+    private boolean resizePool(final int delta) {
+        if (!(executor instanceof ThreadPoolExecutor)) {
+            return false; // a virtual thread per refresh, for example
+        }
+        final ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        synchronized (pool) {
+            if (pool.isShutdown()) {
+                return false;
+            }
+            if (delta > 0) { // the maximum size can't be less than the core size
+                pool.setMaximumPoolSize(pool.getMaximumPoolSize() + delta);
+                pool.setCorePoolSize(pool.getCorePoolSize() + delta);
+            } else {
+                pool.setCorePoolSize(pool.getCorePoolSize() + delta);
+                pool.setMaximumPoolSize(pool.getMaximumPoolSize() + delta);
+            }
+        }
+        return true;
+    }
+
+    private void overrun() {
+        overrunCounted = true;
+        overruns++;
+        if (!overrunsCounter.isClosed()) {
+            overrunsCounter.increment();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MBeanRefresh{" +
+                "name='" + name + '\'' +
+                ", overruns=" + overruns +
+                ", quarantined=" + quarantined +
+                '}';
+    }
+}
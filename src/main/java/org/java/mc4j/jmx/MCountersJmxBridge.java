@@ -0,0 +1,355 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.jmx;
+
+import org.java.mc4j.MCountersReader;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * The inverse of {@link JmxPublisher}: registers a read-only DynamicMBean for every counters' file in a directory,
+ * so the counters written by any process can be read with JMX tools. The MBeans are named
+ * 'DOMAIN:type=MCounters,name=FILE_NAME' and their attributes are the counters (see {@link MCountersMBean}).
+ * The values are read from the mapped files on request, nothing is copied periodically.
+ * <p>
+ * {@link #refresh()} registers MBeans for new files and unregisters them for the files, which have been removed.
+ * If a file is recreated, its MBean is registered again for the new file. {@link #start()} watches
+ * the directory and refreshes the MBeans on its changes. The files, which can't be read yet (for example, are
+ * being initialized by their writer) or aren't counters' files at all, are tried again every
+ * {@value #RETRY_INTERVAL_MILLIS} millis.
+ * <p>
+ * An example of usage:
+ * <pre>
+ * try (MCountersJmxBridge bridge = new MCountersJmxBridge(new File("/dev/shm/mcounters"))) {
+ *     bridge.start();
+ *     ...
+ * }
+ * </pre>
+ */
+public class MCountersJmxBridge implements AutoCloseable {
+    public static final String DEFAULT_DOMAIN = "org.java.mc4j";
+    public static final long RETRY_INTERVAL_MILLIS = 1000;
+
+    private final File directory;
+    private final MBeanServer server;
+    private final String domain;
+
+    private final Map<String, Registration> registrations = new HashMap<>(); // by file names
+    private boolean pending; // some files couldn't be registered
+
+    private Thread watcher;
+    private WatchService watchService;
+
+    public MCountersJmxBridge(final File directory) {
+        this(directory, ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+    }
+
+    /**
+     * @param directory The directory of counters' files
+     * @param server    The MBeanServer to register MBeans in
+     * @param domain    The domain of the MBeans' ObjectNames
+     */
+    public MCountersJmxBridge(final File directory, final MBeanServer server, final String domain) {
+        this.directory = directory;
+        this.server = server;
+        this.domain = domain;
+    }
+
+    /**
+     * Returns the ObjectName of the MBean of a counters' file.
+     *
+     * @param domain   The domain of the ObjectName
+     * @param fileName The name of the counters' file
+     * @return ObjectName of the MBean
+     * @throws MalformedObjectNameException if the domain is invalid
+     */
+    public static ObjectName objectName(final String domain, final String fileName)
+            throws MalformedObjectNameException {
+        try {
+            final ObjectName result = new ObjectName(domain + ":type=MCounters,name=" + fileName);
+            if (!result.isPattern() && fileName.equals(result.getKeyProperty("name"))) {
+                return result;
+            }
+        } catch (final MalformedObjectNameException ignore) { // the name must be quoted
+        }
+        return new ObjectName(domain + ":type=MCounters,name=" + ObjectName.quote(fileName));
+    }
+
+    /**
+     * Returns ObjectNames of the registered MBeans.
+     *
+     * @return ObjectNames of the MBeans
+     */
+    public synchronized List<ObjectName> getObjectNames() {
+        final List<ObjectName> result = new ArrayList<>(registrations.size());
+        for (final Registration registration : registrations.values()) {
+            result.add(registration.objectName);
+        }
+        return result;
+    }
+
+    /**
+     * Registers MBeans for new counters' files and unregisters the MBeans of the files, which have been removed
+     * or recreated.
+     */
+    public synchronized void refresh() {
+        pending = false;
+
+        final File[] files = directory.listFiles(File::isFile);
+        final Set<String> fileNames = new HashSet<>();
+        if (files != null) {
+            for (final File file : files) {
+                fileNames.add(file.getName());
+
+                final Object fileKey = fileKey(file);
+                final Registration registration = registrations.get(file.getName());
+                if (registration != null) {
+                    if (Objects.equals(registration.fileKey, fileKey)) {
+                        continue;
+                    }
+                    unregister(registration); // has been recreated
+                    registrations.remove(file.getName());
+                }
+                if (fileKey != null) {
+                    register(file, fileKey);
+                }
+            }
+        }
+
+        final Iterator<Registration> it = registrations.values().iterator();
+        while (it.hasNext()) {
+            final Registration registration = it.next();
+            if (!fileNames.contains(registration.file.getName())) { // has been removed
+                unregister(registration);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Starts a thread, which registers and unregisters the MBeans, when counters' files appear in the directory
+     * or disappear from it.
+     *
+     * @throws IOException if the directory cannot be watched
+     * @throws IllegalStateException if already started
+     */
+    public synchronized void start() throws IOException {
+        if (watcher != null) {
+            throw new IllegalStateException("Already started");
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        try {
+            directory.toPath().register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        } catch (final IOException e) {
+            watchService.close();
+            watchService = null;
+            throw e;
+        }
+
+        refresh();
+
+        watcher = new Thread(this::watch, "mc4j-jmx-bridge");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stops the thread started with {@link #start()}. The MBeans stay registered.
+     */
+    public void stop() {
+        final Thread thread;
+        synchronized (this) {
+            thread = watcher;
+            watcher = null;
+            if (watchService != null) {
+                try {
+                    watchService.close(); // wakes up the watcher
+                } catch (final IOException ignore) {
+                }
+                watchService = null;
+            }
+        }
+
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized boolean isStarted() {
+        return watcher != null;
+    }
+
+    /**
+     * Stops watching the directory and unregisters all MBeans.
+     */
+    @Override
+    public void close() {
+        stop();
+
+        synchronized (this) {
+            for (final Registration registration : registrations.values()) {
+                unregister(registration);
+            }
+            registrations.clear();
+        }
+    }
+
+    private void watch() {
+        final WatchService watchService;
+        synchronized (this) {
+            watchService = this.watchService;
+        }
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final boolean retry;
+                synchronized (this) {
+                    retry = pending;
+                }
+                final WatchKey key = retry ?
+                        watchService.poll(RETRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS) :
+                        watchService.take();
+                if (key != null) {
+                    key.pollEvents(); // the whole directory is checked anyway
+                    if (!key.reset()) {
+                        return; // the directory has been removed
+                    }
+                }
+
+                synchronized (this) {
+                    if (watcher != Thread.currentThread()) {
+                        return;
+                    }
+                    refresh();
+                }
+            }
+        } catch (final ClosedWatchServiceException | InterruptedException ignore) { // stopped
+        }
+    }
+
+    private void register(final File file, final Object fileKey) {
+        final MCountersReader reader;
+        try {
+            reader = new MCountersReader(file);
+        } catch (final IOException e) { // isn't initialized yet or isn't a counters' file
+            pending = true;
+            return;
+        }
+
+        final MCountersMBean mBean = new MCountersMBean(file, reader);
+        try {
+            final ObjectName objectName = objectName(domain, file.getName());
+            server.registerMBean(mBean, objectName);
+            registrations.put(file.getName(), new Registration(file, fileKey, objectName, mBean));
+        } catch (final Exception e) { // the name is taken etc.
+            pending = true;
+            try {
+                mBean.close();
+            } catch (final IOException ignore) {
+            }
+        }
+    }
+
+    private void unregister(final Registration registration) {
+        try {
+            server.unregisterMBean(registration.objectName);
+        } catch (final InstanceNotFoundException | MBeanRegistrationException ignore) { // has been unregistered
+            // by someone else
+        }
+        try {
+            registration.mBean.close(); // after the unregistration to not serve requests with an unmapped file
+        } catch (final IOException ignore) {
+        }
+    }
+
+    private static Object fileKey(final File file) {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            final Object result = attributes.fileKey();
+            return result != null ? result : attributes.creationTime();
+        } catch (final IOException e) { // has been removed
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MCountersJmxBridge{" +
+                "directory=" + directory +
+                ", domain='" + domain + '\'' +
+                ", files=" + registrations.keySet() +
+                '}';
+    }
+
+    private static final class Registration {
+        private final File file;
+        private final Object fileKey;
+        private final ObjectName objectName;
+        private final MCountersMBean mBean;
+
+        Registration(final File file, final Object fileKey, final ObjectName objectName, final MCountersMBean mBean) {
+            this.file = file;
+            this.fileKey = fileKey;
+            this.objectName = objectName;
+            this.mBean = mBean;
+        }
+    }
+}
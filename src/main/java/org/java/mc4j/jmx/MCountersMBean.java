@@ -0,0 +1,214 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.jmx;
+
+import org.java.mc4j.MCounterNotFoundException;
+import org.java.mc4j.MCountersDecoder;
+import org.java.mc4j.MCountersReader;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A read-only DynamicMBean, which attributes are the counters of a counters' file. The name of an attribute is
+ * the label of its counter. If several counters have the same label, the first one is exposed.
+ * <p>
+ * The values are read from the mapped file on every request. A counter is found by its label once, after that its
+ * value is read from its slot directly (see {@link MCountersReader#getCounterValue(int, long)}). The labels are
+ * scanned again only when the changes' ring buffer of the file reports allocations or frees of counters.
+ */
+final class MCountersMBean implements DynamicMBean, AutoCloseable {
+    private final File countersFile;
+    private final MCountersReader reader;
+
+    private Map<String, Handle> handles = new LinkedHashMap<>(); // by labels
+    private long catalogSequence = Long.MIN_VALUE; // not scanned yet
+    private MBeanInfo mBeanInfo;
+    private boolean closed;
+
+    MCountersMBean(final File countersFile, final MCountersReader reader) {
+        this.countersFile = countersFile;
+        this.reader = reader;
+    }
+
+    @Override
+    public synchronized Object getAttribute(final String attribute) throws AttributeNotFoundException {
+        checkNotClosed(attribute);
+
+        boolean rescanned = refreshCatalog(isChangesLost());
+        while (true) {
+            final Handle handle = handles.get(attribute);
+            if (handle != null) {
+                try {
+                    return handle.value();
+                } catch (final MCounterNotFoundException ignore) { // the counter has been freed
+                }
+            }
+            if (rescanned) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            rescanned = refreshCatalog(isChangesLost()); // the counters could be changed meanwhile
+            if (!rescanned) {
+                throw new AttributeNotFoundException(attribute);
+            }
+        }
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Read-only attribute: " + attribute.getName());
+    }
+
+    @Override
+    public synchronized AttributeList getAttributes(final String[] attributes) {
+        final AttributeList result = new AttributeList(attributes.length);
+        for (final String attribute : attributes) {
+            try {
+                result.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (final AttributeNotFoundException ignore) { // skipped as per the contract
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+        return new AttributeList(); // all attributes are read-only
+    }
+
+    @Override
+    public Object invoke(final String actionName, final Object[] params, final String[] signature)
+            throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public synchronized MBeanInfo getMBeanInfo() {
+        if (!closed) {
+            refreshCatalog(isChangesLost());
+        }
+        if (mBeanInfo == null) {
+            final MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[handles.size()];
+            int i = 0;
+            for (final Map.Entry<String, Handle> entry : handles.entrySet()) {
+                attributes[i++] = new MBeanAttributeInfo(entry.getKey(),
+                        "long",
+                        "Counter " + entry.getValue().id,
+                        true,
+                        false,
+                        false);
+            }
+            mBeanInfo = new MBeanInfo(getClass().getName(),
+                    "Counters of process " + (closed ? "?" : reader.getPid()) + " from " + countersFile,
+                    attributes,
+                    null,
+                    null,
+                    null);
+        }
+        return mBeanInfo;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        handles = new LinkedHashMap<>();
+        mBeanInfo = null;
+        reader.close();
+    }
+
+    /**
+     * Scans the labels again if counters have been allocated or freed.
+     *
+     * @param force to scan the labels even if no changes are reported
+     * @return {@code true} if the labels have been scanned
+     */
+    private boolean refreshCatalog(final boolean force) {
+        final long sequence = reader.getChangesSequence();
+        if (!force && sequence == catalogSequence) {
+            return false;
+        }
+        catalogSequence = sequence;
+
+        final Map<String, Handle> oldHandles = handles;
+        final Map<String, Handle> newHandles = new LinkedHashMap<>();
+        reader.forEachCounter((id, label, value) -> {
+            if (newHandles.containsKey(label)) {
+                return;
+            }
+            final Handle oldHandle = oldHandles.get(label);
+            newHandles.put(label, oldHandle != null && oldHandle.id == id ? oldHandle : new Handle(id));
+        });
+        if (!newHandles.keySet().equals(oldHandles.keySet())) {
+            mBeanInfo = null;
+        }
+        handles = newHandles;
+        return true;
+    }
+
+    private boolean isChangesLost() { // the labels must be scanned, since the changes cannot tell what's changed
+        return reader.getChangesSequence() == MCountersDecoder.CHANGES_LOST;
+    }
+
+    private void checkNotClosed(final String attribute) throws AttributeNotFoundException {
+        if (closed) {
+            throw new AttributeNotFoundException(attribute + " of closed " + countersFile);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MCountersMBean{" +
+                "countersFile=" + countersFile +
+                ", closed=" + closed +
+                '}';
+    }
+
+    private final class Handle {
+        private final long id;
+        private int slot = -1; // not found yet
+
+        Handle(final long id) {
+            this.id = id;
+        }
+
+        long value() throws MCounterNotFoundException {
+            if (slot < 0) {
+                slot = reader.getCounterSlot(id);
+            }
+            return reader.getCounterValue(slot, id);
+        }
+    }
+}
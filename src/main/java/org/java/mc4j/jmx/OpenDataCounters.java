@@ -0,0 +1,287 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.jmx;
+
+import org.java.mc4j.MCounter;
+import org.java.mc4j.MCountersWriter;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counters of numeric and boolean items of {@link CompositeData} and {@link TabularData} values, for example
+ * {@code HeapMemoryUsage} of {@code java.lang:type=Memory} or {@code LastGcInfo} of a garbage collector.
+ * <p>
+ * A counter's label is the label of the attribute followed by the path of the item, where the names of items
+ * and the keys of rows of TabularData are separated with '.'. For example,
+ * {@code jmx://java.lang:type=Memory?HeapMemoryUsage.used} or
+ * {@code jmx://java.lang:name=G1 Young Generation,type=GarbageCollector?LastGcInfo.memoryUsageAfterGc.G1 Eden
+ * Space.used}. Several values of a key are separated with ','. A row with the only item besides the key
+ * (a {@code Map} of an MXBean) doesn't add the name of the item to the path.
+ * <p>
+ * The tree of counters is built once for an OpenType, so a refresh just walks the values.
+ */
+abstract class OpenDataCounters implements AutoCloseable {
+    static final char PATH_SEPARATOR = '.';
+    static final char KEY_SEPARATOR = ',';
+
+    /**
+     * Creates counters for the value of the type.
+     *
+     * @param type  The type of values
+     * @param label The label of the value
+     * @return counters or {@code null} if values of the type cannot be published
+     */
+    static OpenDataCounters of(final OpenType<?> type, final String label) {
+        if (type instanceof CompositeType) {
+            return new Composite((CompositeType) type, label, Collections.emptySet());
+        }
+        if (type instanceof TabularType) {
+            return new Tabular((TabularType) type, label);
+        }
+        if (isNumeric(type)) {
+            return new Simple(type, label);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the type of values for which the counters have been built.
+     *
+     * @return the OpenType
+     */
+    abstract OpenType<?> type();
+
+    /**
+     * Sets the counters to the value, which must be of the type of these counters.
+     *
+     * @param countersWriter The counter writer to create counters
+     * @param value          The value
+     */
+    abstract void refresh(MCountersWriter countersWriter, Object value);
+
+    @Override
+    public abstract void close();
+
+    private static boolean isNumeric(final OpenType<?> type) {
+        return SimpleType.LONG.equals(type) ||
+                SimpleType.INTEGER.equals(type) ||
+                SimpleType.SHORT.equals(type) ||
+                SimpleType.BYTE.equals(type) ||
+                SimpleType.DOUBLE.equals(type) ||
+                SimpleType.FLOAT.equals(type) ||
+                SimpleType.BOOLEAN.equals(type) ||
+                SimpleType.BIGINTEGER.equals(type) ||
+                SimpleType.BIGDECIMAL.equals(type);
+    }
+
+    private static final class Simple extends OpenDataCounters {
+        private final OpenType<?> type;
+        private final String label;
+        private MCounter counter;
+
+        Simple(final OpenType<?> type, final String label) {
+            this.type = type;
+            this.label = label;
+        }
+
+        @Override
+        OpenType<?> type() {
+            return type;
+        }
+
+        @Override
+        void refresh(final MCountersWriter countersWriter, final Object value) {
+            final long counterValue;
+            if (value instanceof Number) {
+                counterValue = ((Number) value).longValue();
+            } else if (value instanceof Boolean) {
+                counterValue = (Boolean) value ? 1 : 0;
+            } else {
+                return; // null
+            }
+
+            if (counter == null) {
+                counter = countersWriter.addCounter(label);
+            }
+            counter.set(counterValue);
+        }
+
+        @Override
+        public void close() {
+            if (counter != null) {
+                counter.close();
+                counter = null;
+            }
+        }
+    }
+
+    private static final class Composite extends OpenDataCounters {
+        private final CompositeType type;
+        private final String[] itemNames; // of the published items only
+        private final OpenDataCounters[] items;
+
+        Composite(final CompositeType type, final String label, final Set<String> skippedItemNames) {
+            this.type = type;
+
+            final List<String> names = new ArrayList<>();
+            final List<OpenDataCounters> counters = new ArrayList<>();
+            // a row of a Map is published without the name of the value item
+            final boolean oneItem = !skippedItemNames.isEmpty() &&
+                    type.keySet().size() - skippedItemNames.size() == 1;
+            for (final String itemName : type.keySet()) {
+                if (skippedItemNames.contains(itemName)) {
+                    continue;
+                }
+                final OpenDataCounters item = of(type.getType(itemName),
+                        oneItem ? label : label + PATH_SEPARATOR + itemName);
+                if (item != null) {
+                    names.add(itemName);
+                    counters.add(item);
+                }
+            }
+            itemNames = names.toArray(new String[0]);
+            items = counters.toArray(new OpenDataCounters[0]);
+        }
+
+        @Override
+        OpenType<?> type() {
+            return type;
+        }
+
+        @Override
+        void refresh(final MCountersWriter countersWriter, final Object value) {
+            if (value == null || items.length == 0) {
+                return;
+            }
+            final Object[] values = ((CompositeData) value).getAll(itemNames);
+            for (int i = 0; i < items.length; i++) {
+                items[i].refresh(countersWriter, values[i]);
+            }
+        }
+
+        @Override
+        public void close() {
+            for (final OpenDataCounters item : items) {
+                item.close();
+            }
+        }
+    }
+
+    private static final class Tabular extends OpenDataCounters {
+        private final TabularType type;
+        private final String label;
+        private final Set<String> indexNames;
+
+        private final Map<List<?>, Row> rows = new HashMap<>();
+        private long generation;
+
+        Tabular(final TabularType type, final String label) {
+            this.type = type;
+            this.label = label;
+
+            indexNames = Collections.unmodifiableSet(new HashSet<>(type.getIndexNames()));
+        }
+
+        @Override
+        OpenType<?> type() {
+            return type;
+        }
+
+        @Override
+        void refresh(final MCountersWriter countersWriter, final Object value) {
+            if (value == null) {
+                return;
+            }
+            final TabularData tabularData = (TabularData) value;
+
+            generation++;
+            for (final Object rowValue : tabularData.values()) {
+                final CompositeData rowData = (CompositeData) rowValue;
+                final List<?> key = Arrays.asList(tabularData.calculateIndex(rowData));
+
+                Row row = rows.get(key);
+                if (row == null) {
+                    row = new Row(new Composite(type.getRowType(), label + PATH_SEPARATOR + keyPath(key), indexNames));
+                    rows.put(key, row);
+                }
+                row.generation = generation;
+                row.counters.refresh(countersWriter, rowData);
+            }
+
+            if (rows.size() == tabularData.size()) {
+                return; // no disappeared rows
+            }
+            final Iterator<Row> it = rows.values().iterator();
+            while (it.hasNext()) {
+                final Row row = it.next();
+                if (row.generation != generation) {
+                    row.counters.close();
+                    it.remove();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            for (final Row row : rows.values()) {
+                row.counters.close();
+            }
+            rows.clear();
+        }
+
+        private static String keyPath(final List<?> key) {
+            final StringBuilder result = new StringBuilder();
+            for (final Object keyValue : key) {
+                if (result.length() > 0) {
+                    result.append(KEY_SEPARATOR);
+                }
+                result.append(keyValue);
+            }
+            return result.toString();
+        }
+
+        private static final class Row {
+            private final Composite counters;
+            private long generation;
+
+            Row(final Composite counters) {
+                this.counters = counters;
+            }
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.jmx;
+
+import org.java.mc4j.MCounter;
+import org.java.mc4j.MCountersWriter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Publishes CPU time and allocated bytes of threads aggregated by groups of threads, for example by thread pools.
+ * <p>
+ * A thread belongs to the group of the first pattern matching its name. The name of the group is the first
+ * capturing group of the pattern or the pattern itself if it has no capturing groups. For example,
+ * {@code (.*)-\d+} puts 'http-nio-8080-exec-1' and 'http-nio-8080-exec-2' into group 'http-nio-8080-exec'.
+ * The threads, which match no pattern, belong to group {@value #OTHER_GROUP}.
+ * <p>
+ * Every group has counters 'threads://GROUP?CpuTime' (nanos), 'threads://GROUP?AllocatedBytes' and
+ * 'threads://GROUP?ThreadCount'. CPU time and allocated bytes are totals, which keep the contributions of
+ * the threads, which have terminated, so they never go down. A group left without live threads is removed with
+ * its counters on the next sample, so short-lived thread names don't use up the counters; if threads of
+ * the group appear again, its totals start from zero.
+ * <p>
+ * A sample reads CPU times and allocated bytes of all threads with one call each of
+ * {@link com.sun.management.ThreadMXBean#getThreadCpuTime(long[])} and
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long[])}. The group of a thread is resolved
+ * only once, when the thread is seen for the first time, so a thread renamed later stays in its group.
+ */
+public class ThreadMetrics implements AutoCloseable {
+    public static final String OTHER_GROUP = "other";
+
+    private final MCountersWriter mCountersWriter;
+    private final Pattern[] patterns;
+    private final com.sun.management.ThreadMXBean threadMXBean;
+
+    private final Map<Long, ThreadState> threads = new HashMap<>();
+    private final Map<String, Group> groups = new LinkedHashMap<>();
+    private long generation;
+
+    private Thread sampler;
+    private boolean closed;
+    private volatile RuntimeException lastError; // of the sampler, null - the last sample has succeeded
+
+    /**
+     * Creates the thread metrics and enables measurement of CPU time and allocated memory of threads if it's
+     * disabled.
+     *
+     * @param countersWriter The counter writer
+     * @param patterns       Regular expressions of thread names
+     * @throws UnsupportedOperationException if the JVM doesn't measure CPU time or allocated memory of threads
+     */
+    public ThreadMetrics(final MCountersWriter countersWriter, final String... patterns) {
+        this.mCountersWriter = countersWriter;
+
+        this.patterns = new Pattern[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            this.patterns[i] = Pattern.compile(patterns[i]);
+        }
+
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            throw new UnsupportedOperationException("No com.sun.management.ThreadMXBean");
+        }
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadMXBean.isThreadCpuTimeSupported() || !threadMXBean.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("CPU time or allocated memory of threads isn't measured");
+        }
+        if (!threadMXBean.isThreadCpuTimeEnabled()) {
+            threadMXBean.setThreadCpuTimeEnabled(true);
+        }
+        if (!threadMXBean.isThreadAllocatedMemoryEnabled()) {
+            threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    /**
+     * Samples all live threads and updates the counters of their groups.
+     */
+    public synchronized void sample() {
+        if (closed) {
+            return;
+        }
+        generation++;
+
+        final long[] ids = threadMXBean.getAllThreadIds();
+        resolveNewThreads(ids);
+
+        final long[] cpuTimes = threadMXBean.getThreadCpuTime(ids);
+        final long[] allocatedBytes = threadMXBean.getThreadAllocatedBytes(ids);
+
+        for (final Group group : groups.values()) {
+            group.threadCount = 0;
+        }
+
+        for (int i = 0; i < ids.length; i++) {
+            final ThreadState thread = threads.get(ids[i]);
+            if (thread == null || cpuTimes[i] < 0 || allocatedBytes[i] < 0) {
+                continue; // has terminated meanwhile
+            }
+            thread.generation = generation;
+
+            final Group group = thread.group;
+            group.threadCount++;
+            group.cpuTime += cpuTimes[i] - thread.cpuTime;
+            group.allocatedBytes += allocatedBytes[i] - thread.allocatedBytes;
+            thread.cpuTime = cpuTimes[i];
+            thread.allocatedBytes = allocatedBytes[i];
+        }
+
+        final Iterator<ThreadState> it = threads.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().generation != generation) { // has terminated
+                it.remove();
+            }
+        }
+
+        final Iterator<Group> groupIt = groups.values().iterator();
+        while (groupIt.hasNext()) {
+            final Group group = groupIt.next();
+            if (group.threadCount == 0 && group.empty) { // the last sample has published its final totals
+                group.close();
+                groupIt.remove();
+                continue;
+            }
+            group.empty = group.threadCount == 0;
+
+            group.cpuTimeCounter.set(group.cpuTime);
+            group.allocatedBytesCounter.set(group.allocatedBytes);
+            group.threadCountCounter.set(group.threadCount);
+        }
+    }
+
+    /**
+     * Starts a thread, which samples the threads with the given interval.
+     *
+     * @param sampleInterval The sample interval in millis
+     * @throws IllegalStateException if already started
+     */
+    public synchronized void start(final long sampleInterval) {
+        if (sampleInterval <= 0) {
+            throw new IllegalArgumentException("Sample interval must be positive: " + sampleInterval);
+        }
+        if (sampler != null) {
+            throw new IllegalStateException("Already started");
+        }
+        if (closed) {
+            throw new IllegalStateException("Closed");
+        }
+
+        sampler = new Thread(() -> run(TimeUnit.MILLISECONDS.toNanos(sampleInterval)), "mc4j-thread-metrics");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * Stops the thread started with {@link #start(long)}. The counters stay as they are.
+     */
+    public void stop() {
+        final Thread thread;
+        synchronized (this) {
+            thread = sampler;
+            sampler = null;
+        }
+
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        thread.interrupt();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized boolean isStarted() {
+        return sampler != null;
+    }
+
+    /**
+     * Returns the error of the last sample of the thread started with {@link #start(long)}, for example, when
+     * there is no free space for the counters of a new group.
+     *
+     * @return the error or {@code null} if the last sample has succeeded
+     */
+    public RuntimeException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Stops sampling and closes all counters.
+     */
+    @Override
+    public void close() {
+        stop();
+
+        synchronized (this) {
+            closed = true;
+            for (final Group group : groups.values()) {
+                group.close();
+            }
+            groups.clear();
+            threads.clear();
+        }
+    }
+
+    private void run(final long sampleInterval) {
+        long sampleTime = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                sample();
+                lastError = null;
+            } catch (final RuntimeException e) { // no free space for the counters of a new group, for example
+                lastError = e; // keeps sampling, the groups, which have their counters, are still published
+            }
+
+            sampleTime += sampleInterval;
+            final long now = System.nanoTime();
+            if (sampleTime - now < 0) { // too late, skip the missed samples
+                sampleTime = now + sampleInterval;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(sampleTime - now);
+            } catch (final InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void resolveNewThreads(final long[] ids) {
+        List<Long> newIds = null;
+        for (final long id : ids) {
+            if (!threads.containsKey(id)) {
+                if (newIds == null) {
+                    newIds = new ArrayList<>();
+                }
+                newIds.add(id);
+            }
+        }
+        if (newIds == null) {
+            return;
+        }
+
+        final long[] newIdsArray = new long[newIds.size()];
+        for (int i = 0; i < newIdsArray.length; i++) {
+            newIdsArray[i] = newIds.get(i);
+        }
+        final ThreadInfo[] infos = threadMXBean.getThreadInfo(newIdsArray, 0); // no stack traces
+        for (int i = 0; i < infos.length; i++) {
+            if (infos[i] == null) {
+                continue; // has terminated meanwhile
+            }
+            // the time and bytes spent before the first sample are accounted too
+            threads.put(newIdsArray[i], new ThreadState(group(infos[i].getThreadName())));
+        }
+    }
+
+    private Group group(final String threadName) {
+        String groupName = OTHER_GROUP;
+        for (final Pattern pattern : patterns) {
+            final Matcher matcher = pattern.matcher(threadName);
+            if (matcher.matches()) {
+                groupName = matcher.groupCount() > 0 && matcher.group(1) != null ?
+                        matcher.group(1) :
+                        pattern.pattern();
+                break;
+            }
+        }
+
+        Group group = groups.get(groupName);
+        if (group == null) {
+            group = new Group(groupName);
+            groups.put(groupName, group);
+        }
+        return group;
+    }
+
+    @Override
+    public String toString() {
+        return "ThreadMetrics{" +
+                "patterns=" + Arrays.toString(patterns) +
+                ", groups=" + groups.keySet() +
+                '}';
+    }
+
+    private static final class ThreadState {
+        private final Group group;
+        private long cpuTime;
+        private long allocatedBytes;
+        private long generation;
+
+        ThreadState(final Group group) {
+            this.group = group;
+        }
+    }
+
+    private final class Group {
+        private final MCounter cpuTimeCounter;
+        private final MCounter allocatedBytesCounter;
+        private final MCounter threadCountCounter;
+
+        private long cpuTime;
+        private long allocatedBytes;
+        private long threadCount;
+        private boolean empty; // had no live threads on the last sample
+
+        Group(final String name) {
+            final List<MCounter> counters = new ArrayList<>(3);
+            try {
+                counters.add(mCountersWriter.addCounter("threads://" + name + "?CpuTime"));
+                counters.add(mCountersWriter.addCounter("threads://" + name + "?AllocatedBytes"));
+                counters.add(mCountersWriter.addCounter("threads://" + name + "?ThreadCount"));
+            } catch (final RuntimeException e) { // the counters of a group are added all or none
+                counters.forEach(MCounter::close);
+                throw e;
+            }
+            cpuTimeCounter = counters.get(0);
+            allocatedBytesCounter = counters.get(1);
+            threadCountCounter = counters.get(2);
+        }
+
+        void close() {
+            cpuTimeCounter.close();
+            allocatedBytesCounter.close();
+            threadCountCounter.close();
+        }
+    }
+}
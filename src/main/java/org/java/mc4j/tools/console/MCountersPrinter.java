@@ -29,6 +29,7 @@ import org.java.mc4j.cli.Options;
 
 import java.io.File;
 import java.io.PrintStream;
+import java.util.regex.Pattern;
 
 /**
  * Prints all info from a counters' file:
@@ -40,9 +41,16 @@ import java.io.PrintStream;
  *     <li>statics</li>
  *     <li>counters</li>
  * </ul>
+ * If an interval is specified, the printer doesn't exit, but refreshes a {@code top}-like view of the counters
+ * with their deltas and rates every interval instead (see {@link MCountersTop}).
  */
 public class MCountersPrinter extends Application {
     private final Options.Argumented file;
+    private final Options.Argumented interval;
+    private final Options.Argumented pattern;
+    private final Options.Argumented sort;
+    private final Options.Argumented lines;
+    private final Options.Flag monochrome;
 
     public MCountersPrinter(final String[] args) {
         super("mcprinter", args);
@@ -50,18 +58,42 @@ public class MCountersPrinter extends Application {
         withDescription("Prints all info from a counters' file.");
         withUsage("-f /dev/shm/mcounters.dat",
                 "Parses and prints out the content of the 'mcounters.dat' file.");
+        withUsage("-f /dev/shm/mcounters.dat -i 500 -p ^requests",
+                "Shows the counters of the 'mcounters.dat' file, which labels start with 'requests', " +
+                        "sorted by their rates and refreshed every 500 ms.");
 
         file = withArgumented("file", 'f', "FILE")
                 .require()
                 .withDescription("Path to a counters' file to be parsed.");
+        interval = withArgumented("interval", 'i', "MILLIS")
+                .withDescription("Refresh interval in milliseconds. If specified, the counters are shown " +
+                        "with their deltas and rates until the printer is stopped.");
+        pattern = withArgumented("pattern", 'p', "REGEX")
+                .withDescription("Only the counters, which labels contain the regular expression, are shown.");
+        sort = withArgumented("sort", 's', "ORDER")
+                .withDefaultArgumentValue("rate")
+                .withDescription("Order of the refreshed counters: rate, value, label or id.");
+        lines = withArgumented("lines", 'n', "NUMBER")
+                .withDefaultArgumentValue("40")
+                .withDescription("Max number of the refreshed counters to be shown.");
+        monochrome = withFlag("monochrome", 'm')
+                .withDescription("Don't clear the screen and don't highlight the changed counters " +
+                        "with ANSI escape codes.");
     }
 
     @Override
     protected void doWork() throws Throwable {
         final File countersFile = file.existingFileValue();
 
+        final Pattern labelPattern = pattern.isSet() ? Pattern.compile(pattern.stringValue()) : null;
+
         final PrintStream output = System.out;
 
+        if (interval.isSet()) {
+            top(countersFile, labelPattern, output);
+            return;
+        }
+
         output.println("file: " + countersFile.getAbsolutePath());
 
         try (MCountersReader mCountersReader = new MCountersReader(countersFile)) {
@@ -69,12 +101,59 @@ public class MCountersPrinter extends Application {
             output.println("version: " + mCountersReader.getVersion());
             output.println("pid: " + mCountersReader.getPid());
             output.println("started: " + mCountersReader.getStartTime());
+            output.println("pre-touch: " + mCountersReader.getPreTouch() +
+                    ", " + mCountersReader.getPreTouchedLength() + " bytes");
 
             mCountersReader.forEachStatic((label, value) ->
                     output.printf("static: %s=%s%n", label, value));
 
-            mCountersReader.forEachCounter((id, label, value) ->
-                    output.printf("counter: %s[%d]=%d%n", label, id, value));
+            mCountersReader.forEachCounter((id, label, value) -> {
+                if (labelPattern == null || labelPattern.matcher(label).find()) {
+                    output.printf("counter: %s[%d]=%d%n", label, id, value);
+                }
+            });
+        }
+    }
+
+    private void top(final File countersFile, final Pattern labelPattern, final PrintStream output) throws Throwable {
+        final long intervalMillis = interval.longValue();
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Incorrect interval: " + intervalMillis);
+        }
+
+        final MCountersTop top = new MCountersTop(labelPattern,
+                MCountersTop.Sort.valueOf(sort.stringValue().toUpperCase()),
+                lines.intValue(),
+                !monochrome.isSet());
+
+        final StringBuilder screen = new StringBuilder();
+
+        try (MCountersReader mCountersReader = new MCountersReader(countersFile)) {
+            long nextSampleTime = System.currentTimeMillis();
+
+            while (!Thread.currentThread().isInterrupted()) {
+                final long now = System.currentTimeMillis();
+
+                if (now < nextSampleTime) {
+                    Thread.sleep(nextSampleTime - now);
+                    continue;
+                }
+
+                top.sample(mCountersReader, System.nanoTime());
+
+                screen.setLength(0);
+                screen.append("file: ").append(countersFile.getAbsolutePath())
+                        .append(", pid: ").append(mCountersReader.getPid())
+                        .append(System.lineSeparator());
+                top.render(screen, !monochrome.isSet());
+                output.print(screen);
+                output.flush();
+
+                nextSampleTime += intervalMillis;
+                if (nextSampleTime <= now) { // we are late, so skip the missed samples
+                    nextSampleTime = now + intervalMillis;
+                }
+            }
         }
     }
 
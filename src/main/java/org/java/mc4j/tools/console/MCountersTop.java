@@ -0,0 +1,239 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.console;
+
+import org.java.mc4j.MCountersReader;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps two last snapshots of the counters of a counters' file and renders them as a table
+ * sorted by rates of the counters, like the {@code top} utility does.
+ * <p>
+ * The snapshots are taken with {@link MCountersReader#forEachCounterValue(org.java.mc4j.MCounterValueConsumer)},
+ * so labels are decoded only when new counters appear. While the set of the counters doesn't change,
+ * a sample doesn't allocate.
+ */
+public final class MCountersTop {
+    public enum Sort {
+        RATE(Comparator.<Row>comparingDouble(row -> -Math.abs(row.rate)).thenComparing(row -> row.label)),
+        VALUE(Comparator.<Row>comparingLong(row -> -row.value).thenComparing(row -> row.label)),
+        LABEL(Comparator.comparing(row -> row.label)),
+        ID(Comparator.comparingLong(row -> row.id));
+
+        private final Comparator<Row> comparator;
+
+        Sort(final Comparator<Row> comparator) {
+            this.comparator = comparator;
+        }
+    }
+
+    private static final String CLEAR_SCREEN = "\u001b[H\u001b[2J";
+    private static final String HIGHLIGHT = "\u001b[1m";
+    private static final String RESET = "\u001b[0m";
+
+    private final Pattern filter;
+    private final Sort sort;
+    private final int maxNumberOfRows;
+    private final boolean highlight;
+
+    private final Map<Long, Row> rowsById = new HashMap<>();
+    private Row[] rows = new Row[16];
+    private Row[] nextRows = new Row[16];
+    private Row[] view = new Row[16];
+    private int numberOfRows;
+    private int nextNumberOfRows;
+    private boolean rowsChanged;
+    private boolean labelsMissed;
+
+    private long sampleTime;
+    private long elapsedNanos;
+    private int numberOfSamples;
+
+    /**
+     * @param filter          pattern the labels of the counters to be shown have to match,
+     *                        {@code null} to show all the counters
+     * @param sort            order of the rows
+     * @param maxNumberOfRows max number of rows to be rendered
+     * @param highlight       whether the counters changed since the previous sample are to be highlighted
+     *                        with ANSI escape codes
+     */
+    public MCountersTop(final Pattern filter, final Sort sort, final int maxNumberOfRows, final boolean highlight) {
+        if (maxNumberOfRows <= 0) {
+            throw new IllegalArgumentException("Incorrect number of rows: " + maxNumberOfRows);
+        }
+        this.filter = filter;
+        this.sort = sort;
+        this.maxNumberOfRows = maxNumberOfRows;
+        this.highlight = highlight;
+    }
+
+    /**
+     * Takes a new snapshot of the counters and computes rates and deltas against the previous one.
+     *
+     * @param reader    reader of the counters' file
+     * @param timeNanos time of the sample in nanoseconds, as returned by {@link System#nanoTime()}
+     */
+    public void sample(final MCountersReader reader, final long timeNanos) {
+        elapsedNanos = numberOfSamples > 0 ? timeNanos - sampleTime : 0;
+        sampleTime = timeNanos;
+        numberOfSamples++;
+
+        nextNumberOfRows = 0;
+        rowsChanged = false;
+        labelsMissed = false;
+
+        reader.forEachCounterValue(this::onValue);
+
+        if (labelsMissed) { // new counters appeared, decode all labels at once instead of looking them up one by one
+            reader.forEachCounter((id, label, value) -> {
+                final Row row = rowsById.get(id);
+                if (row != null && row.label == null) {
+                    setLabel(row, label);
+                }
+            });
+            for (int i = 0; i < nextNumberOfRows; i++) {
+                if (nextRows[i].label == null) { // has been freed in between
+                    setLabel(nextRows[i], "");
+                }
+            }
+        }
+
+        if (rowsChanged || nextNumberOfRows != numberOfRows) {
+            rowsById.clear();
+            for (int i = 0; i < nextNumberOfRows; i++) {
+                rowsById.put(nextRows[i].id, nextRows[i]);
+            }
+        }
+
+        final Row[] swap = rows;
+        rows = nextRows;
+        nextRows = swap;
+        Arrays.fill(nextRows, 0, numberOfRows, null);
+        numberOfRows = nextNumberOfRows;
+    }
+
+    /**
+     * @return number of the counters of the last sample, including the filtered out ones
+     */
+    public int numberOfCounters() {
+        return numberOfRows;
+    }
+
+    /**
+     * Renders the last sample.
+     *
+     * @param output      to append the table to
+     * @param clearScreen whether the output is to be prefixed with the ANSI sequence to clear the screen
+     */
+    public void render(final StringBuilder output, final boolean clearScreen) {
+        if (clearScreen) {
+            output.append(CLEAR_SCREEN);
+        }
+
+        if (view.length < numberOfRows) {
+            view = new Row[rows.length];
+        }
+        int numberOfShown = 0;
+        for (int i = 0; i < numberOfRows; i++) {
+            if (rows[i].matched) {
+                view[numberOfShown++] = rows[i];
+            }
+        }
+        Arrays.sort(view, 0, numberOfShown, sort.comparator);
+
+        output.append("counters: ").append(numberOfShown).append('/').append(numberOfRows)
+                .append(", interval: ").append(elapsedNanos / 1_000_000).append(" ms")
+                .append(", sorted by: ").append(sort.name().toLowerCase())
+                .append(System.lineSeparator());
+        output.append(String.format("%12s %20s %16s %16s  %s%n", "ID", "VALUE", "DELTA", "RATE/S", "LABEL"));
+
+        final int n = Math.min(numberOfShown, maxNumberOfRows);
+        for (int i = 0; i < n; i++) {
+            final Row row = view[i];
+            final boolean changed = highlight && row.delta != 0;
+            if (changed) {
+                output.append(HIGHLIGHT);
+            }
+            output.append(String.format("%12d %20d %16d %16.1f  %s",
+                    row.id, row.value, row.delta, row.rate, row.label));
+            if (changed) {
+                output.append(RESET);
+            }
+            output.append(System.lineSeparator());
+        }
+        Arrays.fill(view, 0, numberOfShown, null);
+    }
+
+    private void onValue(final long id, final long value) {
+        final int index = nextNumberOfRows;
+
+        Row row;
+        if (index < numberOfRows && rows[index].id == id) { // the counters are usually in the same order
+            row = rows[index];
+        } else {
+            rowsChanged = true;
+            row = rowsById.get(id);
+            if (row == null) {
+                row = new Row(id, value);
+                rowsById.put(id, row);
+                labelsMissed = true;
+            }
+        }
+
+        row.delta = value - row.value;
+        row.rate = elapsedNanos > 0 ? row.delta * 1_000_000_000d / elapsedNanos : 0;
+        row.value = value;
+
+        if (index == nextRows.length) {
+            nextRows = Arrays.copyOf(nextRows, index << 1);
+            rows = Arrays.copyOf(rows, index << 1);
+        }
+        nextRows[index] = row;
+        nextNumberOfRows = index + 1;
+    }
+
+    private void setLabel(final Row row, final String label) {
+        row.label = label;
+        row.matched = filter == null || filter.matcher(label).find();
+    }
+
+    private static final class Row {
+        private final long id;
+        private String label;
+        private boolean matched;
+        private long value;
+        private long delta;
+        private double rate;
+
+        Row(final long id, final long value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.jmx;
+
+import org.java.mc4j.MCountersReader;
+import org.java.mc4j.MCountersWriter;
+import org.java.mc4j.jmx.JmxPublisher;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * A JVM, which MBeans are published by {@link MCountersJmxSidecar}. The connection, the counters' file and
+ * the state of the MBeans are kept between refreshes, so a refresh only reads the attributes. The file is
+ * deleted on close, so the JVM can be connected again.
+ */
+final class JmxTarget implements AutoCloseable {
+    static final String PID_STATIC = "pid";
+    static final String DISPLAY_NAME_STATIC = "jvm";
+
+    private final String id;
+    private final String displayName;
+
+    private final NotificationListener connectionListener = this::connectionChanged;
+    private volatile boolean broken;
+
+    private JMXConnector connector;
+    private File countersFile;
+    private MCountersWriter writer;
+    private JmxPublisher publisher;
+
+    JmxTarget(final String id, final String displayName) {
+        this.id = id;
+        this.displayName = displayName;
+    }
+
+    String id() {
+        return id;
+    }
+
+    String displayName() {
+        return displayName;
+    }
+
+    JmxPublisher publisher() {
+        return publisher;
+    }
+
+    /**
+     * Returns whether the connection has been closed or failed, so the JVM must be connected again.
+     *
+     * @return {@code true} if the connection is lost
+     */
+    boolean isBroken() {
+        return broken;
+    }
+
+    /**
+     * Connects to the JVM and starts publishing its MBeans into the file.
+     *
+     * @param address             The JMX connector address of the JVM
+     * @param countersFile        The counters' file
+     * @param maxNumberOfCounters The max number of counters
+     * @param mBeans              MBeans and their attributes in the format of {@link JmxPublisher}
+     * @param refreshInterval     The refresh interval in millis
+     * @throws Exception if the JVM cannot be connected or the file cannot be created, for example if the JVM
+     *                   publishes its MBeans into the file itself
+     */
+    void open(final String address,
+              final File countersFile,
+              final int maxNumberOfCounters,
+              final String mBeans,
+              final long refreshInterval) throws Exception {
+        broken = false;
+        try {
+            connector = JMXConnectorFactory.connect(new JMXServiceURL(address));
+            connector.addConnectionNotificationListener(connectionListener, null, null);
+
+            if (isWrittenByTheJvm(countersFile)) { // by JmxAgent, for example
+                throw new FileAlreadyExistsException(countersFile.getPath(), null, "written by the JVM itself");
+            }
+            Files.deleteIfExists(countersFile.toPath()); // left by a previous run of the sidecar
+
+            final Properties statics = new Properties();
+            statics.setProperty(PID_STATIC, id);
+            statics.setProperty(DISPLAY_NAME_STATIC, displayName);
+            writer = new MCountersWriter(countersFile, statics, maxNumberOfCounters);
+            this.countersFile = countersFile;
+
+            publisher = new JmxPublisher(writer, connector.getMBeanServerConnection(), mBeans);
+            publisher.start(refreshInterval);
+        } catch (final Exception e) {
+            close();
+            throw e;
+        }
+    }
+
+    private boolean isWrittenByTheJvm(final File countersFile) {
+        try (MCountersReader reader = new MCountersReader(countersFile)) {
+            return id.equals(String.valueOf(reader.getPid()));
+        } catch (final Exception ignore) { // no file or not a counters' file
+            return false;
+        }
+    }
+
+    private void connectionChanged(final Notification notification, final Object handback) {
+        if (JMXConnectionNotification.CLOSED.equals(notification.getType()) ||
+                JMXConnectionNotification.FAILED.equals(notification.getType())) {
+            broken = true;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (publisher != null) {
+            publisher.close();
+            publisher = null;
+        }
+        if (connector != null) {
+            try {
+                connector.removeConnectionNotificationListener(connectionListener); // of this connection only
+            } catch (final ListenerNotFoundException ignore) {
+            }
+            try {
+                connector.close();
+            } catch (final IOException ignore) {
+            }
+            connector = null;
+        }
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (final IOException ignore) {
+            }
+            writer = null;
+
+            try {
+                Files.deleteIfExists(countersFile.toPath());
+            } catch (final IOException ignore) {
+            }
+            countersFile = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return id + " " + displayName;
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.jmx;
+
+import org.java.mc4j.MCountersUtils;
+import org.java.mc4j.cli.Application;
+import org.java.mc4j.cli.Options;
+import org.java.mc4j.jmx.MBean;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Pattern;
+
+/**
+ * Publishes MBeans of the local JVMs without agents inside them. The JVMs are discovered with the Attach API
+ * ({@code com.sun.tools.attach}), their local JMX connector addresses are obtained (the local management agent
+ * is started if needed), and a {@link org.java.mc4j.jmx.JmxPublisher} per JVM refreshes its MBeans into its own
+ * counters' file 'jmx-PID.dat'.
+ * <p>
+ * The connections and the state of the MBeans are kept between refreshes, so a refresh costs only the reads
+ * of the attributes. A JVM, which has exited or lost its connection, is closed and its file is deleted on the next
+ * scan, then it's connected again if it's still there. A file left by a previous run of the sidecar is replaced.
+ * <p>
+ * The Attach API is used via reflection, so the sidecar runs on JDK 8 with its 'lib/tools.jar' and on later JDKs
+ * with the 'jdk.attach' module.
+ */
+public class MCountersJmxSidecar extends Application {
+    static final String FILE_PREFIX = "jmx-";
+    static final String FILE_EXTENSION = ".dat";
+
+    private final Options.Argumented mBeans;
+    private final Options.Argumented jvms;
+    private final Options.Argumented directory;
+    private final Options.Argumented interval;
+    private final Options.Argumented scan;
+    private final Options.Argumented counters;
+
+    private final Map<String, JmxTarget> targets = new HashMap<>();
+    private final Set<String> failedIds = new HashSet<>(); // reported once until the JVM exits
+
+    private volatile boolean running = true;
+
+    public MCountersJmxSidecar(final String[] args) {
+        super("mcjmx", args);
+
+        withDescription("Publishes MBeans of the local JVMs as counters, a counters' file per JVM.");
+        withUsage("-j kafka -m \"kafka.server:type=*,name=*[Count]\"",
+                "Publishes counts of Kafka servers running locally every second into '" +
+                        FILE_PREFIX + "PID" + FILE_EXTENSION + "' files.");
+
+        mBeans = withArgumented("mbeans", 'm', "MBEANS")
+                .require()
+                .withDescription("MBeans and their attributes like 'java.lang:type=Memory[HeapMemoryUsage] " +
+                        "java.lang:type=GarbageCollector,name=*[*]@10s'.");
+        jvms = withArgumented("jvms", 'j', "REGEX")
+                .withDefaultArgumentValue(".*")
+                .withDescription("Regular expression, which JVMs' display names (the main class or the jar " +
+                        "with arguments) must contain.");
+        directory = withArgumented("dir", 'd', "DIR")
+                .withDefaultArgumentValue(MCountersUtils.getMCountersDirectoryName())
+                .withDescription("Directory of the counters' files.");
+        interval = withArgumented("interval", 'i', "MILLIS")
+                .withDefaultArgumentValue("1000")
+                .withDescription("Refresh interval in milliseconds of MBeans without their own interval.");
+        scan = withArgumented("scan", 's', "MILLIS")
+                .withDefaultArgumentValue("10000")
+                .withDescription("Interval in milliseconds of looking for new and exited JVMs.");
+        counters = withArgumented("counters", 'c', "NUMBER")
+                .withDefaultArgumentValue("1000")
+                .withDescription("Max number of counters per JVM.");
+    }
+
+    @Override
+    protected void doWork() throws Throwable {
+        final long intervalMillis = interval.longValue();
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Incorrect interval: " + intervalMillis);
+        }
+        final long scanMillis = scan.longValue();
+        if (scanMillis <= 0) {
+            throw new IllegalArgumentException("Incorrect scan interval: " + scanMillis);
+        }
+        MBean.parseMBeans(mBeans.stringValue()); // fail fast
+
+        final Pattern jvmPattern = Pattern.compile(jvms.stringValue());
+        final File countersDirectory = directory.fileValue();
+        countersDirectory.mkdirs();
+
+        final AttachApi attachApi = new AttachApi();
+
+        final CountDownLatch stopped = new CountDownLatch(1);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            running = false;
+            try {
+                stopped.await();
+            } catch (final InterruptedException ignore) {
+            }
+        }));
+
+        try {
+            while (running) {
+                scan(attachApi, jvmPattern, countersDirectory, intervalMillis);
+
+                final long scanTime = System.currentTimeMillis() + scanMillis;
+                for (long now = System.currentTimeMillis(); running && now < scanTime;
+                     now = System.currentTimeMillis()) {
+                    Thread.sleep(Math.min(scanTime - now, 100));
+                }
+            }
+        } finally {
+            for (final JmxTarget target : targets.values()) {
+                target.close();
+            }
+            targets.clear();
+            stopped.countDown();
+        }
+    }
+
+    private void scan(final AttachApi attachApi,
+                      final Pattern jvmPattern,
+                      final File countersDirectory,
+                      final long intervalMillis) throws ReflectiveOperationException {
+        final Map<String, String> displayNames = attachApi.list();
+        displayNames.remove(String.valueOf(MCountersUtils.PID)); // the sidecar itself
+        failedIds.retainAll(displayNames.keySet());
+
+        final Iterator<JmxTarget> it = targets.values().iterator();
+        while (it.hasNext()) {
+            final JmxTarget target = it.next();
+            if (target.isBroken() || !displayNames.containsKey(target.id())) {
+                target.close();
+                it.remove();
+            }
+        }
+
+        for (final Map.Entry<String, String> jvm : displayNames.entrySet()) {
+            final String id = jvm.getKey();
+            if (targets.containsKey(id) || !jvmPattern.matcher(jvm.getValue()).find()) {
+                continue;
+            }
+
+            final JmxTarget target = new JmxTarget(id, jvm.getValue());
+            try {
+                target.open(attachApi.localConnectorAddress(id),
+                        new File(countersDirectory, FILE_PREFIX + id + FILE_EXTENSION),
+                        counters.intValue(),
+                        mBeans.stringValue(),
+                        intervalMillis);
+                targets.put(id, target);
+                failedIds.remove(id);
+            } catch (final Throwable t) {
+                if (failedIds.add(id)) {
+                    System.err.println("Cannot publish MBeans of " + target + ": " + t);
+                }
+            }
+        }
+    }
+
+    public static void main(final String[] args) {
+        new MCountersJmxSidecar(args).start();
+    }
+
+    /**
+     * The Attach API via reflection, because it's neither in the JDK 8 runtime nor available to be compiled against
+     * for it.
+     */
+    private static final class AttachApi {
+        private final Method list;
+        private final Method id;
+        private final Method displayName;
+        private final Method attach;
+        private final Method startLocalManagementAgent;
+        private final Method detach;
+
+        AttachApi() throws ReflectiveOperationException {
+            final Class<?> virtualMachine = loadClass("com.sun.tools.attach.VirtualMachine");
+            final Class<?> descriptor = Class.forName("com.sun.tools.attach.VirtualMachineDescriptor",
+                    true,
+                    virtualMachine.getClassLoader());
+
+            list = virtualMachine.getMethod("list");
+            id = descriptor.getMethod("id");
+            displayName = descriptor.getMethod("displayName");
+            attach = virtualMachine.getMethod("attach", String.class);
+            startLocalManagementAgent = virtualMachine.getMethod("startLocalManagementAgent");
+            detach = virtualMachine.getMethod("detach");
+        }
+
+        private static Class<?> loadClass(final String name) throws ReflectiveOperationException {
+            try {
+                return Class.forName(name);
+            } catch (final ClassNotFoundException e) { // JDK 8, try its tools.jar
+                final File toolsJar = new File(System.getProperty("java.home"), "../lib/tools.jar");
+                if (!toolsJar.exists()) {
+                    throw e;
+                }
+                try {
+                    final ClassLoader loader = new URLClassLoader(new URL[]{toolsJar.toURI().toURL()});
+                    return Class.forName(name, true, loader);
+                } catch (final MalformedURLException ignore) {
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Returns the local JVMs.
+         *
+         * @return display names by ids (PIDs) of the JVMs
+         */
+        Map<String, String> list() throws ReflectiveOperationException {
+            final Map<String, String> result = new HashMap<>();
+            for (final Object jvm : (List<?>) list.invoke(null)) {
+                result.put((String) id.invoke(jvm), (String) displayName.invoke(jvm));
+            }
+            return result;
+        }
+
+        /**
+         * Attaches to the JVM to start its local management agent if it isn't running yet.
+         *
+         * @param jvmId The id (PID) of the JVM
+         * @return the local JMX connector address of the JVM
+         */
+        String localConnectorAddress(final String jvmId) throws ReflectiveOperationException {
+            final Object jvm = attach.invoke(null, jvmId);
+            try {
+                return (String) startLocalManagementAgent.invoke(jvm);
+            } finally {
+                detach.invoke(jvm);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.recorder;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Layout of an archive of counters' samples. All numbers except of the file header are written as
+ * variable-length integers (7 bits per byte, little-endian groups, the high bit of a byte is set if more bytes
+ * follow). Signed numbers are ZigZag-encoded before.
+ * <p>
+ * <b>File header</b>
+ * <pre>
+ *   0                   1                   2                   3
+ *   0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ *  +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ *  |                        Magic 'MCAR'                           |
+ *  +---------------------------------------------------------------+
+ *  |                       Archive version                         |
+ *  +---------------------------------------------------------------+
+ *  |                 Records until the end of file                ...
+ * ...                                                              |
+ *  +---------------------------------------------------------------+
+ * </pre>
+ * <p>
+ * <b>Catalog record</b> starts a new generation of samples. It's written when the set of counters
+ * of a counters' file has changed and resets the state of the timestamps' and values' decoding.
+ * <pre>
+ *  +--------+--------+-----------+-------------+---------------------+------------------------------------+
+ *  |  0x01  |  PID   | Start time| Base        | Number of counters  | Counter[i]'s ID, label length and  |
+ *  |        |        |           | timestamp   |                     | label for each counter             |
+ *  +--------+--------+-----------+-------------+---------------------+------------------------------------+
+ * </pre>
+ * <p>
+ * <b>Sample record</b> holds values of all the counters of the current catalog in the catalog's order.
+ * <pre>
+ *  +--------+--------------------------------+------------------------------------------------------------+
+ *  |  0x02  | ZigZag(delta of the timestamp's | ZigZag(Counter[i]'s value - its value in the previous      |
+ *  |        | delta)                          | sample) for each counter                                   |
+ *  +--------+--------------------------------+------------------------------------------------------------+
+ * </pre>
+ * The timestamp's delta and the previous values are 0 right after a catalog record.
+ */
+public abstract class MCountersArchiveLayout {
+    public static final int ARCHIVE_MAGIC = 0x4D434152; // 'MCAR'
+    public static final int ARCHIVE_VERSION = 1;
+    public static final Charset STRING_CHARSET = StandardCharsets.UTF_8;
+
+    protected static final int FILE_HEADER_LENGTH = 8;
+
+    protected static final byte CATALOG_RECORD = 1;
+    protected static final byte SAMPLE_RECORD = 2;
+
+    protected static final int MAX_VARLONG_LENGTH = 10;
+
+    protected static long encodeZigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    protected static long decodeZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
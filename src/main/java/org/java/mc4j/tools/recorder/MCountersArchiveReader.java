@@ -0,0 +1,291 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.recorder;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reads samples of an archive written by {@link MCountersArchiveWriter} one by one:
+ * <pre>
+ * try (MCountersArchiveReader reader = new MCountersArchiveReader(archiveFile)) {
+ *     while (reader.next()) {
+ *         for (int i = 0; i &lt; reader.numberOfCounters(); i++) {
+ *             System.out.printf("%d %s=%d%n", reader.timestamp(), reader.label(i), reader.value(i));
+ *         }
+ *     }
+ * }
+ * </pre>
+ * An incomplete record at the end of the archive, left by a crashed writer or being written right now, is ignored.
+ * The reader can be asked for the next sample again after it has reached the end of the archive to follow
+ * the samples appended since then.
+ * <p>
+ * <b>IMPORTANT:</b> this class isn't thread safe.
+ */
+public final class MCountersArchiveReader extends MCountersArchiveLayout implements AutoCloseable {
+    private static final int BUFFER_CAPACITY = 64 * 1024;
+
+    private static final long[] EMPTY_LONGS = new long[0];
+    private static final String[] EMPTY_STRINGS = new String[0];
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_CAPACITY);
+
+    private long position;
+    private long completeLength;
+
+    private int generation;
+    private long pid;
+    private long startTime;
+    private long timestamp;
+    private long timestampDelta;
+
+    private int numberOfCounters = -1;
+    private long[] ids = EMPTY_LONGS;
+    private String[] labels = EMPTY_STRINGS;
+    private long[] values = EMPTY_LONGS;
+    private long[] nextValues = EMPTY_LONGS;
+
+    private byte[] labelBytes = new byte[64];
+
+    public MCountersArchiveReader(final File archiveFile) throws IOException {
+        this(archiveFile, FILE_HEADER_LENGTH);
+    }
+
+    /**
+     * Opens an archive to read it from the position specified. The position must point to a catalog record,
+     * for example, it can be {@link MCountersArchiveWriter#length()} taken right after the writer was opened.
+     * Reading from the end of the archive allows to follow the samples while they are being appended.
+     *
+     * @param archiveFile to be read
+     * @param position    of a catalog record to start from
+     * @throws IOException if the archive cannot be opened
+     */
+    public MCountersArchiveReader(final File archiveFile, final long position) throws IOException {
+        if (position < FILE_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Incorrect position: " + position);
+        }
+
+        channel = FileChannel.open(archiveFile.toPath(), READ);
+
+        buffer.flip();
+
+        try {
+            final int magic = readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+            final int version = readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+
+            if (magic != ARCHIVE_MAGIC) {
+                throw new IOException("Not an archive of counters: " + archiveFile.getAbsolutePath());
+            }
+            if (version != ARCHIVE_VERSION) {
+                throw new IOException("Unexpected version of the archive: " + version);
+            }
+
+            if (position > FILE_HEADER_LENGTH) {
+                channel.position(position);
+                buffer.clear();
+                buffer.flip();
+                this.position = position;
+            }
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        completeLength = this.position;
+    }
+
+    /**
+     * Moves to the next sample of the archive.
+     *
+     * @return {@code true} if the next sample has been read and {@code false} if the end of the archive is reached
+     * @throws IOException if the archive cannot be read or is corrupted
+     */
+    public boolean next() throws IOException {
+        try {
+            while (true) {
+                final int recordType = readByte();
+
+                switch (recordType) {
+                    case CATALOG_RECORD:
+                        readCatalog();
+                        completeLength = position;
+                        break;
+
+                    case SAMPLE_RECORD:
+                        if (numberOfCounters < 0) {
+                            throw new IOException("Sample without catalog at " + (position - 1));
+                        }
+                        readSample();
+                        completeLength = position;
+                        return true;
+
+                    default:
+                        throw new IOException("Unexpected record type " + recordType + " at " + (position - 1));
+                }
+            }
+        } catch (final EOFException e) { // rewind to the last complete record, so the reader can continue
+            // when the rest of the record is written
+            channel.position(completeLength);
+            buffer.clear();
+            buffer.flip();
+            position = completeLength;
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of catalogs read so far. The number changes when the set of counters changes.
+     *
+     * @return generation of the current sample
+     */
+    public int generation() {
+        return generation;
+    }
+
+    public long pid() {
+        return pid;
+    }
+
+    public long startTime() {
+        return startTime;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public int numberOfCounters() {
+        return Math.max(numberOfCounters, 0);
+    }
+
+    public long id(final int index) {
+        return ids[index];
+    }
+
+    public String label(final int index) {
+        return labels[index];
+    }
+
+    public long value(final int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns length of the archive's prefix which consists of complete records read so far.
+     *
+     * @return length of the complete records read
+     */
+    public long completeLength() {
+        return completeLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readCatalog() throws IOException {
+        final long pid = readVarLong();
+        final long startTime = readVarLong();
+        final long timestamp = readVarLong();
+        final int numberOfCounters = (int) readVarLong();
+
+        final long[] ids = new long[numberOfCounters];
+        final String[] labels = new String[numberOfCounters];
+
+        for (int i = 0; i < numberOfCounters; i++) {
+            ids[i] = readVarLong();
+
+            final int labelLength = (int) readVarLong();
+            if (labelBytes.length < labelLength) {
+                labelBytes = new byte[labelLength];
+            }
+            for (int j = 0; j < labelLength; j++) {
+                labelBytes[j] = (byte) readByte();
+            }
+            labels[i] = new String(labelBytes, 0, labelLength, STRING_CHARSET);
+        }
+
+        generation++;
+        this.pid = pid;
+        this.startTime = startTime;
+        this.timestamp = timestamp;
+        this.timestampDelta = 0;
+        this.numberOfCounters = numberOfCounters;
+        this.ids = ids;
+        this.labels = labels;
+        this.values = new long[numberOfCounters];
+        this.nextValues = new long[numberOfCounters];
+    }
+
+    private void readSample() throws IOException {
+        final long timestampDelta = this.timestampDelta + decodeZigZag(readVarLong());
+
+        for (int i = 0; i < numberOfCounters; i++) {
+            nextValues[i] = values[i] + decodeZigZag(readVarLong());
+        }
+
+        this.timestampDelta = timestampDelta;
+        timestamp += timestampDelta;
+
+        final long[] values = this.values;
+        this.values = nextValues;
+        nextValues = values;
+    }
+
+    private long readVarLong() throws IOException {
+        long result = 0;
+        int shift = 0;
+
+        for (int i = 0; i < MAX_VARLONG_LENGTH; i++) {
+            final int b = readByte();
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+
+        throw new IOException("Malformed variable-length number at " + position);
+    }
+
+    private int readByte() throws IOException {
+        if (!buffer.hasRemaining()) {
+            buffer.clear();
+            final int read = channel.read(buffer);
+            buffer.flip();
+            if (read <= 0) {
+                throw new EOFException();
+            }
+        }
+        position++;
+        return buffer.get() & 0xff;
+    }
+}
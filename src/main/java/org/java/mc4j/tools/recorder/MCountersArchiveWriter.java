@@ -0,0 +1,328 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.recorder;
+
+import org.java.mc4j.MCounterConsumer;
+import org.java.mc4j.MCounterValueConsumer;
+import org.java.mc4j.MCountersReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Appends samples of a counters' file to an archive. See {@link MCountersArchiveLayout} for the format.
+ * <p>
+ * A sample of an unchanged set of counters reads only the counters' values and costs a few bytes per counter
+ * in the archive. Labels are read and stored again only when the set of counters has changed.
+ * <p>
+ * If the archive exists already, new samples are appended to it. An incomplete record at the end of the archive,
+ * left by a crashed writer, is truncated.
+ * <p>
+ * <b>IMPORTANT:</b> this class isn't thread safe.
+ */
+public final class MCountersArchiveWriter extends MCountersArchiveLayout implements AutoCloseable {
+    private static final int INITIAL_BUFFER_CAPACITY = 64 * 1024;
+    private static final int INITIAL_NUMBER_OF_COUNTERS = 64;
+
+    private final File archiveFile;
+    private final FileChannel channel;
+
+    private final ValuesCollector valuesCollector = new ValuesCollector();
+    private final CountersCollector countersCollector = new CountersCollector();
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_CAPACITY);
+
+    private int numberOfCounters = -1; // no catalog written yet
+    private long[] ids = new long[INITIAL_NUMBER_OF_COUNTERS];
+    private long[] lastValues = new long[INITIAL_NUMBER_OF_COUNTERS];
+    private long pid;
+    private long startTime;
+    private long lastTimestamp;
+    private long lastTimestampDelta;
+
+    private int sampleSize;
+    private boolean sampleMatchesCatalog;
+    private long[] sampleIds = new long[INITIAL_NUMBER_OF_COUNTERS];
+    private long[] sampleValues = new long[INITIAL_NUMBER_OF_COUNTERS];
+    private String[] sampleLabels = new String[INITIAL_NUMBER_OF_COUNTERS];
+
+    public MCountersArchiveWriter(final File archiveFile) throws IOException {
+        this.archiveFile = archiveFile;
+
+        long completeLength = 0;
+
+        if (archiveFile.exists() && archiveFile.length() > 0) {
+            try (MCountersArchiveReader reader = new MCountersArchiveReader(archiveFile)) {
+                while (reader.next()) {
+                    // just find the end of the last complete record
+                }
+                completeLength = reader.completeLength();
+            }
+        }
+
+        channel = FileChannel.open(archiveFile.toPath(), CREATE, READ, WRITE);
+
+        try {
+            if (completeLength == 0) {
+                channel.truncate(0);
+                buffer.putInt(ARCHIVE_MAGIC);
+                buffer.putInt(ARCHIVE_VERSION);
+                flush();
+            } else {
+                channel.truncate(completeLength);
+                channel.position(completeLength);
+            }
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public File archiveFile() {
+        return archiveFile;
+    }
+
+    /**
+     * Reads all counters of the reader and appends them as one sample to the archive.
+     *
+     * @param reader    of the counters' file to be sampled
+     * @param timestamp of the sample
+     * @throws IOException if the sample cannot be written
+     */
+    public void writeSample(final MCountersReader reader, final long timestamp) throws IOException {
+        final long readerPid = reader.getPid();
+        final long readerStartTime = reader.getStartTime();
+
+        boolean catalogChanged = numberOfCounters < 0 || readerPid != pid || readerStartTime != startTime;
+
+        if (!catalogChanged) {
+            sampleSize = 0;
+            sampleMatchesCatalog = true;
+
+            reader.forEachCounterValue(valuesCollector);
+
+            catalogChanged = !sampleMatchesCatalog || sampleSize != numberOfCounters;
+        }
+
+        if (catalogChanged) {
+            sampleSize = 0;
+
+            reader.forEachCounter(countersCollector);
+
+            writeCatalogRecord(readerPid, readerStartTime, timestamp);
+        }
+
+        writeSampleRecord(timestamp);
+
+        flush();
+    }
+
+    /**
+     * Appends a sample of counters, which have been read already, to the archive.
+     *
+     * @param pid              of the process the counters belong to
+     * @param startTime        of the process the counters belong to
+     * @param counterIds       ids of the counters
+     * @param counterLabels    labels of the counters
+     * @param counterValues    values of the counters
+     * @param valuesOffset     index of the value of the first counter in the values' array
+     * @param numberOfCounters number of the counters in the sample
+     * @param timestamp        of the sample
+     * @throws IOException if the sample cannot be written
+     */
+    public void writeSample(final long pid,
+                            final long startTime,
+                            final long[] counterIds,
+                            final String[] counterLabels,
+                            final long[] counterValues,
+                            final int valuesOffset,
+                            final int numberOfCounters,
+                            final long timestamp) throws IOException {
+        boolean catalogChanged = this.numberOfCounters != numberOfCounters || pid != this.pid ||
+                startTime != this.startTime;
+
+        for (int i = 0; !catalogChanged && i < numberOfCounters; i++) {
+            catalogChanged = ids[i] != counterIds[i];
+        }
+
+        sampleSize = 0;
+        for (int i = 0; i < numberOfCounters; i++) {
+            ensureSampleCapacity();
+            sampleIds[sampleSize] = counterIds[i];
+            sampleValues[sampleSize] = counterValues[valuesOffset + i];
+            if (catalogChanged) {
+                sampleLabels[sampleSize] = counterLabels[i];
+            }
+            sampleSize++;
+        }
+
+        if (catalogChanged) {
+            writeCatalogRecord(pid, startTime, timestamp);
+        }
+
+        writeSampleRecord(timestamp);
+
+        flush();
+    }
+
+    /**
+     * Returns current length of the archive.
+     *
+     * @return length of the archive
+     * @throws IOException if the length cannot be obtained
+     */
+    public long length() throws IOException {
+        return channel.position();
+    }
+
+    /**
+     * Forces all written samples to the storage device.
+     *
+     * @throws IOException if the archive cannot be forced
+     */
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeCatalogRecord(final long pid, final long startTime, final long timestamp) {
+        this.pid = pid;
+        this.startTime = startTime;
+        lastTimestamp = timestamp;
+        lastTimestampDelta = 0;
+
+        numberOfCounters = sampleSize;
+        if (ids.length < numberOfCounters) {
+            ids = new long[sampleIds.length];
+            lastValues = new long[sampleIds.length];
+        }
+        System.arraycopy(sampleIds, 0, ids, 0, numberOfCounters);
+        Arrays.fill(lastValues, 0);
+
+        ensureCapacity(1 + 4 * MAX_VARLONG_LENGTH);
+        buffer.put(CATALOG_RECORD);
+        putVarLong(pid);
+        putVarLong(startTime);
+        putVarLong(timestamp);
+        putVarLong(numberOfCounters);
+
+        for (int i = 0; i < numberOfCounters; i++) {
+            final byte[] labelBytes = sampleLabels[i].getBytes(STRING_CHARSET);
+            sampleLabels[i] = null;
+
+            ensureCapacity(2 * MAX_VARLONG_LENGTH + labelBytes.length);
+            putVarLong(ids[i]);
+            putVarLong(labelBytes.length);
+            buffer.put(labelBytes);
+        }
+    }
+
+    private void writeSampleRecord(final long timestamp) {
+        ensureCapacity(1 + (1 + numberOfCounters) * MAX_VARLONG_LENGTH);
+
+        buffer.put(SAMPLE_RECORD);
+
+        final long timestampDelta = timestamp - lastTimestamp;
+        putVarLong(encodeZigZag(timestampDelta - lastTimestampDelta));
+        lastTimestamp = timestamp;
+        lastTimestampDelta = timestampDelta;
+
+        for (int i = 0; i < numberOfCounters; i++) {
+            final long value = sampleValues[i];
+            putVarLong(encodeZigZag(value - lastValues[i]));
+            lastValues[i] = value;
+        }
+    }
+
+    private void putVarLong(final long value) {
+        long v = value;
+        while ((v & ~0x7fL) != 0) {
+            buffer.put((byte) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    private void ensureCapacity(final int length) {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        final ByteBuffer newBuffer = ByteBuffer.allocateDirect(
+                Math.max(buffer.capacity() * 2, buffer.position() + length));
+        buffer.flip();
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensureSampleCapacity() {
+        if (sampleSize < sampleIds.length) {
+            return;
+        }
+        final int newLength = sampleIds.length * 2;
+        sampleIds = Arrays.copyOf(sampleIds, newLength);
+        sampleValues = Arrays.copyOf(sampleValues, newLength);
+        sampleLabels = Arrays.copyOf(sampleLabels, newLength);
+    }
+
+    private class ValuesCollector implements MCounterValueConsumer {
+        @Override
+        public void accept(final long id, final long value) {
+            if (sampleSize >= numberOfCounters || ids[sampleSize] != id) {
+                sampleMatchesCatalog = false;
+                return;
+            }
+            sampleValues[sampleSize++] = value;
+        }
+    }
+
+    private class CountersCollector implements MCounterConsumer {
+        @Override
+        public void accept(final long id, final String label, final long value) {
+            ensureSampleCapacity();
+            sampleIds[sampleSize] = id;
+            sampleLabels[sampleSize] = label;
+            sampleValues[sampleSize] = value;
+            sampleSize++;
+        }
+    }
+}
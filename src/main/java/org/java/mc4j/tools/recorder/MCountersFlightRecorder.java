@@ -0,0 +1,344 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.recorder;
+
+import org.java.mc4j.MCountersReader;
+import org.java.mc4j.MCountersUtils;
+import org.java.mc4j.cli.Application;
+import org.java.mc4j.cli.Options;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples counters' files at a high frequency into rings in memory (see {@link MCountersFlightRing}),
+ * which cover only the last seconds, and dumps the rings to archives when a trigger fires.
+ * So, the samples of sub-second resolution around an incident are available without storing
+ * them continuously.
+ * <p>
+ * The triggers are:
+ * <ul>
+ *     <li>a counter crosses a threshold</li>
+ *     <li>a trigger file appears, the file is checked once a second and deleted when found</li>
+ *     <li>the {@code dump} command is typed to the standard input</li>
+ * </ul>
+ * A dump is named after its counters' file and the time of the trigger and has the same format
+ * as the archives of {@link MCountersRecorder} (see {@link MCountersArchiveLayout}). The dumps are written
+ * by a separate thread from copies of the rings, so the sampling isn't stalled by them.
+ */
+public class MCountersFlightRecorder extends Application {
+    public static final String DUMP_COMMAND = "dump";
+
+    private static final long FILE_CHECK_INTERVAL_MILLIS = 1000;
+
+    private final Options.Argumented files;
+    private final Options.Argumented directory;
+    private final Options.Argumented interval;
+    private final Options.Argumented window;
+    private final Options.Argumented after;
+    private final Options.Argumented counters;
+    private final Options.Argumented thresholds;
+    private final Options.Argumented triggerFile;
+
+    private volatile boolean dumpRequested;
+
+    public MCountersFlightRecorder(final String[] args) {
+        super("mcflight", args);
+
+        withDescription("Samples counters' files at a high frequency into memory and dumps the last samples " +
+                "to archives on a trigger.");
+        withUsage("-f /dev/shm/mcounters.dat -i 1 -w 10s -t 'errors>100' -g /tmp/mcounters.dump",
+                "Keeps samples of the 'mcounters.dat' file for the last 10 seconds taken every millisecond " +
+                        "and dumps them when the 'errors' counter exceeds 100 or the '/tmp/mcounters.dump' " +
+                        "file appears.");
+
+        files = withArgumented("files", 'f', "FILES")
+                .require()
+                .withDescription("Comma-separated paths to counters' files to be sampled.");
+        directory = withArgumented("dir", 'd', "DIR")
+                .withDefaultArgumentValue(".")
+                .withDescription("Directory of the dumps.");
+        interval = withArgumented("interval", 'i', "MILLIS")
+                .withDefaultArgumentValue("10")
+                .withDescription("Sampling interval in milliseconds.");
+        window = withArgumented("window", 'w', "DURATION")
+                .withDefaultArgumentValue("10s")
+                .withDescription("How long the samples are kept in memory, for example 500ms, 10s or 1m.");
+        after = withArgumented("after", 'a', "DURATION")
+                .withDefaultArgumentValue("0s")
+                .withDescription("How long the sampling goes on after a trigger before the dump.");
+        counters = withArgumented("counters", 'c', "NUMBER")
+                .withDefaultArgumentValue("256")
+                .withDescription("Max number of counters of a file to be sampled.");
+        thresholds = withArgumented("thresholds", 't', "CONDITIONS")
+                .withDescription("Comma-separated conditions like 'LABEL>VALUE' or 'LABEL<VALUE'. A dump is " +
+                        "triggered when a condition becomes true.");
+        triggerFile = withArgumented("trigger", 'g', "FILE")
+                .withDescription("A dump is triggered when the file appears.");
+    }
+
+    @Override
+    protected void doWork() throws Throwable {
+        final long intervalMillis = interval.longValue();
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Incorrect interval: " + intervalMillis);
+        }
+        final long windowMillis = MCountersUtils.parseDuration(window.stringValue());
+        if (windowMillis < intervalMillis) {
+            throw new IllegalArgumentException("Window is shorter than interval: " + window.stringValue());
+        }
+        final long afterMillis = MCountersUtils.parseDuration(after.stringValue());
+
+        final File dumpsDirectory = directory.fileValue();
+        dumpsDirectory.mkdirs();
+
+        final File trigger = triggerFile.isSet() ? triggerFile.fileValue() : null;
+
+        final List<Threshold> conditions = new ArrayList<>();
+        if (thresholds.isSet()) {
+            for (final String condition : thresholds.stringValue().split(",")) {
+                if (!condition.trim().isEmpty()) {
+                    conditions.add(Threshold.parse(condition.trim()));
+                }
+            }
+        }
+
+        final int numberOfSamples = (int) Math.min(Integer.MAX_VALUE, windowMillis / intervalMillis);
+
+        final List<Source> sources = new ArrayList<>();
+        for (final String fileName : files.stringValue().split(",")) {
+            if (fileName.trim().isEmpty()) {
+                continue;
+            }
+            sources.add(new Source(new File(fileName.trim()),
+                    dumpsDirectory,
+                    new MCountersFlightRing(numberOfSamples, counters.intValue()),
+                    conditions));
+        }
+
+        startCommandsReader();
+
+        final ExecutorService dumper = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "mcflight-dumper");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final long[] nextFileCheckTime = {0};
+        final long[] triggerTime = {-1};
+        final long[] dumpTime = {0};
+
+        try {
+            MCountersSource.sampleUntilShutdown(TimeUnit.MILLISECONDS.toNanos(intervalMillis), sources, now -> {
+                final boolean checkFiles = now >= nextFileCheckTime[0];
+
+                boolean triggered = false;
+                for (final Source source : sources) {
+                    triggered |= source.sample(now, checkFiles);
+                }
+
+                if (checkFiles) {
+                    nextFileCheckTime[0] = now + FILE_CHECK_INTERVAL_MILLIS;
+                    if (trigger != null && trigger.exists()) {
+                        triggered = true;
+                        trigger.delete();
+                    }
+                }
+
+                if (dumpRequested) {
+                    dumpRequested = false;
+                    triggered = true;
+                }
+
+                if (triggered && triggerTime[0] < 0) {
+                    triggerTime[0] = now;
+                    dumpTime[0] = now + afterMillis;
+                }
+
+                if (triggerTime[0] >= 0 && now >= dumpTime[0]) {
+                    final String suffix =
+                            new SimpleDateFormat("yyyyMMdd-HHmmss.SSS").format(new Date(triggerTime[0]));
+                    for (final Source source : sources) {
+                        source.dump(suffix, dumper);
+                    }
+                    triggerTime[0] = -1;
+                }
+            });
+        } finally {
+            dumper.shutdown(); // the dumps in progress are finished
+            dumper.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    public static void main(final String[] args) {
+        new MCountersFlightRecorder(args).start();
+    }
+
+    private void startCommandsReader() {
+        final Thread commandsReader = new Thread(() -> {
+            try (BufferedReader input = new BufferedReader(new InputStreamReader(System.in))) {
+                String command;
+                while ((command = input.readLine()) != null) {
+                    if (DUMP_COMMAND.equals(command.trim())) {
+                        dumpRequested = true;
+                    } else if (!command.trim().isEmpty()) {
+                        System.err.println("Unknown command: " + command.trim());
+                    }
+                }
+            } catch (final IOException ignore) {
+            }
+        }, "mcflight-commands");
+        commandsReader.setDaemon(true);
+        commandsReader.start();
+    }
+
+    private static final class Threshold {
+        private final String label;
+        private final boolean above;
+        private final long value;
+
+        private Threshold(final String label, final boolean above, final long value) {
+            this.label = label;
+            this.above = above;
+            this.value = value;
+        }
+
+        static Threshold parse(final String condition) {
+            int operator = condition.lastIndexOf('>');
+            final boolean above = operator > 0;
+            if (!above) {
+                operator = condition.lastIndexOf('<');
+            }
+            if (operator <= 0 || operator == condition.length() - 1) {
+                throw new IllegalArgumentException("Incorrect condition: " + condition);
+            }
+            try {
+                return new Threshold(condition.substring(0, operator).trim(),
+                        above,
+                        Long.parseLong(condition.substring(operator + 1).trim()));
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("Incorrect condition: " + condition);
+            }
+        }
+
+        boolean isMet(final long counterValue) {
+            return above ? counterValue > value : counterValue < value;
+        }
+    }
+
+    private static final class Source extends MCountersSource {
+        private final File dumpsDirectory;
+        private final MCountersFlightRing ring;
+        private final List<Threshold> thresholds;
+        private final int[] thresholdIndexes;
+        private final boolean[] thresholdsMet;
+
+        private long catalogGeneration = -1;
+
+        Source(final File countersFile,
+               final File dumpsDirectory,
+               final MCountersFlightRing ring,
+               final List<Threshold> thresholds) {
+            super(countersFile);
+            this.dumpsDirectory = dumpsDirectory;
+            this.ring = ring;
+            this.thresholds = thresholds;
+            this.thresholdIndexes = new int[thresholds.size()];
+            this.thresholdsMet = new boolean[thresholds.size()];
+        }
+
+        /**
+         * @return {@code true} if a threshold has been crossed
+         */
+        boolean sample(final long timestamp, final boolean checkFile) {
+            try {
+                final MCountersReader reader = checkFile ? followFile() : reader();
+                if (reader == null) {
+                    return false;
+                }
+
+                ring.sample(reader, timestamp);
+
+                resetError();
+
+                return checkThresholds();
+            } catch (final IOException e) {
+                closeReader();
+                report(e);
+                return false;
+            }
+        }
+
+        /**
+         * Copies the ring and writes the copy to a dump with the dumper.
+         */
+        void dump(final String suffix, final ExecutorService dumper) {
+            if (ring.size() == 0) {
+                return;
+            }
+            final MCountersFlightRing samples = ring.copy();
+            final File dumpFile = new File(dumpsDirectory,
+                    countersFile.getName() + "." + suffix + MCountersRecorder.ARCHIVE_FILE_EXTENSION);
+            dumper.execute(() -> {
+                try (MCountersArchiveWriter archive = new MCountersArchiveWriter(dumpFile)) {
+                    samples.dump(archive);
+                    System.out.println("dumped: " + dumpFile.getAbsolutePath());
+                } catch (final IOException e) {
+                    report(e);
+                }
+            });
+        }
+
+        private boolean checkThresholds() {
+            if (thresholds.isEmpty()) {
+                return false;
+            }
+
+            if (catalogGeneration != ring.catalogGeneration()) {
+                catalogGeneration = ring.catalogGeneration();
+                for (int i = 0; i < thresholdIndexes.length; i++) {
+                    thresholdIndexes[i] = ring.indexOf(thresholds.get(i).label);
+                }
+            }
+
+            boolean result = false;
+            for (int i = 0; i < thresholdIndexes.length; i++) {
+                final boolean met = thresholdIndexes[i] >= 0 &&
+                        thresholds.get(i).isMet(ring.value(thresholdIndexes[i]));
+                result |= met && !thresholdsMet[i]; // fire only when the condition becomes true
+                thresholdsMet[i] = met;
+            }
+            return result;
+        }
+    }
+}
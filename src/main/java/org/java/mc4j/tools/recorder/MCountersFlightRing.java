@@ -0,0 +1,302 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.recorder;
+
+import org.java.mc4j.MCounterConsumer;
+import org.java.mc4j.MCounterValueConsumer;
+import org.java.mc4j.MCountersReader;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Keeps the last samples of a counters' file in memory. All the memory for the samples is allocated
+ * up front, so a sample doesn't allocate while the set of counters of the file doesn't change.
+ * <p>
+ * The samples can be dumped to an archive (see {@link MCountersArchiveWriter}) at any moment.
+ * <p>
+ * <b>IMPORTANT:</b> this class isn't thread safe.
+ */
+public final class MCountersFlightRing {
+    private static final Catalog EMPTY_CATALOG = new Catalog(0, 0, new long[0], new String[0], false);
+
+    private final int numberOfSamples;
+    private final int maxNumberOfCounters;
+
+    private final long[] timestamps;
+    private final Catalog[] catalogs;
+    private final long[] values;
+
+    private final long[] sampleIds;
+    private final String[] sampleLabels;
+    private final ValuesCollector valuesCollector = new ValuesCollector();
+    private final CountersCollector countersCollector = new CountersCollector();
+
+    private long head; // number of samples taken
+    private Catalog catalog = EMPTY_CATALOG;
+    private long catalogGeneration;
+
+    private int sampleSize;
+    private int valuesOffset;
+    private boolean sampleMatchesCatalog;
+    private boolean truncated;
+
+    /**
+     * @param numberOfSamples     number of the last samples to be kept
+     * @param maxNumberOfCounters max number of counters of a sample, the rest counters of a file are ignored
+     */
+    public MCountersFlightRing(final int numberOfSamples, final int maxNumberOfCounters) {
+        if (numberOfSamples <= 0) {
+            throw new IllegalArgumentException("Incorrect number of samples: " + numberOfSamples);
+        }
+        if (maxNumberOfCounters <= 0) {
+            throw new IllegalArgumentException("Incorrect number of counters: " + maxNumberOfCounters);
+        }
+        if ((long) numberOfSamples * maxNumberOfCounters > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many values to be kept: " +
+                    numberOfSamples + "x" + maxNumberOfCounters);
+        }
+
+        this.numberOfSamples = numberOfSamples;
+        this.maxNumberOfCounters = maxNumberOfCounters;
+
+        timestamps = new long[numberOfSamples];
+        catalogs = new Catalog[numberOfSamples];
+        values = new long[numberOfSamples * maxNumberOfCounters];
+
+        sampleIds = new long[maxNumberOfCounters];
+        sampleLabels = new String[maxNumberOfCounters];
+    }
+
+    public int numberOfSamples() {
+        return numberOfSamples;
+    }
+
+    public int maxNumberOfCounters() {
+        return maxNumberOfCounters;
+    }
+
+    /**
+     * @return number of the samples kept at the moment
+     */
+    public int size() {
+        return (int) Math.min(head, numberOfSamples);
+    }
+
+    /**
+     * @return {@code true} if the last sample missed some counters because of
+     * the {@link #maxNumberOfCounters()} limit
+     */
+    public boolean isTruncated() {
+        return catalog.truncated;
+    }
+
+    /**
+     * Reads all counters of the reader and keeps them as a new sample, overwriting the oldest one
+     * if the ring is full.
+     *
+     * @param reader    of the counters' file to be sampled
+     * @param timestamp of the sample
+     */
+    public void sample(final MCountersReader reader, final long timestamp) {
+        final int index = (int) (head % numberOfSamples);
+
+        valuesOffset = index * maxNumberOfCounters;
+        sampleSize = 0;
+
+        final long pid = reader.getPid();
+        final long startTime = reader.getStartTime();
+
+        boolean catalogChanged = pid != catalog.pid || startTime != catalog.startTime;
+
+        if (!catalogChanged) {
+            sampleMatchesCatalog = true;
+
+            reader.forEachCounterValue(valuesCollector);
+
+            catalogChanged = !sampleMatchesCatalog || sampleSize != catalog.ids.length;
+        }
+
+        if (catalogChanged) {
+            sampleSize = 0;
+            truncated = false;
+
+            reader.forEachCounter(countersCollector);
+
+            catalog = new Catalog(pid,
+                    startTime,
+                    Arrays.copyOf(sampleIds, sampleSize),
+                    Arrays.copyOf(sampleLabels, sampleSize),
+                    truncated);
+            catalogGeneration++;
+            Arrays.fill(sampleLabels, 0, sampleSize, null);
+        }
+
+        timestamps[index] = timestamp;
+        catalogs[index] = catalog;
+
+        head++;
+    }
+
+    /**
+     * Returns index of the counter in the last sample.
+     *
+     * @param label of the counter
+     * @return index of the counter or -1 if the last sample has no counter with the label
+     */
+    public int indexOf(final String label) {
+        final String[] labels = catalog.labels;
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].equals(label)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of the counters of the last sample
+     */
+    public int numberOfCounters() {
+        return catalog.ids.length;
+    }
+
+    /**
+     * Returns value of a counter of the last sample.
+     *
+     * @param counterIndex index of the counter in the last sample
+     * @return value of the counter
+     */
+    public long value(final int counterIndex) {
+        if (head == 0) {
+            throw new IllegalStateException("No samples");
+        }
+        if (counterIndex < 0 || counterIndex >= catalog.ids.length) {
+            throw new IndexOutOfBoundsException("Incorrect index of counter: " + counterIndex);
+        }
+        return values[(int) ((head - 1) % numberOfSamples) * maxNumberOfCounters + counterIndex];
+    }
+
+    /**
+     * @return a number which is incremented every time the set of the counters of the samples changes
+     */
+    public long catalogGeneration() {
+        return catalogGeneration;
+    }
+
+    /**
+     * Appends all kept samples, from the oldest to the newest one, to the archive.
+     *
+     * @param archive to write the samples to
+     * @throws IOException if the samples cannot be written
+     */
+    public void dump(final MCountersArchiveWriter archive) throws IOException {
+        final int size = size();
+        for (long i = head - size; i < head; i++) {
+            final int index = (int) (i % numberOfSamples);
+            final Catalog sampleCatalog = catalogs[index];
+            archive.writeSample(sampleCatalog.pid,
+                    sampleCatalog.startTime,
+                    sampleCatalog.ids,
+                    sampleCatalog.labels,
+                    values,
+                    index * maxNumberOfCounters,
+                    sampleCatalog.ids.length,
+                    timestamps[index]);
+        }
+    }
+
+    /**
+     * Copies the kept samples, so they can be dumped by another thread while this ring goes on sampling.
+     *
+     * @return a ring with the same samples
+     */
+    public MCountersFlightRing copy() {
+        final MCountersFlightRing result = new MCountersFlightRing(numberOfSamples, maxNumberOfCounters);
+        System.arraycopy(timestamps, 0, result.timestamps, 0, numberOfSamples);
+        System.arraycopy(catalogs, 0, result.catalogs, 0, numberOfSamples); // the catalogs are immutable
+        System.arraycopy(values, 0, result.values, 0, values.length);
+        result.head = head;
+        result.catalog = catalog;
+        result.catalogGeneration = catalogGeneration;
+        return result;
+    }
+
+    /**
+     * Forgets all kept samples.
+     */
+    public void clear() {
+        head = 0;
+        Arrays.fill(catalogs, null);
+    }
+
+    private static final class Catalog {
+        private final long pid;
+        private final long startTime;
+        private final long[] ids;
+        private final String[] labels;
+        private final boolean truncated;
+
+        Catalog(final long pid,
+                final long startTime,
+                final long[] ids,
+                final String[] labels,
+                final boolean truncated) {
+            this.pid = pid;
+            this.startTime = startTime;
+            this.ids = ids;
+            this.labels = labels;
+            this.truncated = truncated;
+        }
+    }
+
+    private class ValuesCollector implements MCounterValueConsumer {
+        @Override
+        public void accept(final long id, final long value) {
+            final long[] ids = catalog.ids;
+            if (sampleSize == ids.length && catalog.truncated) { // the rest counters are ignored
+                return;
+            }
+            if (sampleSize >= ids.length || ids[sampleSize] != id) {
+                sampleMatchesCatalog = false;
+                return;
+            }
+            values[valuesOffset + sampleSize++] = value;
+        }
+    }
+
+    private class CountersCollector implements MCounterConsumer {
+        @Override
+        public void accept(final long id, final String label, final long value) {
+            if (sampleSize == maxNumberOfCounters) {
+                truncated = true;
+                return;
+            }
+            sampleIds[sampleSize] = id;
+            sampleLabels[sampleSize] = label;
+            values[valuesOffset + sampleSize] = value;
+            sampleSize++;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.recorder;
+
+import org.java.mc4j.MCountersReader;
+import org.java.mc4j.cli.Application;
+import org.java.mc4j.cli.Options;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples counters' files at a fixed interval and appends the samples to archives, one archive per counters' file.
+ * See {@link MCountersArchiveLayout} for the format of the archives and {@link MCountersArchiveReader}
+ * to read them.
+ * <p>
+ * If a counters' file disappears, its sampling is paused until the file appears again. If the file is recreated
+ * by another process, the recorder switches to the new file.
+ * <p>
+ * Optionally, the recorder keeps tiers of rollups of each archive up to date (see {@link MCountersRollup}).
+ */
+public class MCountersRecorder extends Application {
+    public static final String ARCHIVE_FILE_EXTENSION = ".mca";
+
+    private final Options.Argumented files;
+    private final Options.Argumented directory;
+    private final Options.Argumented interval;
+    private final Options.Argumented rollups;
+    private final Options.Argumented series;
+
+    public MCountersRecorder(final String[] args) {
+        super("mcrecorder", args);
+
+        withDescription("Samples counters' files periodically and appends the samples to compact archives.");
+        withUsage("-f /dev/shm/mcounters.dat -d /var/lib/mcounters -i 1000",
+                "Samples the 'mcounters.dat' file every second into the " +
+                        "'/var/lib/mcounters/mcounters.dat" + ARCHIVE_FILE_EXTENSION + "' archive.");
+
+        files = withArgumented("files", 'f', "FILES")
+                .require()
+                .withDescription("Comma-separated paths to counters' files to be sampled.");
+        directory = withArgumented("dir", 'd', "DIR")
+                .withDefaultArgumentValue(".")
+                .withDescription("Directory of the archives. An archive is named after its counters' file " +
+                        "with the '" + ARCHIVE_FILE_EXTENSION + "' extension.");
+        interval = withArgumented("interval", 'i', "MILLIS")
+                .withDefaultArgumentValue("1000")
+                .withDescription("Sampling interval in milliseconds.");
+        rollups = withArgumented("rollups", 'r', "TIERS")
+                .withDescription("Tiers of rollups to be kept next to the archives, for example " +
+                        "'1s:6h,10s:3d,1m:30d' keeps 1 second windows for 6 hours, 10 seconds windows for 3 days " +
+                        "and 1 minute windows for 30 days.");
+        series = withArgumented("series", 's', "NUMBER")
+                .withDefaultArgumentValue("256")
+                .withDescription("Max number of counters' labels a tier of rollups can keep.");
+    }
+
+    @Override
+    protected void doWork() throws Throwable {
+        final long intervalMillis = interval.longValue();
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Incorrect interval: " + intervalMillis);
+        }
+
+        final File archivesDirectory = directory.fileValue();
+        archivesDirectory.mkdirs();
+
+        final List<Source> sources = new ArrayList<>();
+        for (final String fileName : files.stringValue().split(",")) {
+            if (fileName.trim().isEmpty()) {
+                continue;
+            }
+            final File countersFile = new File(fileName.trim());
+            sources.add(new Source(countersFile,
+                    archivesDirectory,
+                    rollups.isSet() ? rollups.stringValue() : null,
+                    series.intValue()));
+        }
+
+        MCountersSource.sampleUntilShutdown(TimeUnit.MILLISECONDS.toNanos(intervalMillis), sources, now -> {
+            for (final Source source : sources) {
+                source.sample(now);
+            }
+        });
+    }
+
+    public static void main(final String[] args) {
+        new MCountersRecorder(args).start();
+    }
+
+    private static final class Source extends MCountersSource {
+        private final File archivesDirectory;
+        private final File archiveFile;
+        private final String rollupTiers;
+        private final int maxNumberOfSeries;
+
+        private MCountersArchiveWriter archive;
+        private MCountersArchiveReader archiveTail;
+        private MCountersRollup rollup;
+
+        Source(final File countersFile,
+               final File archivesDirectory,
+               final String rollupTiers,
+               final int maxNumberOfSeries) {
+            super(countersFile);
+            this.archivesDirectory = archivesDirectory;
+            this.archiveFile = new File(archivesDirectory, countersFile.getName() + ARCHIVE_FILE_EXTENSION);
+            this.rollupTiers = rollupTiers;
+            this.maxNumberOfSeries = maxNumberOfSeries;
+        }
+
+        void sample(final long timestamp) {
+            try {
+                final MCountersReader reader = followFile();
+                if (reader == null) {
+                    return;
+                }
+
+                if (archive == null) {
+                    openArchive();
+                }
+
+                archive.writeSample(reader, timestamp);
+
+                if (rollup != null) {
+                    while (archiveTail.next()) {
+                        rollup.update(archiveTail);
+                    }
+                }
+
+                resetError();
+            } catch (final IOException e) {
+                closeReader();
+                report(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            archive = close(archive);
+            archiveTail = close(archiveTail);
+            rollup = close(rollup);
+        }
+
+        private void openArchive() throws IOException {
+            archive = new MCountersArchiveWriter(archiveFile);
+
+            if (rollupTiers == null) {
+                return;
+            }
+
+            try {
+                archiveTail = new MCountersArchiveReader(archiveFile, archive.length());
+                rollup = new MCountersRollup(archivesDirectory,
+                        countersFile.getName(),
+                        rollupTiers,
+                        maxNumberOfSeries);
+            } catch (final IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private <T extends AutoCloseable> T close(final T closeable) {
+            if (closeable != null) {
+                try {
+                    closeable.close();
+                } catch (final Exception e) {
+                    report(e);
+                }
+            }
+            return null;
+        }
+    }
+}
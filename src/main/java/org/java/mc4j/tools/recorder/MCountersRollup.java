@@ -0,0 +1,265 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.java.mc4j.MCountersUtils.formatDuration;
+import static org.java.mc4j.MCountersUtils.parseDuration;
+
+/**
+ * Tiers of rollups of an archive of counters' samples. Each tier is a memory-mapped ring of fixed windows
+ * (see {@link MCountersRollupTier}) defined by its resolution and retention. The tiers are described by
+ * an expression like "1s:6h,10s:3d,1m:30d", which means windows of 1 second are kept for 6 hours, windows of
+ * 10 seconds are kept for 3 days and windows of 1 minute are kept for 30 days. Supported units are 'ms', 's',
+ * 'm', 'h' and 'd'.
+ * <p>
+ * The rollups are updated incrementally sample by sample:
+ * <pre>
+ * try (MCountersRollup rollup = new MCountersRollup(directory, "mcounters.dat", "1s:6h,1m:30d", 256);
+ *      MCountersArchiveReader reader = new MCountersArchiveReader(archiveFile)) {
+ *     while (reader.next()) {
+ *         rollup.update(reader);
+ *     }
+ * }
+ * </pre>
+ * Samples older than the last sample of a tier are skipped, so an archive can be rolled up repeatedly.
+ * <p>
+ * <b>IMPORTANT:</b> this class isn't thread safe.
+ */
+public final class MCountersRollup implements AutoCloseable {
+    public static final String TIER_FILE_EXTENSION = ".mct";
+
+    private final MCountersRollupTier[] tiers;
+
+    private MCountersArchiveReader lastReader;
+    private int lastGeneration;
+    private int[][] seriesIndexes;
+
+    /**
+     * Opens existing tiers or creates new ones to update them.
+     *
+     * @param directory         of the tiers' files
+     * @param name              of the rollups, usually the name of the counters' file
+     * @param tiers             expression like "1s:6h,10s:3d,1m:30d"
+     * @param maxNumberOfSeries number of counters' labels a tier can keep
+     * @throws IOException if a tier cannot be opened or created
+     */
+    public MCountersRollup(final File directory,
+                           final String name,
+                           final String tiers,
+                           final int maxNumberOfSeries) throws IOException {
+        final List<MCountersRollupTier> result = new ArrayList<>();
+
+        try {
+            for (final String tier : tiers.split(",")) {
+                if (tier.trim().isEmpty()) {
+                    continue;
+                }
+
+                final String[] resolutionRetention = tier.split(":");
+                if (resolutionRetention.length != 2) {
+                    throw new IllegalArgumentException("Tier should be specified as RESOLUTION:RETENTION: " + tier);
+                }
+
+                final long resolution = parseDuration(resolutionRetention[0]);
+                final long retention = parseDuration(resolutionRetention[1]);
+                if (resolution <= 0 || retention < resolution) {
+                    throw new IllegalArgumentException("Incorrect tier: " + tier);
+                }
+
+                final long numberOfWindows = (retention + resolution - 1) / resolution;
+                if (numberOfWindows > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Too many windows in the tier: " + tier);
+                }
+
+                result.add(new MCountersRollupTier(tierFile(directory, name, resolution),
+                        resolution,
+                        (int) numberOfWindows,
+                        maxNumberOfSeries));
+            }
+        } catch (final IOException | RuntimeException e) {
+            try {
+                closeAll(result);
+            } catch (final IOException ignore) {
+            }
+            throw e;
+        }
+
+        this.tiers = sort(result);
+    }
+
+    /**
+     * Opens all existing tiers read-only to query them.
+     *
+     * @param directory of the tiers' files
+     * @param name      of the rollups, usually the name of the counters' file
+     * @throws IOException if a tier cannot be opened
+     */
+    public MCountersRollup(final File directory, final String name) throws IOException {
+        final String prefix = name + ".";
+
+        final File[] tierFiles = directory.listFiles((dir, fileName) ->
+                fileName.startsWith(prefix) && fileName.endsWith(TIER_FILE_EXTENSION));
+
+        final List<MCountersRollupTier> result = new ArrayList<>();
+
+        try {
+            if (tierFiles != null) {
+                for (final File tierFile : tierFiles) {
+                    result.add(new MCountersRollupTier(tierFile));
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            try {
+                closeAll(result);
+            } catch (final IOException ignore) {
+            }
+            throw e;
+        }
+
+        this.tiers = sort(result);
+    }
+
+    /**
+     * Returns the tiers ordered by resolution from the finest to the coarsest one.
+     *
+     * @return the tiers
+     */
+    public List<MCountersRollupTier> tiers() {
+        return Arrays.asList(tiers);
+    }
+
+    /**
+     * Rolls up the current sample of the reader into all the tiers.
+     *
+     * @param reader of an archive positioned to a sample
+     */
+    public void update(final MCountersArchiveReader reader) {
+        final int numberOfCounters = reader.numberOfCounters();
+
+        if (reader != lastReader || reader.generation() != lastGeneration) {
+            seriesIndexes = new int[tiers.length][numberOfCounters];
+
+            for (int t = 0; t < tiers.length; t++) {
+                for (int i = 0; i < numberOfCounters; i++) {
+                    seriesIndexes[t][i] = tiers[t].seriesIndex(reader.label(i));
+                }
+            }
+
+            lastReader = reader;
+            lastGeneration = reader.generation();
+        }
+
+        final long timestamp = reader.timestamp();
+
+        for (int t = 0; t < tiers.length; t++) {
+            final MCountersRollupTier tier = tiers[t];
+
+            if (timestamp <= tier.lastTimestamp()) {
+                continue;
+            }
+
+            final int[] tierSeriesIndexes = seriesIndexes[t];
+
+            for (int i = 0; i < numberOfCounters; i++) {
+                final int seriesIndex = tierSeriesIndexes[i];
+                if (seriesIndex >= 0) {
+                    tier.update(seriesIndex, timestamp, reader.value(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Selects the coarsest tier, which resolution is still not coarser than the requested one, and passes
+     * its windows in the range {@code [from, to]} to the consumer. If all the tiers are coarser than requested,
+     * the finest tier is used. If the selected tier doesn't keep {@code from} anymore, the finest coarser tier,
+     * which keeps it, is used instead, or the coarsest tier if none does.
+     *
+     * @param label      of the counter
+     * @param from       start of the range, inclusive
+     * @param to         end of the range, inclusive
+     * @param resolution requested in millis
+     * @param consumer   of the windows
+     * @return resolution of the tier used or {@code 0} if there are no tiers
+     */
+    public long query(final String label,
+                      final long from,
+                      final long to,
+                      final long resolution,
+                      final MCountersWindowConsumer consumer) {
+        if (tiers.length == 0) {
+            return 0;
+        }
+
+        int selectedIndex = 0;
+        for (int i = 0; i < tiers.length; i++) {
+            if (tiers[i].resolution() <= resolution) {
+                selectedIndex = i;
+            }
+        }
+        while (selectedIndex < tiers.length - 1 && tiers[selectedIndex].firstTimestamp() > from) {
+            selectedIndex++; // the range is older than the retention of the tier
+        }
+        final MCountersRollupTier selected = tiers[selectedIndex];
+
+        selected.forEachWindow(label, from, to, consumer);
+
+        return selected.resolution();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeAll(Arrays.asList(tiers));
+    }
+
+    private static File tierFile(final File directory, final String name, final long resolution) {
+        return new File(directory, name + "." + formatDuration(resolution) + TIER_FILE_EXTENSION);
+    }
+
+    private static MCountersRollupTier[] sort(final List<MCountersRollupTier> tiers) {
+        tiers.sort(Comparator.comparingLong(MCountersRollupTier::resolution));
+        return tiers.toArray(new MCountersRollupTier[tiers.size()]);
+    }
+
+    private static void closeAll(final List<MCountersRollupTier> tiers) throws IOException {
+        IOException exception = null;
+        for (final MCountersRollupTier tier : tiers) {
+            try {
+                tier.close();
+            } catch (final IOException e) {
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
@@ -0,0 +1,503 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.recorder;
+
+import org.java.mc4j.DirectMemoryBuffer;
+import org.java.mc4j.MCountersUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * <p>A memory-mapped file of one tier of rollups. The tier keeps a ring of fixed windows per series
+ * (a counter's label). Each window holds min, max, last and sum of the values and the number of values which
+ * have got to the window. A window is reused when its ring position is taken by a newer window.
+ * <p>
+ * <b>Header</b>
+ * <pre>
+ *   0                   1                   2                   3
+ *   0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ *  +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ *  |                         Magic 'MCRT'                          |
+ *  +---------------------------------------------------------------+
+ *  |                         Tier version                          |
+ *  +---------------------------------------------------------------+
+ *  |                      Resolution millis                        |
+ *  |                                                               |
+ *  +---------------------------------------------------------------+
+ *  |                      Number of windows                        |
+ *  +---------------------------------------------------------------+
+ *  |                   Max number of series                        |
+ *  +---------------------------------------------------------------+
+ *  |                     Number of series                          |
+ *  +---------------------------------------------------------------+
+ *  |                     4 bytes of padding                        |
+ *  +---------------------------------------------------------------+
+ *  |                Timestamp of the last update                   |
+ *  |                                                               |
+ *  +---------------------------------------------------------------+
+ *  |                     88 bytes of padding                      ...
+ * ...                                                              |
+ *  +---------------------------------------------------------------+
+ * </pre>
+ * <p>
+ * <b>Series</b>
+ * <pre>
+ *   0                   1                   2                   3
+ *   0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ *  +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ *  |                     Series[0]'s label length                  |
+ *  +---------------------------------------------------------------+
+ *  |               380 bytes of the Series[0]'s label             ...
+ * ...                                                              |
+ *  +---------------------------------------------------------------+
+ *  |   Window[0]'s start time millis, number of values, min, max,  |
+ *  |              last and sum of the values (6 longs)            ...
+ * ...                                                              |
+ *  +---------------------------------------------------------------+
+ *  |               Repeats for Window[1]-Window[M]                ...
+ * ...                                                              |
+ *  +---------------------------------------------------------------+
+ *  |              Repeats for Series[1]-Series[N]                 ...
+ * ...                                                              |
+ *  +---------------------------------------------------------------+
+ * </pre>
+ * <b>IMPORTANT:</b> this class isn't thread safe. A tier file must be updated by one instance of the class only,
+ * but can be queried by other instances, opened read-only, at the same time.
+ */
+public final class MCountersRollupTier implements AutoCloseable {
+    public static final int TIER_MAGIC = 0x4D435254; // 'MCRT'
+    public static final int TIER_VERSION = 1;
+    public static final Charset STRING_CHARSET = StandardCharsets.UTF_8;
+
+    private static final int HEADER_MAGIC_OFFSET = 0;
+    private static final int HEADER_VERSION_OFFSET = HEADER_MAGIC_OFFSET + MCountersUtils.SIZE_OF_INT;
+    private static final int HEADER_RESOLUTION_OFFSET = HEADER_VERSION_OFFSET + MCountersUtils.SIZE_OF_INT;
+    private static final int HEADER_NUMBER_OF_WINDOWS_OFFSET = HEADER_RESOLUTION_OFFSET + MCountersUtils.SIZE_OF_LONG;
+    private static final int HEADER_MAX_NUMBER_OF_SERIES_OFFSET =
+            HEADER_NUMBER_OF_WINDOWS_OFFSET + MCountersUtils.SIZE_OF_INT;
+    private static final int HEADER_NUMBER_OF_SERIES_OFFSET =
+            HEADER_MAX_NUMBER_OF_SERIES_OFFSET + MCountersUtils.SIZE_OF_INT;
+    private static final int HEADER_LAST_TIMESTAMP_OFFSET =
+            HEADER_NUMBER_OF_SERIES_OFFSET + MCountersUtils.SIZE_OF_INT * 2;
+    private static final int HEADER_LENGTH = MCountersUtils.SIZE_OF_CACHE_LINE * 2;
+
+    private static final int SERIES_LABEL_MAX_LENGTH = MCountersUtils.SIZE_OF_CACHE_LINE * 6 -
+            MCountersUtils.SIZE_OF_INT;
+    private static final int SERIES_LABEL_LENGTH_OFFSET = 0;
+    private static final int SERIES_LABEL_OFFSET = SERIES_LABEL_LENGTH_OFFSET + MCountersUtils.SIZE_OF_INT;
+    private static final int SERIES_WINDOWS_OFFSET = SERIES_LABEL_OFFSET + SERIES_LABEL_MAX_LENGTH;
+
+    private static final int WINDOW_START_OFFSET = 0;
+    private static final int WINDOW_COUNT_OFFSET = WINDOW_START_OFFSET + MCountersUtils.SIZE_OF_LONG;
+    private static final int WINDOW_MIN_OFFSET = WINDOW_COUNT_OFFSET + MCountersUtils.SIZE_OF_LONG;
+    private static final int WINDOW_MAX_OFFSET = WINDOW_MIN_OFFSET + MCountersUtils.SIZE_OF_LONG;
+    private static final int WINDOW_LAST_OFFSET = WINDOW_MAX_OFFSET + MCountersUtils.SIZE_OF_LONG;
+    private static final int WINDOW_SUM_OFFSET = WINDOW_LAST_OFFSET + MCountersUtils.SIZE_OF_LONG;
+    private static final int WINDOW_LENGTH = WINDOW_SUM_OFFSET + MCountersUtils.SIZE_OF_LONG;
+
+    /**
+     * Returns length of a tier file.
+     *
+     * @param numberOfWindows   the tier keeps per series
+     * @param maxNumberOfSeries the tier can keep
+     * @return length of the tier file
+     */
+    public static long tierLength(final int numberOfWindows, final int maxNumberOfSeries) {
+        return HEADER_LENGTH + (long) maxNumberOfSeries * seriesLength(numberOfWindows);
+    }
+
+    private static long seriesLength(final int numberOfWindows) {
+        return SERIES_WINDOWS_OFFSET + (long) numberOfWindows * WINDOW_LENGTH;
+    }
+
+    private final File tierFile;
+    private final boolean readOnly;
+    private final MappedByteBuffer buffer;
+    private final DirectMemoryBuffer header;
+    private final DirectMemoryBuffer series;
+
+    private final long resolution;
+    private final int numberOfWindows;
+    private final int maxNumberOfSeries;
+    private final int seriesLength;
+
+    private final Map<String, Integer> seriesIndexes = new HashMap<>();
+    private int loadedNumberOfSeries;
+    private long lastTimestamp;
+
+    /**
+     * Opens an existing tier file or creates a new one.
+     *
+     * @param tierFile          to be opened or created
+     * @param resolution        length of a window in millis
+     * @param numberOfWindows   the tier keeps per series
+     * @param maxNumberOfSeries the tier can keep
+     * @throws IOException if the file cannot be mapped or has an incompatible layout
+     */
+    public MCountersRollupTier(final File tierFile,
+                               final long resolution,
+                               final int numberOfWindows,
+                               final int maxNumberOfSeries) throws IOException {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("Incorrect resolution: " + resolution);
+        }
+        if (numberOfWindows <= 0) {
+            throw new IllegalArgumentException("Incorrect number of windows: " + numberOfWindows);
+        }
+        if (maxNumberOfSeries <= 0) {
+            throw new IllegalArgumentException("Incorrect max number of series: " + maxNumberOfSeries);
+        }
+
+        final long tierLength = tierLength(numberOfWindows, maxNumberOfSeries);
+        if (tierLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The tier is too large: " + tierLength + " bytes");
+        }
+
+        this.tierFile = tierFile;
+        readOnly = false;
+
+        final boolean exists = tierFile.exists() && tierFile.length() > 0;
+
+        try (FileChannel channel = FileChannel.open(tierFile.toPath(), CREATE, READ, WRITE)) {
+            if (exists && channel.size() != tierLength) {
+                throw new IOException("Unexpected length of the tier file " + tierFile.getAbsolutePath() + ": " +
+                        channel.size());
+            }
+            buffer = channel.map(READ_WRITE, 0, tierLength); // the file isn't pre-touched intentionally,
+            // so the windows never reached don't take space on the disk
+        }
+
+        header = new DirectMemoryBuffer(buffer, 0, HEADER_LENGTH);
+        series = new DirectMemoryBuffer(buffer, HEADER_LENGTH, (int) tierLength - HEADER_LENGTH);
+
+        if (!exists) {
+            header.putLong(HEADER_RESOLUTION_OFFSET, resolution);
+            header.putInt(HEADER_NUMBER_OF_WINDOWS_OFFSET, numberOfWindows);
+            header.putInt(HEADER_MAX_NUMBER_OF_SERIES_OFFSET, maxNumberOfSeries);
+            header.putInt(HEADER_VERSION_OFFSET, TIER_VERSION);
+            header.putIntVolatile(HEADER_MAGIC_OFFSET, TIER_MAGIC); // HB write
+        }
+
+        this.resolution = resolution;
+        this.numberOfWindows = numberOfWindows;
+        this.maxNumberOfSeries = maxNumberOfSeries;
+
+        seriesLength = (int) seriesLength(numberOfWindows);
+
+        validateHeader();
+        loadSeries();
+
+        lastTimestamp = lastTimestamp();
+    }
+
+    /**
+     * Opens an existing tier file read-only to query it.
+     *
+     * @param tierFile to be opened
+     * @throws IOException if the file cannot be mapped or isn't a tier file
+     */
+    public MCountersRollupTier(final File tierFile) throws IOException {
+        this.tierFile = tierFile;
+        readOnly = true;
+
+        buffer = MCountersUtils.mapExistingFileReadOnly(tierFile);
+
+        if (buffer.capacity() < HEADER_LENGTH) {
+            throw new IOException("Not a tier file: " + tierFile.getAbsolutePath());
+        }
+
+        header = new DirectMemoryBuffer(buffer, 0, HEADER_LENGTH);
+        series = new DirectMemoryBuffer(buffer, HEADER_LENGTH, buffer.capacity() - HEADER_LENGTH);
+
+        resolution = header.getLong(HEADER_RESOLUTION_OFFSET);
+        numberOfWindows = header.getInt(HEADER_NUMBER_OF_WINDOWS_OFFSET);
+        maxNumberOfSeries = header.getInt(HEADER_MAX_NUMBER_OF_SERIES_OFFSET);
+
+        seriesLength = (int) seriesLength(numberOfWindows);
+
+        validateHeader();
+        loadSeries();
+    }
+
+    public File tierFile() {
+        return tierFile;
+    }
+
+    /**
+     * Returns length of a window in millis.
+     *
+     * @return resolution of the tier
+     */
+    public long resolution() {
+        return resolution;
+    }
+
+    public int numberOfWindows() {
+        return numberOfWindows;
+    }
+
+    /**
+     * Returns how long the tier keeps a window.
+     *
+     * @return retention of the tier in millis
+     */
+    public long retention() {
+        return resolution * numberOfWindows;
+    }
+
+    public int maxNumberOfSeries() {
+        return maxNumberOfSeries;
+    }
+
+    public int numberOfSeries() {
+        return header.getIntVolatile(HEADER_NUMBER_OF_SERIES_OFFSET); // HB read
+    }
+
+    /**
+     * Returns timestamp of the last value added to the tier.
+     *
+     * @return timestamp of the last update or {@code 0} if the tier is empty
+     */
+    public long lastTimestamp() {
+        return header.getLongVolatile(HEADER_LAST_TIMESTAMP_OFFSET);
+    }
+
+    /**
+     * Returns start of the oldest window the tier keeps.
+     *
+     * @return timestamp of the oldest window, which may be empty
+     */
+    public long firstTimestamp() {
+        return (Math.floorDiv(lastTimestamp(), resolution) - numberOfWindows + 1) * resolution;
+    }
+
+    /**
+     * Returns index of the series with the label specified. The series is added if absent.
+     *
+     * @param label of the series, a too long one is truncated as it's stored
+     * @return index of the series or {@code -1} if there is no free space to add new series
+     */
+    public int seriesIndex(final String label) {
+        final Integer index = seriesIndexes.get(storedLabel(label));
+        if (index != null) {
+            return index;
+        }
+
+        if (readOnly) {
+            throw new IllegalStateException("The tier is read-only");
+        }
+
+        final int numberOfSeries = numberOfSeries();
+        if (numberOfSeries >= maxNumberOfSeries) {
+            return -1;
+        }
+
+        final byte[] labelBytes = label.getBytes(STRING_CHARSET);
+        final int labelLength = Math.min(labelBytes.length, SERIES_LABEL_MAX_LENGTH);
+
+        final int seriesOffset = numberOfSeries * seriesLength;
+        series.putBytes(seriesOffset + SERIES_LABEL_OFFSET, labelBytes, 0, labelLength);
+        series.putInt(seriesOffset + SERIES_LABEL_LENGTH_OFFSET, labelLength);
+
+        header.putIntOrdered(HEADER_NUMBER_OF_SERIES_OFFSET, numberOfSeries + 1); // HB write
+
+        seriesIndexes.put(new String(labelBytes, 0, labelLength, STRING_CHARSET), numberOfSeries); // as it's loaded
+        loadedNumberOfSeries = numberOfSeries + 1;
+
+        return numberOfSeries;
+    }
+
+    /**
+     * Adds a value to the window of the series the timestamp belongs to. A value older than the window kept
+     * at the window's position in the ring is ignored.
+     *
+     * @param seriesIndex index of the series
+     * @param timestamp   of the value
+     * @param value       to be added
+     */
+    public void update(final int seriesIndex, final long timestamp, final long value) {
+        if (timestamp > lastTimestamp) {
+            lastTimestamp = timestamp;
+            header.putLongOrdered(HEADER_LAST_TIMESTAMP_OFFSET, timestamp);
+        }
+
+        final long windowIndex = Math.floorDiv(timestamp, resolution);
+        final long windowStart = windowIndex * resolution;
+
+        final int windowOffset = windowOffset(seriesIndex, windowIndex);
+
+        final long count = series.getLong(windowOffset + WINDOW_COUNT_OFFSET);
+        final long currentWindowStart = series.getLong(windowOffset + WINDOW_START_OFFSET);
+
+        if (count > 0 && currentWindowStart == windowStart) {
+            series.putLong(windowOffset + WINDOW_MIN_OFFSET,
+                    Math.min(series.getLong(windowOffset + WINDOW_MIN_OFFSET), value));
+            series.putLong(windowOffset + WINDOW_MAX_OFFSET,
+                    Math.max(series.getLong(windowOffset + WINDOW_MAX_OFFSET), value));
+            series.putLong(windowOffset + WINDOW_LAST_OFFSET, value);
+            series.putLong(windowOffset + WINDOW_SUM_OFFSET,
+                    series.getLong(windowOffset + WINDOW_SUM_OFFSET) + value);
+            series.putLongOrdered(windowOffset + WINDOW_COUNT_OFFSET, count + 1);
+            return;
+        }
+
+        if (count > 0 && currentWindowStart > windowStart) { // too old value
+            return;
+        }
+
+        series.putLongVolatile(windowOffset + WINDOW_COUNT_OFFSET, 0); // the window is being reset
+        series.putLong(windowOffset + WINDOW_START_OFFSET, windowStart);
+        series.putLong(windowOffset + WINDOW_MIN_OFFSET, value);
+        series.putLong(windowOffset + WINDOW_MAX_OFFSET, value);
+        series.putLong(windowOffset + WINDOW_LAST_OFFSET, value);
+        series.putLong(windowOffset + WINDOW_SUM_OFFSET, value);
+        series.putLongOrdered(windowOffset + WINDOW_COUNT_OFFSET, 1); // HB write
+    }
+
+    /**
+     * Passes all windows of the series, which intersect with the range {@code [from, to]} and are still kept
+     * by the tier, to the consumer in the order of time.
+     *
+     * @param label    of the series
+     * @param from     start of the range, inclusive
+     * @param to       end of the range, inclusive
+     * @param consumer of the windows
+     */
+    public void forEachWindow(final String label, final long from, final long to,
+                              final MCountersWindowConsumer consumer) {
+        final Integer seriesIndex = findSeriesIndex(label);
+        if (seriesIndex == null || from > to) {
+            return;
+        }
+
+        final long lastWindowIndex = Math.floorDiv(lastTimestamp(), resolution);
+
+        final long toWindowIndex = Math.min(Math.floorDiv(to, resolution), lastWindowIndex);
+        final long fromWindowIndex = Math.max(Math.floorDiv(from, resolution), lastWindowIndex - numberOfWindows + 1);
+
+        for (long windowIndex = fromWindowIndex; windowIndex <= toWindowIndex; windowIndex++) {
+            final long windowStart = windowIndex * resolution;
+
+            final int windowOffset = windowOffset(seriesIndex, windowIndex);
+
+            final long count = series.getLongVolatile(windowOffset + WINDOW_COUNT_OFFSET); // HB read
+            if (count == 0 || series.getLong(windowOffset + WINDOW_START_OFFSET) != windowStart) {
+                continue;
+            }
+
+            final long min = series.getLong(windowOffset + WINDOW_MIN_OFFSET);
+            final long max = series.getLong(windowOffset + WINDOW_MAX_OFFSET);
+            final long last = series.getLong(windowOffset + WINDOW_LAST_OFFSET);
+            final long sum = series.getLong(windowOffset + WINDOW_SUM_OFFSET);
+
+            if (series.getLongVolatile(windowOffset + WINDOW_COUNT_OFFSET) == 0 ||
+                    series.getLong(windowOffset + WINDOW_START_OFFSET) != windowStart) { // the window
+                // has been reset while we were reading it
+                continue;
+            }
+
+            consumer.accept(windowStart, count, min, max, last, sum);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!readOnly) {
+            buffer.force();
+        }
+        MCountersUtils.unmap(buffer);
+    }
+
+    private int windowOffset(final int seriesIndex, final long windowIndex) {
+        return seriesIndex * seriesLength + SERIES_WINDOWS_OFFSET +
+                (int) Math.floorMod(windowIndex, (long) numberOfWindows) * WINDOW_LENGTH;
+    }
+
+    private Integer findSeriesIndex(final String label) {
+        final String storedLabel = storedLabel(label);
+        Integer result = seriesIndexes.get(storedLabel);
+        if (result == null && readOnly) {
+            loadSeries(); // new series might have been added by the updater
+            result = seriesIndexes.get(storedLabel);
+        }
+        return result;
+    }
+
+    private static String storedLabel(final String label) {
+        final byte[] labelBytes = label.getBytes(STRING_CHARSET);
+        return labelBytes.length <= SERIES_LABEL_MAX_LENGTH ?
+                label :
+                new String(labelBytes, 0, SERIES_LABEL_MAX_LENGTH, STRING_CHARSET);
+    }
+
+    private void validateHeader() throws IOException {
+        if (header.getIntVolatile(HEADER_MAGIC_OFFSET) != TIER_MAGIC) { // HB read
+            throw new IOException("Not a tier file: " + tierFile.getAbsolutePath());
+        }
+        final int version = header.getInt(HEADER_VERSION_OFFSET);
+        if (version != TIER_VERSION) {
+            throw new IOException("Unexpected version of the tier file: " + version);
+        }
+        if (header.getLong(HEADER_RESOLUTION_OFFSET) != resolution ||
+                header.getInt(HEADER_NUMBER_OF_WINDOWS_OFFSET) != numberOfWindows ||
+                header.getInt(HEADER_MAX_NUMBER_OF_SERIES_OFFSET) != maxNumberOfSeries ||
+                resolution <= 0 || numberOfWindows <= 0 || maxNumberOfSeries <= 0 ||
+                tierLength(numberOfWindows, maxNumberOfSeries) != buffer.capacity()) {
+            throw new IOException("Incompatible layout of the tier file: " + tierFile.getAbsolutePath());
+        }
+    }
+
+    private void loadSeries() {
+        final int numberOfSeries = numberOfSeries();
+
+        byte[] labelBytes = new byte[64];
+
+        for (int i = loadedNumberOfSeries; i < numberOfSeries; i++) {
+            final int seriesOffset = i * seriesLength;
+
+            final int labelLength = series.getInt(seriesOffset + SERIES_LABEL_LENGTH_OFFSET);
+            if (labelBytes.length < labelLength) {
+                labelBytes = new byte[labelLength];
+            }
+            series.getBytes(seriesOffset + SERIES_LABEL_OFFSET, labelBytes, 0, labelLength);
+
+            seriesIndexes.put(new String(labelBytes, 0, labelLength, STRING_CHARSET), i);
+        }
+
+        loadedNumberOfSeries = numberOfSeries;
+    }
+}
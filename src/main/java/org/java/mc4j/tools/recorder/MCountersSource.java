@@ -0,0 +1,180 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.recorder;
+
+import org.java.mc4j.MCountersReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * A counters' file sampled by the recorders. The file is followed: if it disappears, the source has no reader
+ * until the file appears again, and if it's recreated by another process, the source switches to the new file.
+ */
+abstract class MCountersSource implements AutoCloseable {
+    protected final File countersFile;
+
+    private MCountersReader reader;
+    private Object fileKey;
+    private String lastError;
+
+    MCountersSource(final File countersFile) {
+        this.countersFile = countersFile;
+    }
+
+    /**
+     * Samples the sources at the interval until the JVM shuts down, then closes them. The missed samples
+     * are skipped. The timestamps are derived from the monotonic clock to keep them ordered.
+     *
+     * @param intervalNanos sampling interval
+     * @param sources       to be closed at the end
+     * @param sample        takes a sample at the timestamp in millis
+     */
+    static void sampleUntilShutdown(final long intervalNanos,
+                                    final List<? extends MCountersSource> sources,
+                                    final LongConsumer sample) {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            running.set(false);
+            try {
+                stopped.await();
+            } catch (final InterruptedException ignore) {
+            }
+        }));
+
+        try {
+            final long startMillis = System.currentTimeMillis();
+            final long startNanos = System.nanoTime();
+
+            long nextSampleTime = startNanos;
+
+            while (running.get()) {
+                final long nanos = System.nanoTime();
+
+                if (nanos - nextSampleTime < 0) {
+                    LockSupport.parkNanos(nextSampleTime - nanos);
+                    continue;
+                }
+
+                sample.accept(startMillis + TimeUnit.NANOSECONDS.toMillis(nanos - startNanos));
+
+                nextSampleTime += intervalNanos;
+                if (nextSampleTime - nanos <= 0) { // we are late, so skip the missed samples
+                    nextSampleTime = nanos + intervalNanos;
+                }
+            }
+        } finally {
+            for (final MCountersSource source : sources) {
+                source.close();
+            }
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Checks whether the file has been removed or recreated and (re)opens the reader if needed.
+     *
+     * @return the reader or {@code null} if there is no file
+     * @throws IOException if the file cannot be opened
+     */
+    protected MCountersReader followFile() throws IOException {
+        final Object currentFileKey = fileKey();
+
+        if (reader != null && !Objects.equals(currentFileKey, fileKey)) { // the file has been removed or recreated
+            closeReader();
+        }
+
+        if (reader == null && currentFileKey != null) {
+            reader = new MCountersReader(countersFile);
+            fileKey = currentFileKey;
+        }
+        return reader;
+    }
+
+    /**
+     * @return the reader of the file or {@code null} if it's not open
+     */
+    protected MCountersReader reader() {
+        return reader;
+    }
+
+    protected void closeReader() {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (final IOException e) {
+            report(e);
+        }
+        reader = null;
+        fileKey = null;
+    }
+
+    /**
+     * Forgets the last error, so it's reported again when it happens next time.
+     */
+    protected synchronized void resetError() {
+        lastError = null;
+    }
+
+    protected void report(final Exception e) {
+        final String error = e.toString();
+        synchronized (this) {
+            if (error.equals(lastError)) { // don't flood the output with the same error every interval
+                return;
+            }
+            lastError = error;
+        }
+        System.err.println(countersFile.getAbsolutePath() + ": " + error);
+    }
+
+    @Override
+    public void close() {
+        closeReader();
+    }
+
+    private Object fileKey() throws IOException {
+        try {
+            final BasicFileAttributes attributes =
+                    Files.readAttributes(countersFile.toPath(), BasicFileAttributes.class);
+            final Object result = attributes.fileKey();
+            return result != null ? result : attributes.creationTime();
+        } catch (final NoSuchFileException e) {
+            return null;
+        }
+    }
+}
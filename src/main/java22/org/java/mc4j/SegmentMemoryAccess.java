@@ -0,0 +1,128 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link MemoryAccess} with the {@code MemorySegment}s of Java 22 over the buffers. The accesses are checked against
+ * the bounds of the segments, which the JIT hoists out of loops.
+ */
+final class SegmentMemoryAccess extends MemoryAccess {
+    private static final VarHandle INT = ValueLayout.JAVA_INT.varHandle();
+    private static final VarHandle LONG = ValueLayout.JAVA_LONG.varHandle();
+
+    @Override
+    String name() {
+        return SEGMENT;
+    }
+
+    @Override
+    Object memory(final ByteBuffer buffer) {
+        return MemorySegment.ofBuffer(buffer.duplicate().clear()); // from the start of the buffer, not its position
+    }
+
+    @Override
+    long baseOffset(final ByteBuffer buffer) {
+        return 0;
+    }
+
+    @Override
+    int getInt(final Object memory, final long offset) {
+        return ((MemorySegment) memory).get(ValueLayout.JAVA_INT, offset);
+    }
+
+    @Override
+    int getIntVolatile(final Object memory, final long offset) {
+        return (int) INT.getVolatile((MemorySegment) memory, offset);
+    }
+
+    @Override
+    void putInt(final Object memory, final long offset, final int value) {
+        ((MemorySegment) memory).set(ValueLayout.JAVA_INT, offset, value);
+    }
+
+    @Override
+    void putIntOrdered(final Object memory, final long offset, final int value) {
+        INT.setRelease((MemorySegment) memory, offset, value);
+    }
+
+    @Override
+    void putIntVolatile(final Object memory, final long offset, final int value) {
+        INT.setVolatile((MemorySegment) memory, offset, value);
+    }
+
+    @Override
+    long getLong(final Object memory, final long offset) {
+        return ((MemorySegment) memory).get(ValueLayout.JAVA_LONG, offset);
+    }
+
+    @Override
+    long getLongVolatile(final Object memory, final long offset) {
+        return (long) LONG.getVolatile((MemorySegment) memory, offset);
+    }
+
+    @Override
+    void putLong(final Object memory, final long offset, final long value) {
+        ((MemorySegment) memory).set(ValueLayout.JAVA_LONG, offset, value);
+    }
+
+    @Override
+    void putLongOrdered(final Object memory, final long offset, final long value) {
+        LONG.setRelease((MemorySegment) memory, offset, value);
+    }
+
+    @Override
+    void putLongVolatile(final Object memory, final long offset, final long value) {
+        LONG.setVolatile((MemorySegment) memory, offset, value);
+    }
+
+    @Override
+    long getAndAddLong(final Object memory, final long offset, final long increment) {
+        return (long) LONG.getAndAdd((MemorySegment) memory, offset, increment);
+    }
+
+    @Override
+    long getAndSetLong(final Object memory, final long offset, final long value) {
+        return (long) LONG.getAndSet((MemorySegment) memory, offset, value);
+    }
+
+    @Override
+    boolean compareAndSwapLong(final Object memory, final long offset, final long expectedValue, final long newValue) {
+        return LONG.compareAndSet((MemorySegment) memory, offset, expectedValue, newValue);
+    }
+
+    @Override
+    void getBytes(final Object memory, final long offset, final byte[] dst, final int dstOffset, final int length) {
+        MemorySegment.copy((MemorySegment) memory, ValueLayout.JAVA_BYTE, offset, dst, dstOffset, length);
+    }
+
+    @Override
+    void putBytes(final Object memory, final long offset, final byte[] src, final int srcOffset, final int length) {
+        MemorySegment.copy(src, srcOffset, (MemorySegment) memory, ValueLayout.JAVA_BYTE, offset, length);
+    }
+}
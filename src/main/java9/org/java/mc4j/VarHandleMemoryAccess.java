@@ -0,0 +1,132 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * {@link MemoryAccess} with the byte buffer view {@code VarHandle}s of Java 9, which check the bounds of the buffers
+ * and need no access to the JDK internals.
+ */
+final class VarHandleMemoryAccess extends MemoryAccess {
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    @Override
+    String name() {
+        return VAR_HANDLE;
+    }
+
+    @Override
+    Object memory(final ByteBuffer buffer) {
+        return buffer.duplicate().clear(); // the indexes are from the start of the buffer as with the addresses
+    }
+
+    @Override
+    long baseOffset(final ByteBuffer buffer) {
+        return 0;
+    }
+
+    @Override
+    int getInt(final Object memory, final long offset) {
+        return (int) INT.get((ByteBuffer) memory, (int) offset);
+    }
+
+    @Override
+    int getIntVolatile(final Object memory, final long offset) {
+        return (int) INT.getVolatile((ByteBuffer) memory, (int) offset);
+    }
+
+    @Override
+    void putInt(final Object memory, final long offset, final int value) {
+        INT.set((ByteBuffer) memory, (int) offset, value);
+    }
+
+    @Override
+    void putIntOrdered(final Object memory, final long offset, final int value) {
+        INT.setRelease((ByteBuffer) memory, (int) offset, value);
+    }
+
+    @Override
+    void putIntVolatile(final Object memory, final long offset, final int value) {
+        INT.setVolatile((ByteBuffer) memory, (int) offset, value);
+    }
+
+    @Override
+    long getLong(final Object memory, final long offset) {
+        return (long) LONG.get((ByteBuffer) memory, (int) offset);
+    }
+
+    @Override
+    long getLongVolatile(final Object memory, final long offset) {
+        return (long) LONG.getVolatile((ByteBuffer) memory, (int) offset);
+    }
+
+    @Override
+    void putLong(final Object memory, final long offset, final long value) {
+        LONG.set((ByteBuffer) memory, (int) offset, value);
+    }
+
+    @Override
+    void putLongOrdered(final Object memory, final long offset, final long value) {
+        LONG.setRelease((ByteBuffer) memory, (int) offset, value);
+    }
+
+    @Override
+    void putLongVolatile(final Object memory, final long offset, final long value) {
+        LONG.setVolatile((ByteBuffer) memory, (int) offset, value);
+    }
+
+    @Override
+    long getAndAddLong(final Object memory, final long offset, final long increment) {
+        return (long) LONG.getAndAdd((ByteBuffer) memory, (int) offset, increment);
+    }
+
+    @Override
+    long getAndSetLong(final Object memory, final long offset, final long value) {
+        return (long) LONG.getAndSet((ByteBuffer) memory, (int) offset, value);
+    }
+
+    @Override
+    boolean compareAndSwapLong(final Object memory, final long offset, final long expectedValue, final long newValue) {
+        return LONG.compareAndSet((ByteBuffer) memory, (int) offset, expectedValue, newValue);
+    }
+
+    @Override
+    void getBytes(final Object memory, final long offset, final byte[] dst, final int dstOffset, final int length) {
+        final ByteBuffer source = ((ByteBuffer) memory).duplicate(); // the position is not shared between threads
+        source.position((int) offset);
+        source.get(dst, dstOffset, length);
+    }
+
+    @Override
+    void putBytes(final Object memory, final long offset, final byte[] src, final int srcOffset, final int length) {
+        final ByteBuffer target = ((ByteBuffer) memory).duplicate();
+        target.position((int) offset);
+        target.put(src, srcOffset, length);
+    }
+}
@@ -24,6 +24,10 @@
 package org.java.mc4j;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
@@ -48,7 +52,7 @@ class MCountersEncoderDecoderTest {
         final int metadataLength = MCountersEncoder.metadataLength(0);
         final int valuesLength = MCountersEncoder.valuesLength(0);
 
-        assertEquals(MCountersUtils.SIZE_OF_INT, staticsLength);
+        assertEquals(MCountersUtils.SIZE_OF_CACHE_LINE * 2, staticsLength); // aligned for the next sections
         assertEquals(0, metadataLength);
         assertEquals(0, valuesLength);
 
@@ -68,7 +72,7 @@ class MCountersEncoderDecoderTest {
 
         encoder.setStatics(statics);
 
-        statics.put("p1", "v1");
+        statics.put("p1", String.join("", Collections.nCopies(staticsLength, "v"))); // doesn't fit
 
         assertThrows(IllegalArgumentException.class, () -> encoder.setStatics(statics));
         assertThrows(IllegalArgumentException.class, () -> encoder.addCounter(0, "cnt1", 100));
@@ -214,6 +218,149 @@ class MCountersEncoderDecoderTest {
         });
     }
 
+    @Test
+    void changes() {
+        final int numberOfCounters = 4;
+        final int numberOfChanges = 4;
+
+        final int staticsLength = MCountersEncoder.staticsLength(null);
+        final int metadataLength = MCountersEncoder.metadataLength(numberOfCounters);
+        final int valuesLength = MCountersEncoder.valuesLength(numberOfCounters);
+        final int changesLength = MCountersEncoder.changesLength(numberOfChanges);
+
+        final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(MCountersLayout.HEADER_LENGTH +
+                staticsLength +
+                metadataLength +
+                valuesLength +
+                changesLength);
+
+        final MCountersEncoder encoder = new MCountersEncoder(
+                byteBuffer,
+                staticsLength,
+                metadataLength,
+                valuesLength,
+                changesLength
+        );
+
+        final MCountersDecoder decoder = MCountersDecoder.prepare(byteBuffer);
+
+        assertEquals(encoder.changes().capacity(), decoder.changes().capacity());
+        assertEquals(0, decoder.getChangesSequence());
+
+        encoder.addCounter(10, LABEL + 10, 0);
+        encoder.addCounter(11, LABEL + 11, 0);
+
+        final List<String> changes = new ArrayList<>();
+        final MCounterChangeConsumer consumer = (slot, id, allocated) ->
+                changes.add(slot + ":" + id + ":" + allocated);
+
+        long sequence = decoder.forEachChange(0, consumer);
+        assertEquals(2, sequence);
+        assertEquals(Arrays.asList("0:10:true", "1:11:true"), changes);
+
+        changes.clear();
+        assertTrue(encoder.freeCounter(10));
+        assertFalse(encoder.freeCounter(10));
+        encoder.addCounter(12, LABEL + 12, 0);
+
+        sequence = decoder.forEachChange(sequence, consumer);
+        assertEquals(4, sequence);
+        assertEquals(Arrays.asList("0:10:false", "0:12:true"), changes);
+
+        changes.clear();
+        sequence = decoder.forEachChange(sequence, consumer);
+        assertEquals(4, sequence);
+        assertTrue(changes.isEmpty());
+
+        encoder.freeCounter(11);
+        encoder.freeCounter(12);
+        encoder.addCounter(13, LABEL + 13, 0);
+        encoder.addCounter(14, LABEL + 14, 0);
+        encoder.addCounter(15, LABEL + 15, 0); // the reader has been lapped
+
+        assertEquals(MCountersDecoder.CHANGES_LOST, decoder.forEachChange(sequence, consumer));
+        assertTrue(changes.isEmpty());
+
+        sequence = decoder.getChangesSequence();
+        assertEquals(9, sequence);
+        assertEquals(9, decoder.forEachChange(sequence, consumer));
+        assertEquals(MCountersDecoder.CHANGES_LOST, decoder.forEachChange(sequence + 1, consumer));
+    }
+
+    @Test
+    void noChanges() {
+        final int staticsLength = MCountersEncoder.staticsLength(null);
+        final int metadataLength = MCountersEncoder.metadataLength(1);
+        final int valuesLength = MCountersEncoder.valuesLength(1);
+
+        assertEquals(0, MCountersEncoder.changesLength(0));
+
+        final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(MCountersLayout.HEADER_LENGTH +
+                staticsLength +
+                metadataLength +
+                valuesLength);
+
+        final MCountersEncoder encoder = new MCountersEncoder(
+                byteBuffer,
+                staticsLength,
+                metadataLength,
+                valuesLength
+        );
+
+        encoder.addCounter(1, LABEL, 0);
+
+        final MCountersDecoder decoder = MCountersDecoder.prepare(byteBuffer);
+
+        assertEquals(MCountersDecoder.CHANGES_LOST, decoder.getChangesSequence());
+        assertEquals(MCountersDecoder.CHANGES_LOST, decoder.forEachChange(0, (slot, id, allocated) ->
+                fail("No changes expected")));
+    }
+
+    @Test
+    void counterSlots() throws MCounterNotFoundException {
+        final int numberOfCounters = 4;
+
+        final int staticsLength = MCountersEncoder.staticsLength(null);
+        final int metadataLength = MCountersEncoder.metadataLength(numberOfCounters);
+        final int valuesLength = MCountersEncoder.valuesLength(numberOfCounters);
+
+        final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(MCountersLayout.HEADER_LENGTH +
+                staticsLength +
+                metadataLength +
+                valuesLength);
+
+        final MCountersEncoder encoder = new MCountersEncoder(
+                byteBuffer,
+                staticsLength,
+                metadataLength,
+                valuesLength
+        );
+
+        encoder.addCounter(10, LABEL + 10, 100);
+        encoder.addCounter(11, LABEL + 11, 110);
+
+        final MCountersDecoder decoder = MCountersDecoder.prepare(byteBuffer);
+
+        assertEquals(0, decoder.getCounterSlot(10));
+        assertEquals(1, decoder.getCounterSlot(11));
+        assertThrows(MCounterNotFoundException.class, () -> decoder.getCounterSlot(12));
+
+        assertEquals(100, decoder.getCounterValue(0, 10));
+        assertEquals(110, decoder.getCounterValue(1, 11));
+        assertThrows(MCounterNotFoundException.class, () -> decoder.getCounterValue(0, 11));
+        assertThrows(MCounterNotFoundException.class, () -> decoder.getCounterValue(2, 12));
+        assertThrows(MCounterNotFoundException.class, () -> decoder.getCounterValue(-1, 10));
+        assertThrows(MCounterNotFoundException.class, () -> decoder.getCounterValue(numberOfCounters, 10));
+
+        assertTrue(encoder.freeCounter(10));
+        assertThrows(MCounterNotFoundException.class, () -> decoder.getCounterValue(0, 10));
+
+        encoder.addCounter(12, LABEL + 12, 120); // reuses the slot
+        assertThrows(MCounterNotFoundException.class, () -> decoder.getCounterValue(0, 10));
+        assertEquals(0, decoder.getCounterSlot(12));
+        assertEquals(120, decoder.getCounterValue(0, 12));
+    }
+
     @Test
     @Timeout(value = 10)
     void concurrentCountersModification() throws InterruptedException {
@@ -0,0 +1,47 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MCountersUtilsTest {
+
+    @Test
+    void durations() {
+        assertEquals(500, MCountersUtils.parseDuration("500ms"));
+        assertEquals(500, MCountersUtils.parseDuration("500"));
+        assertEquals(10_000, MCountersUtils.parseDuration("10s"));
+        assertEquals(5 * 60_000, MCountersUtils.parseDuration("5m"));
+        assertEquals(6 * 3_600_000, MCountersUtils.parseDuration("6h"));
+        assertEquals(3 * 86_400_000L, MCountersUtils.parseDuration(" 3d "));
+
+        assertEquals("500ms", MCountersUtils.formatDuration(500));
+        assertEquals("10s", MCountersUtils.formatDuration(10_000));
+        assertEquals("90s", MCountersUtils.formatDuration(90_000));
+        assertEquals("1m", MCountersUtils.formatDuration(60_000));
+        assertEquals("30d", MCountersUtils.formatDuration(30 * 86_400_000L));
+    }
+}
\ No newline at end of file
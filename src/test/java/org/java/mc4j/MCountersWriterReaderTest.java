@@ -27,8 +27,12 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
@@ -38,6 +42,8 @@ import static org.java.mc4j.MCountersEncoderDecoderTest.VALUE;
 import static org.java.mc4j.MCountersEncoderDecoderTest.LABEL;
 import static org.java.mc4j.MCountersUtils.getMCountersDirectoryName;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -127,4 +133,298 @@ class MCountersWriterReaderTest {
             testCountersFile.delete();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void notSizedFile() throws IOException {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-notSizedFile-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        try {
+            assertTrue(testCountersFile.createNewFile()); // as a writer has just created it
+
+            assertThrows(IOException.class, () -> new MCountersReader(testCountersFile));
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+
+    @Test
+    void inMemory() throws IOException, MCounterNotFoundException {
+        final Properties statics = new Properties();
+        statics.setProperty(PROPERTY, VALUE);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new MCountersWriter(ByteBuffer.allocate(1 << 20), statics, 10, 16));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MCountersWriter(ByteBuffer.allocateDirect(64), statics, 10, 16));
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(MCountersWriter.countersBufferLength(statics, 10, 16));
+        for (int i = 0; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) -1); // garbage of a reused buffer
+        }
+
+        try (MCountersWriter writer = new MCountersWriter(buffer, statics, 10, 16);
+             MCountersReader reader = new MCountersReader(writer.countersBuffer())) {
+            assertNull(writer.countersFile());
+            assertEquals(VALUE, reader.getStaticValue(PROPERTY));
+
+            final MCounter counter = writer.addCounter(LABEL, 1);
+            counter.increment();
+            assertEquals(2, reader.getCounterValue(counter.id()));
+            assertEquals(LABEL, reader.getCounterLabel(counter.id()));
+
+            reader.close(); // doesn't free the writer's buffer
+            counter.increment();
+            assertEquals(3, counter.get());
+        }
+
+        try (MCountersReader reader = new MCountersReader(buffer)) { // the closed writer doesn't free it either
+            assertEquals(VALUE, reader.getStaticValue(PROPERTY));
+        }
+    }
+
+    @Test
+    void durable() throws IOException, MCounterNotFoundException {
+        final File testCountersFile = new File(getMCountersDirectoryName(), "junit.jupiter-durable-counters.dat");
+        final File checkpointFile = new File(getMCountersDirectoryName(), "junit.jupiter-durable-checkpoint.dat");
+        testCountersFile.delete();
+        checkpointFile.delete();
+
+        final Properties statics = new Properties();
+        statics.setProperty(PROPERTY, VALUE);
+
+        try {
+            final long id;
+            try (MCountersWriter writer = MCountersWriter.openDurable(testCountersFile, statics, 10, 16, null)) {
+                assertThrows(IOException.class, // only one writer at a time
+                        () -> MCountersWriter.openDurable(testCountersFile, statics, 10, 16, null));
+
+                final MCounter counter = writer.addCounter(LABEL, 1);
+                counter.increment();
+                writer.addCounter(LABEL + 2, 5);
+                id = counter.id();
+
+                writer.startCheckpoints(checkpointFile, 60_000);
+                assertThrows(IllegalStateException.class, () -> writer.startCheckpoints(checkpointFile, 60_000));
+            } // the last checkpoint
+
+            try (MCountersWriter writer = MCountersWriter.openDurable(testCountersFile, statics, 10, 16, null);
+                 MCountersReader reader = new MCountersReader(testCountersFile)) {
+                final MCounter counter = writer.addCounter(LABEL, 100);
+                assertEquals(id, counter.id());
+                assertEquals(2, counter.get());
+                counter.increment();
+
+                final MCounter newCounter = writer.addCounter(LABEL + 3, 7);
+                assertTrue(newCounter.id() > id + 1);
+                assertEquals(7, reader.getCounterValue(newCounter.id()));
+
+                assertEquals(1, writer.freeRecoveredCounters()); // LABEL + 2
+                assertThrows(MCounterNotFoundException.class, () -> reader.getCounterValue(id + 1));
+                assertEquals(3, reader.getCounterValue(id));
+            }
+
+            assertTrue(testCountersFile.delete()); // e.g. tmpfs after a reboot
+
+            try (MCountersWriter writer = MCountersWriter.openDurable(testCountersFile, statics, 10, 16,
+                    checkpointFile)) {
+                final MCounter counter = writer.addCounter(LABEL, 100);
+                assertEquals(id, counter.id());
+                assertEquals(2, counter.get()); // as of the checkpoint
+            }
+
+            try (MCountersWriter writer = MCountersWriter.openDurable(testCountersFile, statics, 20, 16,
+                    checkpointFile)) { // another layout
+                assertEquals(100, writer.addCounter(LABEL, 100).get());
+            }
+        } finally {
+            testCountersFile.delete();
+            checkpointFile.delete();
+            new File(testCountersFile.getPath() + MCountersWriter.LOCK_FILE_EXTENSION).delete();
+        }
+    }
+
+    @Test
+    void safeClose() throws IOException, MCounterNotFoundException, InterruptedException {
+        final File testCountersFile = new File(getMCountersDirectoryName(), "junit.jupiter-safeClose-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        try {
+            for (final long gracePeriod : new long[]{0, 100}) {
+                final MCountersWriter writer = new MCountersWriter(testCountersFile, null, 10);
+                final MCounter counter = writer.addCounter(LABEL, 1);
+                counter.increment();
+
+                try (MCountersReader reader = new MCountersReader(testCountersFile)) {
+                    writer.close(gracePeriod);
+                    assertTrue(writer.isClosed());
+
+                    assertEquals(3, counter.increment()); // no crash, but no publication either
+                    assertEquals(2, reader.getCounterValue(counter.id()));
+                }
+
+                Thread.sleep(gracePeriod * 2); // unmapped
+                counter.set(10);
+                assertEquals(10, counter.get());
+                assertTrue(counter.compareAndSet(10, 11));
+                counter.close();
+                assertTrue(counter.isClosed());
+
+                testCountersFile.delete();
+            }
+
+            try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 10)) {
+                assertThrows(IllegalArgumentException.class, () -> writer.close(-1));
+            }
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+
+    @Test
+    void counterCheck() throws IOException {
+        final File testCountersFile = new File(getMCountersDirectoryName(), "junit.jupiter-counterCheck-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 1)) {
+            assertThrows(IllegalArgumentException.class, () -> writer.setCounterCheck(null));
+
+            writer.setCounterCheck(MCounterCheck.FULL);
+            final MCounter stale = writer.addCounter(LABEL, 1);
+            assertEquals(2, stale.increment());
+            stale.close();
+            assertThrows(IllegalStateException.class, stale::increment);
+
+            final MCounter newer = writer.addCounter(LABEL, 10); // reuses the only slot
+            assertThrows(IllegalStateException.class, () -> stale.set(0));
+            assertThrows(IllegalStateException.class, () -> stale.compareAndSet(10, 0));
+            assertEquals(10, newer.get());
+            newer.close();
+
+            writer.setCounterCheck(MCounterCheck.SAMPLED);
+            final MCounter sampled = writer.addCounter(LABEL, 0);
+            sampled.close();
+            final MCounter sampledNewer = writer.addCounter(LABEL, 0);
+            assertThrows(IllegalStateException.class, () -> {
+                for (int i = 0; i < 64 * MCounterCheck.sampling(); i++) { // missed with a chance of e^-64
+                    sampled.increment();
+                }
+            });
+            assertTrue(sampledNewer.get() < 64 * MCounterCheck.sampling()); // caught before the end
+            sampledNewer.close();
+
+            writer.setCounterCheck(MCounterCheck.NONE);
+            final MCounter unchecked = writer.addCounter(LABEL, 0);
+            unchecked.close();
+            final MCounter uncheckedNewer = writer.addCounter(LABEL, 0);
+            unchecked.increment();
+            assertEquals(1, uncheckedNewer.get()); // corrupted
+        } finally {
+            testCountersFile.delete();
+        }
+
+        try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 2)) {
+            writer.setCounterCheck(MCounterCheck.FULL);
+            final MCounter stale = writer.addCounter(LABEL, 0);
+            stale.close();
+            final MCounter live = writer.addCounter(LABEL, 1);
+
+            writer.close(0); // unmapped at once, the checks read a copy of the stamps
+
+            assertEquals(2, live.increment());
+            assertThrows(IllegalStateException.class, stale::increment);
+        } finally {
+            testCountersFile.delete();
+        }
+
+        assertEquals(MCounterCheck.NONE, MCounterCheck.defaultCheck());
+        assertEquals(MCounterCheck.NONE, MCounterCheck.defaultCheck("unknown")); // falls back
+        assertEquals(MCounterCheck.SAMPLED, MCounterCheck.defaultCheck(" Sampled "));
+        assertEquals(MCounterCheck.SAMPLING_DEFAULT, MCounterCheck.sampling());
+    }
+
+    @Test
+    void closeCountersWhileWriterCloses() throws IOException, InterruptedException {
+        final File testCountersFile = new File(getMCountersDirectoryName(), "junit.jupiter-closeRace-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+
+        for (int i = 0; i < 50; i++) {
+            testCountersFile.delete();
+
+            final MCountersWriter writer = new MCountersWriter(testCountersFile, null, 100);
+            final List<MCounter> counters = new ArrayList<>();
+            for (int j = 0; j < 100; j++) {
+                counters.add(writer.addCounter(LABEL + j));
+            }
+
+            final Thread closer = new Thread(() -> counters.forEach(MCounter::close));
+            closer.start();
+            writer.close(0); // unmaps at once, so a free racing the unmap would crash the process
+            closer.join();
+
+            assertTrue(counters.stream().allMatch(MCounter::isClosed));
+        }
+        testCountersFile.delete();
+    }
+
+    @Test
+    void hugePageDirectories() {
+        final Map<Path, Integer> mounts = MCountersUtils.hugetlbfsMounts(
+                "tmpfs /dev/shm tmpfs rw,nosuid,nodev 0 0\n" +
+                        "hugetlbfs /dev/hugepages hugetlbfs rw,relatime,pagesize=2M 0 0\n" +
+                        "none /mnt/huge\\0401g hugetlbfs rw,pagesize=1G 0 0\n" +
+                        "none /mnt/huge-default hugetlbfs rw 0 0\n");
+        assertEquals(3, mounts.size());
+        assertEquals(Integer.valueOf(2 << 20), mounts.get(Paths.get("/dev/hugepages")));
+        assertEquals(Integer.valueOf(1 << 30), mounts.get(Paths.get("/mnt/huge 1g")));
+        assertEquals(Integer.valueOf(MCountersUtils.HUGE_PAGE_SIZE_DEFAULT),
+                mounts.get(Paths.get("/mnt/huge-default")));
+
+        if (MCountersUtils.getHugePageDirectories().isEmpty()) {
+            assertEquals(MCountersUtils.FILE_PAGE_SIZE,
+                    MCountersUtils.filePageSize(new File(getMCountersDirectoryName(), "counters.dat")));
+        }
+    }
+
+    @Test
+    void preTouch() throws IOException, InterruptedException {
+        for (final MCountersPreTouch preTouch : MCountersPreTouch.values()) {
+            final File testCountersFile = new File(getMCountersDirectoryName(),
+                    "junit.jupiter-preTouch-" + preTouch + "-counters.dat");
+            testCountersFile.getParentFile().mkdirs();
+            testCountersFile.delete();
+
+            try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 1000, 16, preTouch);
+                 MCountersReader reader = new MCountersReader(testCountersFile)) {
+                final List<MCounter> counters = new ArrayList<>();
+                for (int i = 0; i < 1000; i++) { // while the pages may be touched in the background
+                    counters.add(writer.addCounter(LABEL + i, i + 1));
+                }
+
+                assertEquals(preTouch, reader.getPreTouch());
+
+                final long expectedLength = preTouch == MCountersPreTouch.NONE ? 0 : testCountersFile.length();
+                final long deadline = System.currentTimeMillis() + 10_000;
+                while (reader.getPreTouchedLength() != expectedLength) {
+                    assertTrue(System.currentTimeMillis() < deadline, "Not pre-touched: " + preTouch);
+                    Thread.sleep(1);
+                }
+
+                for (int i = 0; i < counters.size(); i++) {
+                    assertEquals(i + 1, counters.get(i).get());
+                }
+            } finally {
+                testCountersFile.delete();
+            }
+        }
+
+        assertEquals(MCountersPreTouch.BACKGROUND, MCountersPreTouch.fromCode(MCountersPreTouch.BACKGROUND.code()));
+        assertNull(MCountersPreTouch.fromCode(-1));
+        assertEquals(MCountersPreTouch.EAGER, MCountersPreTouch.defaultPreTouch("unknown")); // falls back
+        assertEquals(MCountersPreTouch.PARALLEL, MCountersPreTouch.defaultPreTouch(" Parallel "));
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MemoryAccessTest {
+    @Test
+    void memoryAccesses() {
+        assertNotNull(MemoryAccess.INSTANCE);
+        assertEquals(MemoryAccess.INSTANCE.name(), DirectMemoryBuffer.memoryAccess());
+        assertThrows(IllegalArgumentException.class, () -> MemoryAccess.create("unknown"));
+
+        final String defaultName = MemoryAccess.defaultMemoryAccess(null).name();
+        assertEquals(defaultName, MemoryAccess.defaultMemoryAccess("unknown").name()); // falls back
+        assertEquals(MemoryAccess.UNSAFE, MemoryAccess.defaultMemoryAccess(" Unsafe ").name());
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+        buffer.position(100); // the offsets are from the start of the buffer
+
+        final byte[] label = "label".getBytes(StandardCharsets.UTF_8);
+
+        for (final String name : new String[]{MemoryAccess.UNSAFE, MemoryAccess.VAR_HANDLE, MemoryAccess.SEGMENT}) {
+            final MemoryAccess memoryAccess = MemoryAccess.create(name);
+            if (memoryAccess == null) { // not supported by the JVM or not on the classpath
+                continue;
+            }
+            assertEquals(name, memoryAccess.name());
+
+            final Object memory = memoryAccess.memory(buffer);
+            final long offset = memoryAccess.baseOffset(buffer) + 64;
+
+            memoryAccess.putInt(memory, offset, 1);
+            assertEquals(1, memoryAccess.getInt(memory, offset));
+            memoryAccess.putIntOrdered(memory, offset, 2);
+            assertEquals(2, memoryAccess.getIntVolatile(memory, offset));
+            memoryAccess.putIntVolatile(memory, offset, 3);
+            assertEquals(3, buffer.duplicate().order(ByteOrder.nativeOrder()).getInt(64));
+
+            memoryAccess.putLong(memory, offset + 8, 4);
+            assertEquals(4, memoryAccess.getLong(memory, offset + 8));
+            memoryAccess.putLongOrdered(memory, offset + 8, 5);
+            assertEquals(5, memoryAccess.getLongVolatile(memory, offset + 8));
+            memoryAccess.putLongVolatile(memory, offset + 8, 6);
+            assertEquals(6, memoryAccess.getAndAddLong(memory, offset + 8, 10));
+            assertEquals(16, memoryAccess.getAndSetLong(memory, offset + 8, 20));
+            assertFalse(memoryAccess.compareAndSwapLong(memory, offset + 8, 16, 30));
+            assertTrue(memoryAccess.compareAndSwapLong(memory, offset + 8, 20, 30));
+            assertEquals(30, buffer.duplicate().order(ByteOrder.nativeOrder()).getLong(72));
+
+            memoryAccess.putBytes(memory, offset + 16, label, 1, 3);
+            final byte[] bytes = new byte[5];
+            memoryAccess.getBytes(memory, offset + 16, bytes, 1, 3);
+            assertArrayEquals(new byte[]{0, 'a', 'b', 'e', 0}, bytes);
+
+            assertEquals(100, buffer.position());
+            buffer.clear().position(100);
+        }
+    }
+}
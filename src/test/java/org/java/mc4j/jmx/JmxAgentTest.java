@@ -0,0 +1,96 @@
+package org.java.mc4j.jmx;
+
+import org.java.mc4j.MCountersReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.java.mc4j.MCountersUtils.getMCountersDirectoryName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class JmxAgentTest {
+    @Test
+    void parseArgs() {
+        assertTrue(JmxAgent.parseArgs(null).isEmpty());
+        assertTrue(JmxAgent.parseArgs(" ; ").isEmpty());
+
+        final Map<String, String> args = JmxAgent.parseArgs(
+                "File=a.dat; interval=5s;mbeans=java.lang:type=Memory,*[HeapMemoryUsage];statics=a=1,b=2");
+        assertEquals(4, args.size());
+        assertEquals("a.dat", args.get("file"));
+        assertEquals("5s", args.get("interval"));
+        assertEquals("java.lang:type=Memory,*[HeapMemoryUsage]", args.get("mbeans"));
+        assertEquals("a=1,b=2", args.get("statics"));
+
+        assertThrows(IllegalArgumentException.class, () -> JmxAgent.parseArgs("file"));
+        assertThrows(IllegalArgumentException.class, () -> JmxAgent.parseArgs("=a.dat"));
+    }
+
+    @Test
+    void incorrectArgs() {
+        assertThrows(IllegalArgumentException.class, () -> new JmxAgent(JmxAgent.parseArgs("unknown=1")));
+        assertThrows(IllegalArgumentException.class, () -> new JmxAgent(JmxAgent.parseArgs("interval=0s")));
+        assertThrows(IllegalArgumentException.class, () -> new JmxAgent(JmxAgent.parseArgs("statics=a")));
+        assertThrows(IllegalArgumentException.class, () -> new JmxAgent(JmxAgent.parseArgs("mbeans=a:b[")));
+        assertNull(JmxAgent.start("unknown=1"));
+    }
+
+    @Test
+    void publish() {
+        final File testCountersFile = new File(getMCountersDirectoryName(), "junit.jupiter-JmxAgentTest.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        final String label = "jmx://java.lang:type=ClassLoading?LoadedClassCount";
+
+        try {
+            final JmxAgent agent = new JmxAgent(JmxAgent.parseArgs("file=" + testCountersFile.getAbsolutePath() +
+                    ";interval=10ms;statics=app=test;mbeans=java.lang:type=ClassLoading[LoadedClassCount]"));
+            assertEquals(testCountersFile.getAbsoluteFile(), agent.countersFile());
+
+            agent.run();
+            try (MCountersReader reader = new MCountersReader(testCountersFile)) {
+                assertTrue(agent.publisher().isStarted());
+                assertEquals("test", reader.getStaticValue("app"));
+
+                final long deadline = System.currentTimeMillis() + 10_000;
+                final AtomicBoolean published = new AtomicBoolean();
+                while (!published.get()) {
+                    if (System.currentTimeMillis() > deadline) {
+                        fail("No counter " + label);
+                    }
+                    Thread.sleep(1);
+                    reader.forEachCounter((id, l, value) -> published.compareAndSet(false,
+                            label.equals(l) && value > 0));
+                }
+            } finally {
+                agent.close();
+            }
+            assertNull(agent.publisher());
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+
+        try {
+            final JmxAgent agent = new JmxAgent(JmxAgent.parseArgs("file=" + testCountersFile.getAbsolutePath() +
+                    ";interval=10ms;delay=10ms"));
+            agent.close(); // by the shutdown hook before the delay is over
+            agent.run();
+            assertNull(agent.publisher());
+            assertFalse(testCountersFile.exists());
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import javax.management.ObjectName;
 import java.io.File;
 import java.lang.management.ManagementFactory;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -171,4 +172,323 @@ class JmxPublisherTest {
             testCountersFile.delete();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testMBeanPattern() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-testMBeanPattern-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            final ObjectName objectName1 =
+                    new ObjectName("org.java.mc4j.jmx.test:type=TestAttributes,name=Pattern1");
+            final ObjectName objectName2 =
+                    new ObjectName("org.java.mc4j.jmx.test:type=TestAttributes,name=Pattern2");
+
+            try (MCountersWriter writer =
+                         new MCountersWriter(testCountersFile, null, 100);
+                 MCountersReader reader =
+                         new MCountersReader(testCountersFile);
+                 JmxPublisher publisher = new JmxPublisher(writer,
+                         "org.java.mc4j.jmx.test:type=TestAttributes,name=Pattern*[LongAttribute]")) {
+
+                assertTrue(publisher.getMBeans().isEmpty());
+                assertEquals(1, publisher.getMBeanPatterns().size());
+
+                final MBeanPattern mBeanPattern = publisher.getMBeanPatterns().iterator().next();
+
+                publisher.refresh();
+                assertTrue(mBeanPattern.mBeans().isEmpty());
+
+                final TestAttributes mBean1 = new TestAttributes();
+                server.registerMBean(mBean1, objectName1);
+                mBean1.increment();
+
+                publisher.refresh();
+                assertEquals(1, mBeanPattern.mBeans().size());
+
+                server.registerMBean(new TestAttributes(), objectName2);
+
+                publisher.refresh();
+                assertEquals(2, mBeanPattern.mBeans().size());
+
+                final AtomicInteger numberOfCounters = new AtomicInteger(0);
+                final AtomicLong sumValue = new AtomicLong();
+                reader.forEachCounter((id, label, value) -> {
+                    numberOfCounters.incrementAndGet();
+                    sumValue.addAndGet(value);
+                });
+                assertEquals(2, numberOfCounters.get());
+                assertEquals(1, sumValue.get());
+
+                server.unregisterMBean(objectName1);
+
+                publisher.refresh();
+                assertEquals(1, mBeanPattern.mBeans().size());
+                assertEquals(objectName2, mBeanPattern.mBeans().iterator().next().objectName());
+
+                numberOfCounters.set(0);
+                reader.forEachCounter((id, label, value) -> numberOfCounters.incrementAndGet());
+                assertEquals(1, numberOfCounters.get());
+            } finally {
+                if (server.isRegistered(objectName1)) {
+                    server.unregisterMBean(objectName1);
+                }
+                if (server.isRegistered(objectName2)) {
+                    server.unregisterMBean(objectName2);
+                }
+            }
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+
+    @Test
+    void testMBeanRegistrations() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-testMBeanRegistrations-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            final ObjectName objectName =
+                    new ObjectName("org.java.mc4j.jmx.test:type=TestAttributes,name=Registrations");
+
+            try (MCountersWriter writer =
+                         new MCountersWriter(testCountersFile, null, 100);
+                 MCountersReader reader =
+                         new MCountersReader(testCountersFile);
+                 JmxPublisher publisher = new JmxPublisher(writer,
+                         "org.java.mc4j.jmx.test:type=TestAttributes,name=Registrations[LongAttribute]")) {
+
+                final AtomicInteger numberOfCounters = new AtomicInteger(0);
+                final AtomicLong sumValue = new AtomicLong();
+
+                publisher.refresh(); // not registered yet
+                reader.forEachCounter((id, label, value) -> numberOfCounters.incrementAndGet());
+                assertEquals(0, numberOfCounters.get());
+
+                final TestAttributes mBean1 = new TestAttributes();
+                server.registerMBean(mBean1, objectName);
+                mBean1.increment();
+
+                publisher.refresh();
+                reader.forEachCounter((id, label, value) -> {
+                    numberOfCounters.incrementAndGet();
+                    sumValue.addAndGet(value);
+                });
+                assertEquals(1, numberOfCounters.get());
+                assertEquals(1, sumValue.get());
+
+                server.unregisterMBean(objectName);
+
+                publisher.refresh();
+                numberOfCounters.set(0);
+                reader.forEachCounter((id, label, value) -> numberOfCounters.incrementAndGet());
+                assertEquals(0, numberOfCounters.get());
+
+                // a new instance with the same name
+                final TestAttributes mBean2 = new TestAttributes();
+                server.registerMBean(mBean2, objectName);
+                mBean2.increment();
+                mBean2.increment();
+
+                publisher.refresh();
+                sumValue.set(0);
+                reader.forEachCounter((id, label, value) -> {
+                    numberOfCounters.incrementAndGet();
+                    sumValue.addAndGet(value);
+                });
+                assertEquals(1, numberOfCounters.get());
+                assertEquals(2, sumValue.get());
+
+                // unregistered and registered again between two refreshes
+                server.unregisterMBean(objectName);
+                final TestAttributes mBean3 = new TestAttributes();
+                server.registerMBean(mBean3, objectName);
+
+                publisher.refresh();
+                numberOfCounters.set(0);
+                sumValue.set(0);
+                reader.forEachCounter((id, label, value) -> {
+                    numberOfCounters.incrementAndGet();
+                    sumValue.addAndGet(value);
+                });
+                assertEquals(1, numberOfCounters.get());
+                assertEquals(0, sumValue.get());
+            } finally {
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            }
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+
+    @Test
+    void testScheduledRefresh() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-testScheduledRefresh-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            final ObjectName fastName = new ObjectName("org.java.mc4j.jmx.test:type=TestAttributes,name=Fast");
+            final ObjectName slowName = new ObjectName("org.java.mc4j.jmx.test:type=TestAttributes,name=Slow");
+
+            final TestAttributes fast = new TestAttributes();
+            final TestAttributes slow = new TestAttributes();
+            server.registerMBean(fast, fastName);
+            server.registerMBean(slow, slowName);
+
+            try (MCountersWriter writer =
+                         new MCountersWriter(testCountersFile, null, 100);
+                 MCountersReader reader =
+                         new MCountersReader(testCountersFile);
+                 JmxPublisher publisher = new JmxPublisher(writer,
+                         fastName + "[LongAttribute]@10ms " + slowName + "[LongAttribute]")) {
+
+                publisher.start(60_000);
+                assertTrue(publisher.isStarted());
+
+                final String fastLabel = "jmx://" + fastName.getCanonicalName() + "?LongAttribute";
+                final String slowLabel = "jmx://" + slowName.getCanonicalName() + "?LongAttribute";
+                waitForValue(reader, fastLabel, 0);
+                waitForValue(reader, slowLabel, 0);
+
+                fast.increment();
+                slow.increment();
+                waitForValue(reader, fastLabel, 1);
+
+                Thread.sleep(100); // a few refreshes of the fast MBean
+                assertEquals(Long.valueOf(0), getValue(reader, slowLabel));
+
+                publisher.stop();
+                assertTrue(!publisher.isStarted());
+
+                fast.increment();
+                Thread.sleep(100);
+                assertEquals(Long.valueOf(1), getValue(reader, fastLabel));
+            } finally {
+                server.unregisterMBean(fastName);
+                server.unregisterMBean(slowName);
+            }
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+
+    @Test
+    void testParallelRefresh() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-testParallelRefresh-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            final ObjectName fastName = new ObjectName("org.java.mc4j.jmx.test:type=TestAttributes,name=Parallel");
+            final ObjectName slowName = new ObjectName("org.java.mc4j.jmx.test:type=SlowAttributes,name=Parallel");
+
+            final TestAttributes fast = new TestAttributes();
+            final SlowAttributes slow = new SlowAttributes();
+            server.registerMBean(fast, fastName);
+            server.registerMBean(slow, slowName);
+
+            try (MCountersWriter writer =
+                         new MCountersWriter(testCountersFile, null, 100);
+                 MCountersReader reader =
+                         new MCountersReader(testCountersFile);
+                 JmxPublisher publisher = new JmxPublisher(writer,
+                         fastName + "[LongAttribute] " + slowName + "[LongAttribute]")) {
+
+                publisher.refreshInParallel(1, 100); // one thread, which a stuck MBean must not take
+
+                final String fastLabel = "jmx://" + fastName.getCanonicalName() + "?LongAttribute";
+                final String slowLabel = "jmx://" + slowName.getCanonicalName() + "?LongAttribute";
+                final String slowOverrunsLabel = "jmxpublisher://" + slowName.getCanonicalName() +
+                        "?RefreshOverruns";
+
+                publisher.refresh();
+                assertEquals(Long.valueOf(0), getValue(reader, fastLabel));
+                assertEquals(Long.valueOf(0), getValue(reader, slowLabel));
+                assertEquals(Long.valueOf(0), getValue(reader, slowOverrunsLabel));
+                assertNotNull(getValue(reader, "jmxpublisher://" + fastName.getCanonicalName() + "?RefreshNanos"));
+
+                slow.setUninterruptible(true);
+                slow.setDelay(10_000);
+                fast.increment();
+                slow.increment();
+
+                final long start = System.nanoTime();
+                publisher.refresh(); // must not wait for the slow MBean
+                publisher.refresh(); // the slow MBean is still being refreshed
+                assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1_000));
+
+                waitForValue(reader, fastLabel, 1); // on a thread added to the pool
+                fast.increment();
+                publisher.refresh();
+                waitForValue(reader, fastLabel, 2);
+
+                assertEquals(Long.valueOf(0), getValue(reader, slowLabel));
+                assertEquals(Long.valueOf(1), getValue(reader, slowOverrunsLabel)); // one overrun per refresh
+
+                slow.setDelay(0);
+                waitForValue(reader, slowLabel, 1);
+
+                slow.setUninterruptible(false);
+                slow.setDelay(10_000);
+                slow.increment();
+
+                final long interruptStart = System.nanoTime();
+                while (!Long.valueOf(2).equals(getValue(reader, slowLabel))) {
+                    publisher.refresh(); // the slow refresh is interrupted at the timeout
+                    assertTrue(System.nanoTime() - interruptStart < TimeUnit.MILLISECONDS.toNanos(5_000));
+                }
+            } finally {
+                server.unregisterMBean(fastName);
+                server.unregisterMBean(slowName);
+            }
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+
+    private static void waitForValue(final MCountersReader reader, final String label, final long value)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (!Long.valueOf(value).equals(getValue(reader, label))) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("No value " + value + " of " + label + ": " + getValue(reader, label));
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static Long getValue(final MCountersReader reader, final String label) {
+        final AtomicLong result = new AtomicLong(Long.MIN_VALUE);
+        reader.forEachCounter((id, l, value) -> {
+            if (label.equals(l)) {
+                result.set(value);
+            }
+        });
+        return result.get() == Long.MIN_VALUE ? null : result.get();
+    }
+}
@@ -0,0 +1,119 @@
+package org.java.mc4j.jmx;
+
+import org.java.mc4j.MCountersReader;
+import org.java.mc4j.MCountersWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.java.mc4j.MCountersUtils.getMCountersDirectoryName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class JvmMetricsTest {
+
+    @Test
+    void refresh() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-JvmMetricsTest-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 200);
+             MCountersReader reader = new MCountersReader(testCountersFile)) {
+
+            final Map<String, Long> counters = new HashMap<>();
+
+            try (JvmMetrics jvmMetrics = new JvmMetrics(writer)) {
+                jvmMetrics.refresh();
+
+                reader.forEachCounter((id, label, value) -> counters.put(label, value));
+
+                final Long heapUsed = counters.get("jmx://java.lang:type=Memory?HeapMemoryUsage.used");
+                assertNotNull(heapUsed);
+                assertTrue(heapUsed > 0);
+                assertTrue(counters.get("jmx://java.lang:type=Threading?ThreadCount") > 0);
+                assertTrue(counters.get("jmx://java.lang:type=ClassLoading?LoadedClassCount") > 0);
+                assertEquals(Long.valueOf(Runtime.getRuntime().availableProcessors()),
+                        counters.get("jmx://java.lang:type=OperatingSystem?AvailableProcessors"));
+                assertNotNull(counters.get("jmx://java.nio:name=direct,type=BufferPool?MemoryUsed"));
+
+                for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                    assertNotNull(counters.get("jmx://" + gc.getObjectName().getCanonicalName() +
+                            "?CollectionCount"));
+                }
+
+                // the same labels as published by JmxPublisher
+                final MBean memory = new MBean("java.lang:type=Memory", Collections.singleton("*"));
+                memory.refresh(writer, ManagementFactory.getPlatformMBeanServer());
+                final Map<String, Integer> numberOfLabels = new HashMap<>();
+                reader.forEachCounter((id, label, value) -> numberOfLabels.merge(label, 1, Integer::sum));
+                assertEquals(Integer.valueOf(2),
+                        numberOfLabels.get("jmx://java.lang:type=Memory?HeapMemoryUsage.committed"));
+                memory.close();
+
+                jvmMetrics.start(10);
+                assertTrue(jvmMetrics.isStarted());
+                final long startedThreads =
+                        counters.get("jmx://java.lang:type=Threading?TotalStartedThreadCount");
+                final long deadline = System.currentTimeMillis() + 10_000;
+                while (getValue(reader, "jmx://java.lang:type=Threading?TotalStartedThreadCount") <= startedThreads) {
+                    if (System.currentTimeMillis() > deadline) {
+                        fail("The refreshing thread hasn't been counted");
+                    }
+                    Thread.sleep(1);
+                }
+                jvmMetrics.stop();
+                assertFalse(jvmMetrics.isStarted());
+            }
+
+            counters.clear();
+            reader.forEachCounter((id, label, value) -> counters.put(label, value));
+            assertTrue(counters.isEmpty());
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+
+    @Test
+    void noFreeSpace() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-JvmMetricsTest-noFreeSpace-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 5);
+             MCountersReader reader = new MCountersReader(testCountersFile)) {
+            assertThrows(IllegalArgumentException.class, () -> new JvmMetrics(writer));
+
+            final Map<String, Long> counters = new HashMap<>();
+            reader.forEachCounter((id, label, value) -> counters.put(label, value));
+            assertTrue(counters.isEmpty()); // the counters added before the failure are closed
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+
+    private static long getValue(final MCountersReader reader, final String label) {
+        final long[] result = new long[1];
+        reader.forEachCounter((id, l, value) -> {
+            if (label.equals(l)) {
+                result[0] = value;
+            }
+        });
+        return result[0];
+    }
+}
@@ -0,0 +1,77 @@
+package org.java.mc4j.jmx;
+
+import org.java.mc4j.MCountersReader;
+import org.java.mc4j.MCountersWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.java.mc4j.MCountersUtils.getMCountersDirectoryName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class MBeanRefreshTest {
+
+    @Test
+    void quarantine() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-MBeanRefreshTest-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 10);
+             MCountersReader reader = new MCountersReader(testCountersFile)) {
+
+            final AtomicInteger numberOfRefreshes = new AtomicInteger();
+            final AtomicLong delay = new AtomicLong(20);
+            final MBeanRefresh refresh = new MBeanRefresh("test:type=Test", () -> {
+                numberOfRefreshes.incrementAndGet();
+                try {
+                    Thread.sleep(delay.get());
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            refresh.runOn(Runnable::run, TimeUnit.MILLISECONDS.toNanos(5), writer);
+
+            for (int i = 0; i < MBeanRefresh.QUARANTINE_OVERRUNS; i++) {
+                assertFalse(refresh.isQuarantined());
+                assertTrue(refresh.start(System.nanoTime()));
+            }
+            assertTrue(refresh.isQuarantined());
+            assertFalse(refresh.start(System.nanoTime())); // skipped
+            assertEquals(MBeanRefresh.QUARANTINE_OVERRUNS, numberOfRefreshes.get());
+
+            final AtomicLong overruns = new AtomicLong();
+            final AtomicLong latency = new AtomicLong();
+            reader.forEachCounter((id, label, value) -> {
+                if ("jmxpublisher://test:type=Test?RefreshOverruns".equals(label)) {
+                    overruns.set(value);
+                } else if ("jmxpublisher://test:type=Test?RefreshNanos".equals(label)) {
+                    latency.set(value);
+                }
+            });
+            assertEquals(MBeanRefresh.QUARANTINE_OVERRUNS, overruns.get());
+            assertTrue(latency.get() >= TimeUnit.MILLISECONDS.toNanos(20));
+
+            delay.set(0);
+            Thread.sleep(20); // the first quarantine lasts 2 timeouts
+            assertTrue(refresh.start(System.nanoTime()));
+            assertFalse(refresh.isQuarantined()); // in time
+
+            refresh.close();
+            final AtomicInteger numberOfCounters = new AtomicInteger();
+            reader.forEachCounter((id, label, value) -> numberOfCounters.incrementAndGet());
+            assertEquals(0, numberOfCounters.get());
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+}
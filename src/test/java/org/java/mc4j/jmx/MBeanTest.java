@@ -1,15 +1,31 @@
 package org.java.mc4j.jmx;
 
+import org.java.mc4j.MCountersReader;
+import org.java.mc4j.MCountersWriter;
 import org.junit.jupiter.api.Test;
 
+import javax.management.AttributeList;
+import javax.management.MBeanServer;
 import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+import static org.java.mc4j.MCountersUtils.getMCountersDirectoryName;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
 class MBeanTest {
 
@@ -50,4 +66,180 @@ class MBeanTest {
         assertEquals(1, osMBeanAttrs.size());
         assertTrue(osMBeanAttrs.contains("*"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void parseRefreshIntervals() throws MalformedObjectNameException {
+        final Map<String, MBean> mBeanMap = MBean.parseMBeans("java.lang:type=Runtime[Uptime]@100ms " +
+                "java.lang:type=OperatingSystem[*]@1m\tjava.lang:type=Memory[*]java.lang:type=Threading[*]@5");
+
+        assertEquals(4, mBeanMap.size());
+        assertEquals(100, mBeanMap.get("java.lang:type=Runtime").refreshInterval());
+        assertEquals(60_000, mBeanMap.get("java.lang:type=OperatingSystem").refreshInterval());
+        assertEquals(0, mBeanMap.get("java.lang:type=Memory").refreshInterval());
+        assertEquals(5, mBeanMap.get("java.lang:type=Threading").refreshInterval());
+
+        assertThrows(IllegalArgumentException.class, () -> MBean.parseMBeans("java.lang:type=Runtime[*]@"));
+        assertThrows(IllegalArgumentException.class, () -> MBean.parseMBeans("java.lang:type=Runtime[*]@0s"));
+        assertThrows(IllegalArgumentException.class, () -> MBean.parseMBeans("java.lang:type=Runtime[*]@1x"));
+        assertThrows(IllegalArgumentException.class, () -> MBean.parseMBeans("java.lang:type=Runtime[*]@1s,"));
+    }
+
+    @Test
+    void refreshWithFailingAttribute() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-refreshWithFailingAttribute-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        final String mBeanName = "org.java.mc4j.jmx.test:type=TestAttributes,name=FailingAttribute";
+
+        try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 10);
+             MCountersReader reader = new MCountersReader(testCountersFile)) {
+
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            final TestAttributes testAttributes = new TestAttributes();
+            final ObjectName objectName = new ObjectName(mBeanName);
+            server.registerMBean(testAttributes, objectName);
+
+            try {
+                final MBean mBean = new MBean(mBeanName,
+                        Arrays.asList("LongAttribute", "FailingAttribute", "BooleanAttribute"));
+
+                mBean.refresh(writer, server);
+                testAttributes.increment();
+                mBean.refresh(writer, server);
+
+                final Map<String, Long> counters = new HashMap<>();
+                reader.forEachCounter((id, label, value) -> counters.put(label, value));
+
+                final String labelPrefix = "jmx://" + objectName.getCanonicalName() + "?";
+                assertEquals(2, counters.size());
+                assertEquals(Long.valueOf(1), counters.get(labelPrefix + "LongAttribute"));
+                assertEquals(Long.valueOf(1), counters.get(labelPrefix + "BooleanAttribute"));
+
+                mBean.close();
+            } finally {
+                server.unregisterMBean(objectName);
+            }
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+
+    @Test
+    void refreshWithFailingBulkGet() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-refreshWithFailingBulkGet-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        final String mBeanName = "org.java.mc4j.jmx.test:type=TestAttributes,name=FailingBulkGet";
+
+        try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 10);
+             MCountersReader reader = new MCountersReader(testCountersFile)) {
+
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            final TestAttributes testAttributes = new TestAttributes();
+            final ObjectName objectName = new ObjectName(mBeanName);
+            server.registerMBean(new StandardMBean(testAttributes, TestAttributesMBean.class) {
+                @Override
+                public AttributeList getAttributes(final String[] attributes) {
+                    throw new UnsupportedOperationException();
+                }
+            }, objectName);
+
+            try {
+                final MBean mBean = new MBean(mBeanName, Arrays.asList("LongAttribute", "BooleanAttribute"));
+
+                mBean.refresh(writer, server);
+                testAttributes.increment();
+                mBean.refresh(writer, server);
+
+                final Map<String, Long> counters = new HashMap<>();
+                reader.forEachCounter((id, label, value) -> counters.put(label, value));
+
+                final String labelPrefix = "jmx://" + objectName.getCanonicalName() + "?";
+                assertEquals(2, counters.size());
+                assertEquals(Long.valueOf(1), counters.get(labelPrefix + "LongAttribute"));
+                assertEquals(Long.valueOf(1), counters.get(labelPrefix + "BooleanAttribute"));
+
+                mBean.close();
+            } finally {
+                server.unregisterMBean(objectName);
+            }
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+
+    @Test
+    void refreshOpenData() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-refreshOpenData-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        final String mBeanName = "org.java.mc4j.jmx.test:type=TestOpenData";
+
+        try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 20);
+             MCountersReader reader = new MCountersReader(testCountersFile)) {
+
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            final TestOpenData testOpenData = new TestOpenData();
+            testOpenData.putSize("a", 10);
+            testOpenData.putSize("b b", 20);
+            final ObjectName objectName = new ObjectName(mBeanName);
+            server.registerMBean(testOpenData, objectName);
+
+            try {
+                final MBean mBean = new MBean(mBeanName, Collections.singletonList("*"));
+
+                mBean.refresh(writer, server);
+
+                final Map<String, Long> counters = new HashMap<>();
+                reader.forEachCounter((id, label, value) -> counters.put(label, value));
+
+                final String labelPrefix = "jmx://" + objectName.getCanonicalName() + "?";
+                assertEquals(6, counters.size());
+                assertEquals(Long.valueOf(1), counters.get(labelPrefix + "Usage.init"));
+                assertEquals(Long.valueOf(2), counters.get(labelPrefix + "Usage.used"));
+                assertEquals(Long.valueOf(3), counters.get(labelPrefix + "Usage.committed"));
+                assertEquals(Long.valueOf(4), counters.get(labelPrefix + "Usage.max"));
+                assertEquals(Long.valueOf(10), counters.get(labelPrefix + "Sizes.a"));
+                assertEquals(Long.valueOf(20), counters.get(labelPrefix + "Sizes.b b"));
+
+                testOpenData.setUsage(new MemoryUsage(1, 5, 6, 7));
+                testOpenData.removeSize("a");
+                testOpenData.putSize("c", 30);
+                mBean.refresh(writer, server);
+
+                counters.clear();
+                reader.forEachCounter((id, label, value) -> counters.put(label, value));
+                assertEquals(6, counters.size());
+                assertEquals(Long.valueOf(5), counters.get(labelPrefix + "Usage.used"));
+                assertNull(counters.get(labelPrefix + "Sizes.a"));
+                assertEquals(Long.valueOf(20), counters.get(labelPrefix + "Sizes.b b"));
+                assertEquals(Long.valueOf(30), counters.get(labelPrefix + "Sizes.c"));
+
+                mBean.close();
+
+                counters.clear();
+                reader.forEachCounter((id, label, value) -> counters.put(label, value));
+                assertTrue(counters.isEmpty());
+            } finally {
+                server.unregisterMBean(objectName);
+            }
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.java.mc4j.jmx;
+
+import org.java.mc4j.MCounter;
+import org.java.mc4j.MCountersWriter;
+import org.junit.jupiter.api.Test;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.function.BooleanSupplier;
+
+import static org.java.mc4j.MCountersUtils.getMCountersDirectoryName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class MCountersJmxBridgeTest {
+    private static final String DOMAIN = "org.java.mc4j.jmx.test.bridge";
+
+    @Test
+    void objectNames() throws Exception {
+        assertEquals(new ObjectName(DOMAIN + ":type=MCounters,name=app.dat"),
+                MCountersJmxBridge.objectName(DOMAIN, "app.dat"));
+        final ObjectName quoted = MCountersJmxBridge.objectName(DOMAIN, "a,b=c*.dat");
+        assertFalse(quoted.isPattern());
+        assertEquals("a,b=c*.dat", ObjectName.unquote(quoted.getKeyProperty("name")));
+    }
+
+    @Test
+    void followFiles() {
+        final File directory = new File(getMCountersDirectoryName(), "junit.jupiter-MCountersJmxBridgeTest");
+        directory.mkdirs();
+        final File file1 = new File(directory, "counters1.dat");
+        final File file2 = new File(directory, "counters2.dat");
+        file1.delete();
+        file2.delete();
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try (MCountersJmxBridge bridge = new MCountersJmxBridge(directory, server, DOMAIN)) {
+            final ObjectName objectName1 = MCountersJmxBridge.objectName(DOMAIN, file1.getName());
+            final ObjectName objectName2 = MCountersJmxBridge.objectName(DOMAIN, file2.getName());
+
+            bridge.refresh();
+            assertTrue(bridge.getObjectNames().isEmpty());
+
+            try (MCountersWriter writer = new MCountersWriter(file1, null, 10)) {
+                final MCounter counter1 = writer.addCounter("counter1", 1);
+                final MCounter counter2 = writer.addCounter("counter2", 2);
+
+                bridge.refresh();
+                assertTrue(server.isRegistered(objectName1));
+
+                assertEquals(Long.valueOf(1), server.getAttribute(objectName1, "counter1"));
+                assertEquals(Long.valueOf(2), server.getAttribute(objectName1, "counter2"));
+                counter1.set(10);
+                assertEquals(Long.valueOf(10), server.getAttribute(objectName1, "counter1")); // no copies
+
+                final MBeanAttributeInfo[] attributes = server.getMBeanInfo(objectName1).getAttributes();
+                assertEquals(2, attributes.length);
+                assertEquals("counter1", attributes[0].getName());
+                assertEquals("long", attributes[0].getType());
+
+                counter2.close();
+                writer.addCounter("counter3", 3); // in the slot of counter2
+                assertEquals(2, server.getMBeanInfo(objectName1).getAttributes().length);
+                assertEquals(Long.valueOf(3), server.getAttribute(objectName1, "counter3"));
+                try {
+                    server.getAttribute(objectName1, "counter2");
+                    fail("counter2 has been closed");
+                } catch (final AttributeNotFoundException expected) {
+                }
+                assertEquals(2, server.getAttributes(objectName1,
+                        new String[]{"counter1", "counter2", "counter3"}).size());
+
+                bridge.start();
+                try (MCountersWriter writer2 = new MCountersWriter(file2, null, 10)) {
+                    writer2.addCounter("counter", 20);
+                    waitFor(() -> server.isRegistered(objectName2));
+                    assertEquals(Long.valueOf(20), server.getAttribute(objectName2, "counter"));
+                }
+                assertTrue(file2.delete());
+                waitFor(() -> !server.isRegistered(objectName2));
+                assertTrue(server.isRegistered(objectName1));
+            }
+
+            assertTrue(file1.delete());
+            bridge.refresh();
+            assertFalse(server.isRegistered(objectName1));
+            assertTrue(bridge.getObjectNames().isEmpty());
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            file1.delete();
+            file2.delete();
+            directory.delete();
+        }
+    }
+
+    private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.java.mc4j.jmx;
+
+public class SlowAttributes implements SlowAttributesMBean {
+    private volatile long delay; // millis
+    private volatile boolean uninterruptible;
+    private volatile long longAttribute;
+
+    @Override
+    public long getLongAttribute() {
+        final long start = System.currentTimeMillis();
+        boolean interrupted = false;
+        long left;
+        while ((left = start + delay - System.currentTimeMillis()) > 0) { // the delay can be changed meanwhile
+            try {
+                Thread.sleep(Math.min(left, 10));
+            } catch (final InterruptedException e) {
+                interrupted = true;
+                if (!uninterruptible) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return longAttribute;
+    }
+
+    public void setDelay(final long delay) {
+        this.delay = delay;
+    }
+
+    public void setUninterruptible(final boolean uninterruptible) {
+        this.uninterruptible = uninterruptible;
+    }
+
+    public void increment() {
+        longAttribute++;
+    }
+}
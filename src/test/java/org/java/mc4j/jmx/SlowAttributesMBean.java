@@ -0,0 +1,6 @@
+package org.java.mc4j.jmx;
+
+public interface SlowAttributesMBean {
+
+    long getLongAttribute();
+}
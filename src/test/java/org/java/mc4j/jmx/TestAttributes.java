@@ -51,6 +51,11 @@ public class TestAttributes implements TestAttributesMBean {
         return stringAttribute;
     }
 
+    @Override
+    public long getFailingAttribute() {
+        throw new IllegalStateException("Must be removed from the published attributes");
+    }
+
     public void increment() {
         longAttribute++;
         intAttribute++;
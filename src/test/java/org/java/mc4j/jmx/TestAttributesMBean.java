@@ -17,4 +17,6 @@ public interface TestAttributesMBean {
     boolean isBooleanAttribute();
 
     String getStringAttribute();
+
+    long getFailingAttribute();
 }
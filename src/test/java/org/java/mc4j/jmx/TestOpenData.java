@@ -0,0 +1,37 @@
+package org.java.mc4j.jmx;
+
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class TestOpenData implements TestOpenDataMXBean {
+    private volatile MemoryUsage usage = new MemoryUsage(1, 2, 3, 4);
+    private final Map<String, Long> sizes = new TreeMap<>();
+
+    @Override
+    public MemoryUsage getUsage() {
+        return usage;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getSizes() {
+        return new TreeMap<>(sizes);
+    }
+
+    @Override
+    public MemoryUsage getMissingUsage() {
+        return null;
+    }
+
+    public void setUsage(final MemoryUsage usage) {
+        this.usage = usage;
+    }
+
+    public synchronized void putSize(final String name, final long size) {
+        sizes.put(name, size);
+    }
+
+    public synchronized void removeSize(final String name) {
+        sizes.remove(name);
+    }
+}
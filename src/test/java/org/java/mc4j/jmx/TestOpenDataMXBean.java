@@ -0,0 +1,13 @@
+package org.java.mc4j.jmx;
+
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+
+public interface TestOpenDataMXBean {
+
+    MemoryUsage getUsage();
+
+    Map<String, Long> getSizes();
+
+    MemoryUsage getMissingUsage();
+}
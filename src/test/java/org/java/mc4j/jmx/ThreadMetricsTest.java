@@ -0,0 +1,150 @@
+package org.java.mc4j.jmx;
+
+import org.java.mc4j.MCounter;
+import org.java.mc4j.MCountersReader;
+import org.java.mc4j.MCountersWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.java.mc4j.MCountersUtils.getMCountersDirectoryName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class ThreadMetricsTest {
+    private static final int ALLOCATED_BYTES = 16 * 1024 * 1024;
+
+    private static volatile Object sink;
+
+    @Test
+    void sample() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-ThreadMetricsTest-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 100);
+             MCountersReader reader = new MCountersReader(testCountersFile);
+             ThreadMetrics threadMetrics = new ThreadMetrics(writer, "(test-worker)-\\d+")) {
+
+            final CountDownLatch allocated = new CountDownLatch(2);
+            final CountDownLatch sampled = new CountDownLatch(1);
+            final Thread[] workers = new Thread[2];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Thread(() -> {
+                    for (int j = 0; j < ALLOCATED_BYTES / 1024; j++) {
+                        sink = new byte[1024];
+                    }
+                    allocated.countDown();
+                    try {
+                        sampled.await();
+                    } catch (final InterruptedException ignore) {
+                    }
+                }, "test-worker-" + i);
+                workers[i].start();
+            }
+            allocated.await();
+
+            threadMetrics.sample();
+
+            final Map<String, Long> counters = new HashMap<>();
+            reader.forEachCounter((id, label, value) -> counters.put(label, value));
+
+            assertEquals(Long.valueOf(2), counters.get("threads://test-worker?ThreadCount"));
+            final long workersAllocatedBytes = counters.get("threads://test-worker?AllocatedBytes");
+            assertTrue(workersAllocatedBytes >= 2L * ALLOCATED_BYTES, "" + workersAllocatedBytes);
+            final long workersCpuTime = counters.get("threads://test-worker?CpuTime");
+            assertTrue(workersCpuTime > 0);
+            assertNotNull(counters.get("threads://" + ThreadMetrics.OTHER_GROUP + "?ThreadCount"));
+
+            sampled.countDown();
+            for (final Thread worker : workers) {
+                worker.join();
+            }
+
+            threadMetrics.sample();
+
+            counters.clear();
+            reader.forEachCounter((id, label, value) -> counters.put(label, value));
+            assertEquals(Long.valueOf(0), counters.get("threads://test-worker?ThreadCount"));
+            assertTrue(counters.get("threads://test-worker?AllocatedBytes") >= workersAllocatedBytes);
+            assertTrue(counters.get("threads://test-worker?CpuTime") >= workersCpuTime);
+
+            threadMetrics.sample(); // the group without threads is removed
+
+            counters.clear();
+            reader.forEachCounter((id, label, value) -> counters.put(label, value));
+            assertNull(counters.get("threads://test-worker?ThreadCount"));
+            assertNull(counters.get("threads://test-worker?CpuTime"));
+            assertNotNull(counters.get("threads://" + ThreadMetrics.OTHER_GROUP + "?ThreadCount"));
+
+            threadMetrics.close();
+
+            counters.clear();
+            reader.forEachCounter((id, label, value) -> counters.put(label, value));
+            assertTrue(counters.isEmpty());
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+
+    @Test
+    void sampleWhenCountersRunOut() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-ThreadMetricsTest-full-counters.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+
+        final CountDownLatch finished = new CountDownLatch(1);
+        final Thread worker = new Thread(() -> {
+            try {
+                finished.await();
+            } catch (final InterruptedException ignore) {
+            }
+        }, "test-worker-0");
+
+        try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 6);
+             MCountersReader reader = new MCountersReader(testCountersFile);
+             ThreadMetrics threadMetrics = new ThreadMetrics(writer, "(test-worker)-\\d+")) {
+
+            final List<MCounter> fillers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                fillers.add(writer.addCounter("filler" + i));
+            }
+
+            worker.start();
+            threadMetrics.start(10); // there is space for one group only
+
+            Thread.sleep(100);
+            assertTrue(threadMetrics.isStarted());
+            assertNotNull(threadMetrics.getLastError());
+
+            fillers.forEach(MCounter::close);
+
+            final Map<String, Long> counters = new HashMap<>();
+            final long deadline = System.currentTimeMillis() + 10_000;
+            do {
+                assertTrue(System.currentTimeMillis() < deadline, "The sampler has stopped");
+                Thread.sleep(10);
+                counters.clear();
+                reader.forEachCounter((id, label, value) -> counters.put(label, value));
+            } while (!Long.valueOf(1).equals(counters.get("threads://test-worker?ThreadCount")));
+            assertNotNull(counters.get("threads://" + ThreadMetrics.OTHER_GROUP + "?ThreadCount"));
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            finished.countDown();
+            testCountersFile.delete();
+        }
+    }
+}
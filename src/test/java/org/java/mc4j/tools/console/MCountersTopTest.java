@@ -0,0 +1,115 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.console;
+
+import org.java.mc4j.MCounter;
+import org.java.mc4j.MCountersReader;
+import org.java.mc4j.MCountersWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.regex.Pattern;
+
+import static org.java.mc4j.MCountersUtils.getMCountersDirectoryName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class MCountersTopTest {
+
+    @Test
+    void ratesAndFilter() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-top-counters.dat");
+        testCountersFile.delete();
+        testCountersFile.getParentFile().mkdirs();
+
+        try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 10);
+             MCountersReader reader = new MCountersReader(testCountersFile)) {
+
+            final MCounter slow = writer.addCounter("requests.slow", 0);
+            final MCounter fast = writer.addCounter("requests.fast", 0);
+            writer.addCounter("errors", 0);
+
+            final MCountersTop top = new MCountersTop(Pattern.compile("^requests"), MCountersTop.Sort.RATE, 10, false);
+
+            top.sample(reader, 0);
+            assertEquals(3, top.numberOfCounters());
+
+            slow.getAndAdd(5);
+            fast.getAndAdd(200);
+            top.sample(reader, 2_000_000_000L);
+
+            String[] lines = render(top);
+            assertEquals(4, lines.length);
+            assertTrue(lines[0].startsWith("counters: 2/3, interval: 2000 ms"));
+            assertRow(lines[2], 200, 200, 100.0, "requests.fast");
+            assertRow(lines[3], 5, 5, 2.5, "requests.slow");
+
+            fast.close();
+            final MCounter next = writer.addCounter("requests.next", 10); // takes the slot of requests.fast
+            slow.getAndAdd(1);
+            next.getAndAdd(1_000);
+            top.sample(reader, 3_000_000_000L);
+
+            lines = render(top);
+            assertEquals(3, top.numberOfCounters());
+            assertRow(lines[2], 6, 1, 1.0, "requests.slow");
+            assertRow(lines[3], 1_010, 0, 0.0, "requests.next"); // the first sample of the counter
+            for (final String line : lines) {
+                assertFalse(line.contains("requests.fast"));
+            }
+
+            next.getAndAdd(10);
+            top.sample(reader, 4_000_000_000L);
+
+            lines = render(top);
+            assertRow(lines[2], 1_020, 10, 10.0, "requests.next");
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+        }
+    }
+
+    private static String[] render(final MCountersTop top) {
+        final StringBuilder output = new StringBuilder();
+        top.render(output, false);
+        return output.toString().split(System.lineSeparator());
+    }
+
+    private static void assertRow(final String line,
+                                  final long value,
+                                  final long delta,
+                                  final double rate,
+                                  final String label) {
+        final String[] columns = line.trim().split("\\s+");
+        assertEquals(5, columns.length, line);
+        assertEquals(value, Long.parseLong(columns[1]), line);
+        assertEquals(delta, Long.parseLong(columns[2]), line);
+        assertEquals(rate, Double.parseDouble(columns[3]), 0.01, line);
+        assertEquals(label, columns[4], line);
+    }
+}
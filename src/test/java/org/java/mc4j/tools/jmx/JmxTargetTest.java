@@ -0,0 +1,93 @@
+package org.java.mc4j.tools.jmx;
+
+import org.java.mc4j.MCountersReader;
+import org.java.mc4j.MCountersWriter;
+import org.junit.jupiter.api.Test;
+
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.java.mc4j.MCountersUtils.getMCountersDirectoryName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class JmxTargetTest {
+    @Test
+    void publishOverConnection() throws Exception {
+        final File testCountersFile = new File(getMCountersDirectoryName(), "junit.jupiter-JmxTargetTest.dat");
+        testCountersFile.getParentFile().mkdirs();
+        testCountersFile.delete();
+        new MCountersWriter(testCountersFile, null, 1).close(); // left by a previous run
+
+        final String label = "jmx://java.lang:type=ClassLoading?LoadedClassCount";
+
+        final JMXConnectorServer connectorServer = newConnectorServer();
+        final JMXConnectorServer nextConnectorServer = newConnectorServer();
+        try (JmxTarget target = new JmxTarget("1", "test")) {
+            target.open(connectorServer.getAddress().toString(),
+                    testCountersFile,
+                    10,
+                    "java.lang:type=ClassLoading[LoadedClassCount]",
+                    10);
+            assertTrue(target.publisher().isStarted());
+
+            try (MCountersReader reader = new MCountersReader(testCountersFile)) {
+                assertEquals("1", reader.getStaticValue(JmxTarget.PID_STATIC));
+                assertEquals("test", reader.getStaticValue(JmxTarget.DISPLAY_NAME_STATIC));
+
+                waitFor(() -> {
+                    final AtomicBoolean published = new AtomicBoolean();
+                    reader.forEachCounter((id, l, value) -> published.compareAndSet(false,
+                            label.equals(l) && value > 0));
+                    return published.get();
+                }, "No counter " + label);
+            }
+
+            assertFalse(target.isBroken());
+            connectorServer.stop();
+            waitFor(target::isBroken, "The connection isn't broken");
+
+            target.close();
+            assertNull(target.publisher());
+            assertFalse(testCountersFile.exists());
+
+            target.open(nextConnectorServer.getAddress().toString(), // as the sidecar reconnects
+                    testCountersFile,
+                    10,
+                    "java.lang:type=ClassLoading[LoadedClassCount]",
+                    10);
+            assertTrue(target.publisher().isStarted());
+            assertFalse(target.isBroken());
+            assertTrue(testCountersFile.exists());
+        } finally {
+            connectorServer.stop();
+            nextConnectorServer.stop();
+            testCountersFile.delete();
+        }
+    }
+
+    private static JMXConnectorServer newConnectorServer() throws Exception {
+        final JMXConnectorServer connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(
+                new JMXServiceURL("service:jmx:rmi://"), null, ManagementFactory.getPlatformMBeanServer());
+        connectorServer.start();
+        return connectorServer;
+    }
+
+    private static void waitFor(final BooleanSupplier condition, final String message) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(message);
+            }
+            Thread.sleep(1);
+        }
+    }
+}
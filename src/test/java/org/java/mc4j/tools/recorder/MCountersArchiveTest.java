@@ -0,0 +1,135 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.recorder;
+
+import org.java.mc4j.MCounter;
+import org.java.mc4j.MCountersReader;
+import org.java.mc4j.MCountersWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.java.mc4j.MCountersUtils.getMCountersDirectoryName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class MCountersArchiveTest {
+
+    @Test
+    void writeAndRead() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-archive-counters.dat");
+        final File testArchiveFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-archive-counters.dat" + MCountersRecorder.ARCHIVE_FILE_EXTENSION);
+        testCountersFile.delete();
+        testArchiveFile.delete();
+        testCountersFile.getParentFile().mkdirs();
+
+        try {
+            try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 10);
+                 MCountersReader reader = new MCountersReader(testCountersFile)) {
+
+                final MCounter counter1 = writer.addCounter("counter1", 100);
+                final MCounter counter2 = writer.addCounter("counter2", -5);
+
+                try (MCountersArchiveWriter archive = new MCountersArchiveWriter(testArchiveFile)) {
+                    archive.writeSample(reader, 1000);
+
+                    counter1.increment();
+                    counter2.set(Long.MIN_VALUE);
+                    archive.writeSample(reader, 2000);
+
+                    counter1.close();
+                    writer.addCounter("counter3", 7);
+                    archive.writeSample(reader, 3010);
+                }
+
+                try (MCountersArchiveWriter archive = new MCountersArchiveWriter(testArchiveFile)) {
+                    counter2.set(Long.MAX_VALUE);
+                    archive.writeSample(reader, 4000);
+                }
+            }
+
+            try (RandomAccessFile file = new RandomAccessFile(testArchiveFile, "rw")) {
+                file.seek(file.length());
+                file.write(2); // an incomplete sample
+            }
+
+            try (MCountersArchiveReader archive = new MCountersArchiveReader(testArchiveFile)) {
+                assertTrue(archive.next());
+                assertEquals(1, archive.generation());
+                assertEquals(1000, archive.timestamp());
+                assertEquals(2, archive.numberOfCounters());
+                assertEquals("counter1", archive.label(0));
+                assertEquals(100, archive.value(0));
+                assertEquals("counter2", archive.label(1));
+                assertEquals(-5, archive.value(1));
+
+                assertTrue(archive.next());
+                assertEquals(1, archive.generation());
+                assertEquals(2000, archive.timestamp());
+                assertEquals(101, archive.value(0));
+                assertEquals(Long.MIN_VALUE, archive.value(1));
+
+                assertTrue(archive.next());
+                assertEquals(2, archive.generation());
+                assertEquals(3010, archive.timestamp());
+                assertEquals(2, archive.numberOfCounters());
+                assertEquals("counter3", archive.label(0)); // has taken the slot of counter1
+                assertEquals(7, archive.value(0));
+                assertEquals("counter2", archive.label(1));
+                assertEquals(Long.MIN_VALUE, archive.value(1));
+
+                assertTrue(archive.next());
+                assertEquals(3, archive.generation());
+                assertEquals(4000, archive.timestamp());
+                assertEquals(7, archive.value(0));
+                assertEquals(Long.MAX_VALUE, archive.value(1));
+
+                assertFalse(archive.next());
+                assertEquals(testArchiveFile.length() - 1, archive.completeLength());
+            }
+
+            try (MCountersArchiveWriter archive = new MCountersArchiveWriter(testArchiveFile)) {
+                assertTrue(archive.archiveFile().exists());
+            }
+            try (MCountersArchiveReader archive = new MCountersArchiveReader(testArchiveFile)) {
+                int samples = 0;
+                while (archive.next()) {
+                    samples++;
+                }
+                assertEquals(4, samples);
+                assertEquals(testArchiveFile.length(), archive.completeLength());
+            }
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+            testArchiveFile.delete();
+        }
+    }
+}
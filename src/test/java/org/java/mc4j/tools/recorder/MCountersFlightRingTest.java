@@ -0,0 +1,122 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.recorder;
+
+import org.java.mc4j.MCounter;
+import org.java.mc4j.MCountersReader;
+import org.java.mc4j.MCountersWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.java.mc4j.MCountersUtils.getMCountersDirectoryName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class MCountersFlightRingTest {
+
+    @Test
+    void sampleAndDump() {
+        final File testCountersFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-flight-counters.dat");
+        final File testDumpFile = new File(getMCountersDirectoryName(),
+                "junit.jupiter-flight-counters.dat" + MCountersRecorder.ARCHIVE_FILE_EXTENSION);
+        testCountersFile.delete();
+        testDumpFile.delete();
+        testCountersFile.getParentFile().mkdirs();
+
+        try {
+            try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 10);
+                 MCountersReader reader = new MCountersReader(testCountersFile)) {
+
+                final MCounter counter1 = writer.addCounter("counter1", 0);
+                writer.addCounter("counter2", 0);
+                writer.addCounter("counter3", 0);
+
+                final MCountersFlightRing ring = new MCountersFlightRing(3, 2);
+
+                ring.sample(reader, 1);
+                assertEquals(1, ring.size());
+                assertEquals(2, ring.numberOfCounters());
+                assertTrue(ring.isTruncated());
+                assertEquals(1, ring.indexOf("counter2"));
+                assertEquals(-1, ring.indexOf("counter3")); // above the limit
+                final long catalogGeneration = ring.catalogGeneration();
+
+                for (int i = 2; i <= 4; i++) {
+                    counter1.increment();
+                    ring.sample(reader, i);
+                    assertEquals(i - 1, ring.value(0));
+                }
+                assertEquals(3, ring.size());
+                assertEquals(catalogGeneration, ring.catalogGeneration());
+
+                counter1.close();
+                ring.sample(reader, 5);
+                assertEquals(catalogGeneration + 1, ring.catalogGeneration());
+                assertFalse(ring.isTruncated());
+                assertEquals(0, ring.indexOf("counter2"));
+                assertEquals(1, ring.indexOf("counter3"));
+
+                final MCountersFlightRing copy = ring.copy();
+                ring.sample(reader, 6); // doesn't affect the copy
+                assertEquals(3, copy.size());
+                assertEquals(catalogGeneration + 1, copy.catalogGeneration());
+                assertEquals(1, copy.indexOf("counter3"));
+
+                try (MCountersArchiveWriter archive = new MCountersArchiveWriter(testDumpFile)) {
+                    copy.dump(archive);
+                }
+            }
+
+            try (MCountersArchiveReader archive = new MCountersArchiveReader(testDumpFile)) {
+                assertTrue(archive.next());
+                assertEquals(3, archive.timestamp());
+                assertEquals(1, archive.generation());
+                assertEquals("counter1", archive.label(0));
+                assertEquals(2, archive.value(0));
+
+                assertTrue(archive.next());
+                assertEquals(4, archive.timestamp());
+                assertEquals(3, archive.value(0));
+
+                assertTrue(archive.next());
+                assertEquals(5, archive.timestamp());
+                assertEquals(2, archive.generation());
+                assertEquals(2, archive.numberOfCounters());
+                assertEquals("counter2", archive.label(0));
+                assertEquals("counter3", archive.label(1));
+
+                assertFalse(archive.next());
+            }
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+            testDumpFile.delete();
+        }
+    }
+}
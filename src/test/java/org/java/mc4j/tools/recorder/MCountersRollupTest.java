@@ -0,0 +1,206 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2020 anatolygudkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.java.mc4j.tools.recorder;
+
+import org.java.mc4j.MCounter;
+import org.java.mc4j.MCountersReader;
+import org.java.mc4j.MCountersWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.java.mc4j.MCountersUtils.getMCountersDirectoryName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class MCountersRollupTest {
+
+    @Test
+    void tier() {
+        final File tierFile = new File(getMCountersDirectoryName(), "junit.jupiter-tier.mct");
+        tierFile.delete();
+        tierFile.getParentFile().mkdirs();
+
+        try {
+            try (MCountersRollupTier tier = new MCountersRollupTier(tierFile, 10, 3, 1)) {
+                assertEquals(30, tier.retention());
+
+                final int series = tier.seriesIndex("series");
+                assertEquals(0, series);
+                assertEquals(-1, tier.seriesIndex("no space"));
+
+                tier.update(series, 10, 5);
+                tier.update(series, 15, -1);
+                tier.update(series, 19, 3);
+                tier.update(series, 20, 7);
+                tier.update(series, 45, 100); // takes the place of the window [15, 20)
+                tier.update(series, 12, 1000); // too old to be added
+            }
+
+            try (MCountersRollupTier tier = new MCountersRollupTier(tierFile)) {
+                assertEquals(10, tier.resolution());
+                assertEquals(3, tier.numberOfWindows());
+                assertEquals(1, tier.numberOfSeries());
+                assertEquals(45, tier.lastTimestamp());
+
+                final List<String> windows = new ArrayList<>();
+                tier.forEachWindow("series", 0, 100, (start, count, min, max, last, sum) ->
+                        windows.add(start + ":" + count + ":" + min + ":" + max + ":" + last + ":" + sum));
+                assertEquals(Arrays.asList("20:1:7:7:7:7", "40:1:100:100:100:100"), windows);
+
+                windows.clear();
+                tier.forEachWindow("series", 0, 29, (start, count, min, max, last, sum) ->
+                        windows.add(start + ":" + count));
+                assertEquals(Arrays.asList("20:1"), windows);
+            }
+
+            try (MCountersRollupTier tier = new MCountersRollupTier(tierFile, 10, 3, 1)) {
+                assertEquals(0, tier.seriesIndex("series"));
+                tier.update(0, 41, 50);
+
+                final List<String> windows = new ArrayList<>();
+                tier.forEachWindow("series", 40, 40, (start, count, min, max, last, sum) ->
+                        windows.add(start + ":" + count + ":" + min + ":" + max + ":" + last + ":" + sum));
+                assertEquals(Arrays.asList("40:2:50:100:50:150"), windows);
+            }
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            tierFile.delete();
+        }
+    }
+
+    @Test
+    void longLabels() {
+        final File tierFile = new File(getMCountersDirectoryName(), "junit.jupiter-tier-labels.mct");
+        tierFile.delete();
+        tierFile.getParentFile().mkdirs();
+
+        final String label = String.join("", Collections.nCopies(1000, "l")); // longer than stored
+
+        try {
+            try (MCountersRollupTier tier = new MCountersRollupTier(tierFile, 10, 3, 2)) {
+                assertEquals(0, tier.seriesIndex(label));
+                assertEquals(0, tier.seriesIndex(label));
+                tier.update(0, 10, 5);
+            }
+
+            try (MCountersRollupTier tier = new MCountersRollupTier(tierFile, 10, 3, 2)) {
+                assertEquals(0, tier.seriesIndex(label)); // not a second series after the reopen
+                assertEquals(1, tier.numberOfSeries());
+            }
+
+            try (MCountersRollupTier tier = new MCountersRollupTier(tierFile)) {
+                final List<Long> starts = new ArrayList<>();
+                tier.forEachWindow(label, 0, 100, (start, count, min, max, last, sum) -> starts.add(start));
+                assertEquals(Arrays.asList(10L), starts);
+            }
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            tierFile.delete();
+        }
+    }
+
+    @Test
+    void rollupOfArchive() {
+        final File directory = new File(getMCountersDirectoryName());
+        final String name = "junit.jupiter-rollup-counters.dat";
+        final File testCountersFile = new File(directory, name);
+        final File testArchiveFile = new File(directory, name + MCountersRecorder.ARCHIVE_FILE_EXTENSION);
+        final File tierFile1 = new File(directory, name + ".1s" + MCountersRollup.TIER_FILE_EXTENSION);
+        final File tierFile2 = new File(directory, name + ".10s" + MCountersRollup.TIER_FILE_EXTENSION);
+        testCountersFile.delete();
+        testArchiveFile.delete();
+        tierFile1.delete();
+        tierFile2.delete();
+        directory.mkdirs();
+
+        try {
+            try (MCountersWriter writer = new MCountersWriter(testCountersFile, null, 10);
+                 MCountersReader reader = new MCountersReader(testCountersFile);
+                 MCountersArchiveWriter archive = new MCountersArchiveWriter(testArchiveFile);
+                 MCountersArchiveReader archiveTail = new MCountersArchiveReader(testArchiveFile, archive.length());
+                 MCountersRollup rollup = new MCountersRollup(directory, name, "10s:1m,1s:10s", 10)) {
+
+                final MCounter counter = writer.addCounter("counter");
+
+                for (int i = 0; i < 30; i++) {
+                    counter.set(i);
+                    archive.writeSample(reader, 100_000 + i * 1000);
+
+                    while (archiveTail.next()) {
+                        rollup.update(archiveTail);
+                    }
+                }
+
+                assertEquals(1000, rollup.tiers().get(0).resolution());
+                assertEquals(10_000, rollup.tiers().get(1).resolution());
+            }
+
+            try (MCountersRollup rollup = new MCountersRollup(directory, name)) {
+                assertEquals(2, rollup.tiers().size());
+
+                final List<String> windows = new ArrayList<>();
+
+                assertEquals(10_000, rollup.query("counter", 100_000, 130_000, 60_000,
+                        (start, count, min, max, last, sum) ->
+                                windows.add(start + ":" + count + ":" + min + ":" + max + ":" + last + ":" + sum)));
+                assertEquals(Arrays.asList(
+                        "100000:10:0:9:9:45",
+                        "110000:10:10:19:19:145",
+                        "120000:10:20:29:29:245"), windows);
+
+                windows.clear();
+                assertEquals(1000, rollup.query("counter", 120_000, 200_000, 1000,
+                        (start, count, min, max, last, sum) -> windows.add(start + ":" + last)));
+                assertEquals(10, windows.size()); // the retention of the tier is 10 seconds
+                assertEquals("120000:20", windows.get(0));
+                assertEquals("129000:29", windows.get(9));
+
+                windows.clear();
+                assertEquals(10_000, rollup.query("counter", 100_000, 200_000, 1000, // older than 10 seconds
+                        (start, count, min, max, last, sum) -> windows.add(start + ":" + last)));
+                assertEquals(Arrays.asList("100000:9", "110000:19", "120000:29"), windows);
+
+                assertEquals(10_000, rollup.query("counter", 0, 200_000, 1, // older than all the retentions
+                        (start, count, min, max, last, sum) -> { }));
+                assertTrue(rollup.query("unknown", 0, 200_000, 1,
+                        (start, count, min, max, last, sum) -> fail("No windows expected")) > 0);
+            }
+        } catch (final Exception e) {
+            fail(e);
+        } finally {
+            testCountersFile.delete();
+            testArchiveFile.delete();
+            tierFile1.delete();
+            tierFile2.delete();
+        }
+    }
+}